@@ -0,0 +1,71 @@
+package model;
+
+/**
+ * Settings of the anytime classification of a single image: training rows are
+ * scanned in a random order of chunks, a provisional answer is published after
+ * every chunk and the scan stops early once the answer has not changed for the
+ * given fraction of the training set or the latency budget has expired.
+ */
+public class AnytimeSettings {
+
+	/** The Constant DEFAULT settings: stable for a quarter of rows, 200 ms. */
+	public static final AnytimeSettings DEFAULT = new AnytimeSettings(0.25, 200);
+
+	/** The fraction of rows the answer must not change for to stop early. */
+	private final double stableFraction;
+
+	/** The latency budget in milliseconds, 0 for no budget. */
+	private final long budgetMillis;
+
+	/**
+	 * Instantiates new anytime settings.
+	 *
+	 * @param stableFraction the fraction of rows (0-1] the answer must not change
+	 *                       for to stop early, 1 to never stop because of
+	 *                       stability
+	 * @param budgetMillis   the latency budget in milliseconds, 0 for no budget
+	 */
+	public AnytimeSettings(double stableFraction, long budgetMillis) {
+		if (!(stableFraction > 0 && stableFraction <= 1) || budgetMillis < 0) {
+			throw new IllegalArgumentException("Invalid anytime settings: " + stableFraction + ", " + budgetMillis);
+		}
+		this.stableFraction = stableFraction;
+		this.budgetMillis = budgetMillis;
+	}
+
+	/**
+	 * Parses settings from FRACTION[:BUDGET_MS], e.g. 0.25:200.
+	 *
+	 * @param value the value
+	 * @return the anytime settings
+	 * @throws IllegalArgumentException throws if value is invalid
+	 */
+	public static AnytimeSettings parse(String value) {
+		String[] parts = value.trim().split(":");
+		return new AnytimeSettings(Double.parseDouble(parts[0]), parts.length > 1 ? Long.parseLong(parts[1]) : 0);
+	}
+
+	/**
+	 * Gets the stable fraction.
+	 *
+	 * @return the fraction of rows the answer must not change for
+	 */
+	public double getStableFraction() {
+		return stableFraction;
+	}
+
+	/**
+	 * Gets the latency budget.
+	 *
+	 * @return the budget in milliseconds, 0 for no budget
+	 */
+	public long getBudgetMillis() {
+		return budgetMillis;
+	}
+
+	@Override
+	public String toString() {
+		return stableFraction + (budgetMillis > 0 ? ":" + budgetMillis : "");
+	}
+
+}
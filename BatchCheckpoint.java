@@ -0,0 +1,234 @@
+package model;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Checkpoint of a batch run, so a run which was stopped or killed resumes
+ * where it stopped instead of classifying all test images again. It is a text
+ * file: the key of the run's inputs on the first line, then one line per
+ * classified test image with its path, expected label, estimated label and
+ * confidence, so a resumed run shows the results of all images, see
+ * {@link BatchCheckpoint#restore(BatchResults)}. Lines are flushed at least every
+ * {@value #FLUSH_MILLIS} ms and when the checkpoint is closed; a file whose key
+ * does not match the inputs is started over.
+ */
+public class BatchCheckpoint implements Closeable {
+
+	/** The maximum time between flushes of completed images. */
+	public static final long FLUSH_MILLIS = 2000;
+
+	/** The Constant HEADER at the start of the file. */
+	private static final String HEADER = "KNN checkpoint ";
+
+	/** The checkpoint file. */
+	private final File file;
+
+	/** The paths of classified test images. */
+	private final Set<String> completed = new HashSet<>();
+
+	/** The number of correctly classified images. */
+	private int correct;
+
+	/** The results of images classified by earlier runs. */
+	private final BatchResults restored = new BatchResults();
+
+	/** The writer appending completed images. */
+	private final BufferedWriter writer;
+
+	/** The time of the last flush. */
+	private long lastFlush = System.nanoTime();
+
+	/**
+	 * Instantiates a new batch checkpoint.
+	 *
+	 * @param file the checkpoint file
+	 * @param key  the key of the inputs of the run
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public BatchCheckpoint(File file, long key) throws IOException {
+		this.file = file;
+		String header = HEADER + Long.toHexString(key);
+		boolean resume = false;
+		boolean partial = false;
+		if (file.isFile()) {
+			String[] lines = Files.readString(file.toPath()).split("\n", -1);
+			resume = lines[0].equals(header);
+			// The last element follows the last line break, it is empty unless the
+			// run was killed while writing it.
+			for (int i = 1; resume && i < lines.length - 1; i++) {
+				parse(lines[i]);
+			}
+			partial = resume && !lines[lines.length - 1].isEmpty();
+		}
+		writer = new BufferedWriter(new FileWriter(file, resume));
+		if (partial) {
+			writer.write('\n'); // The partial line stays a line of its own.
+		}
+		if (!resume) {
+			writer.write(header);
+			writer.write('\n');
+			writer.flush();
+		}
+	}
+
+	/**
+	 * Helper method to restore a completed image from its line. Lines which do
+	 * not parse, remainders of partially written lines, are skipped: their
+	 * images are classified again.
+	 *
+	 * @param line the line
+	 */
+	private void parse(String line) {
+		String[] fields = new String[4];
+		int end = line.length();
+		for (int i = fields.length - 1; i > 0; i--) { // The path may contain tabs.
+			int tab = line.lastIndexOf('\t', end - 1);
+			if (tab < 0) {
+				return;
+			}
+			fields[i] = line.substring(tab + 1, end);
+			end = tab;
+		}
+		fields[0] = line.substring(0, end);
+		int expected;
+		int label;
+		float confidence;
+		try {
+			expected = Integer.parseInt(fields[1]);
+			label = Integer.parseInt(fields[2]);
+			confidence = Float.parseFloat(fields[3]);
+		} catch (NumberFormatException e) {
+			return;
+		}
+		if (expected < -1 || expected >= DataLoader.NUM_LABELS || label < 0 || label >= DataLoader.NUM_LABELS
+				|| !completed.add(fields[0])) {
+			return;
+		}
+		restored.add(fields[0].isEmpty() ? null : new File(fields[0]), expected, label, confidence);
+		if (expected == label) {
+			correct++;
+		}
+	}
+
+	/**
+	 * Computes the key of inputs of a batch run: everything which affects the
+	 * results.
+	 *
+	 * @param fingerprint the fingerprint of the training set
+	 * @param extractor   the feature extractor
+	 * @param metric      the distance metric
+	 * @param voting      the voting strategy
+	 * @param k           the k value
+	 * @param testFiles   the test files
+	 * @return the key
+	 */
+	public static long key(long fingerprint, FeatureExtractor extractor, DistanceMetric metric,
+			VotingStrategy voting, int k, List<File> testFiles) {
+		long key = fingerprint * 31 + (extractor.getId() + "/" + metric.name() + "/" + voting.name()).hashCode();
+		key = key * 31 + k;
+		for (File test : testFiles) {
+			key = key * 31 + test.getPath().hashCode();
+		}
+		return key;
+	}
+
+	/**
+	 * Gets the test files which were not classified yet.
+	 *
+	 * @param testFiles all test files of the run
+	 * @return the remaining test files, in the same order
+	 */
+	public List<File> remaining(List<File> testFiles) {
+		List<File> result = new ArrayList<>();
+		for (File test : testFiles) {
+			if (!completed.contains(test.getPath())) {
+				result.add(test);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Adds the results of images classified by earlier runs.
+	 *
+	 * @param results the results of the resumed run
+	 */
+	public void restore(BatchResults results) {
+		results.addAll(restored);
+	}
+
+	/**
+	 * Records a classified test image. Completed images are flushed if the last
+	 * flush is older than {@value #FLUSH_MILLIS} ms.
+	 *
+	 * @param result the result
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void record(Classification result) throws IOException {
+		String path = result.getSource() != null ? result.getSource().getPath() : "";
+		if (result.isCorrect()) {
+			correct++;
+		}
+		completed.add(path);
+		writer.write(path);
+		writer.write('\t');
+		writer.write(Integer.toString(result.getExpectedLabel()));
+		writer.write('\t');
+		writer.write(Integer.toString(result.getLabel()));
+		writer.write('\t');
+		writer.write(Float.toString((float) result.getConfidence()));
+		writer.write('\n');
+		long now = System.nanoTime();
+		if (now - lastFlush > FLUSH_MILLIS * 1_000_000) {
+			writer.flush();
+			lastFlush = now;
+		}
+	}
+
+	/**
+	 * Gets the number of classified images, including those of earlier runs.
+	 *
+	 * @return the number of images
+	 */
+	public int getCompleted() {
+		return completed.size();
+	}
+
+	/**
+	 * Gets the number of correctly classified images, including those of earlier
+	 * runs.
+	 *
+	 * @return the number of images
+	 */
+	public int getCorrect() {
+		return correct;
+	}
+
+	/**
+	 * Closes the checkpoint and deletes the file, once all images were
+	 * classified.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void complete() throws IOException {
+		writer.close();
+		if (!file.delete()) {
+			throw new IOException("Cannot delete " + file);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close(); // Flushes, nothing happens if complete() closed it.
+	}
+
+}
@@ -0,0 +1,227 @@
+package model;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Per-image results of the last batch run, in the order images were
+ * classified. Results are kept column-wise in primitive arrays (no
+ * {@link Classification} objects, confidences of other classes are dropped),
+ * so hundreds of thousands of results stay small; the confusion matrix is
+ * updated as results are added. Results are added by the classifying thread and
+ * read by views, all methods are synchronized.
+ */
+public class BatchResults {
+
+	/** The source files. */
+	private File[] sources = new File[64];
+
+	/** The expected labels, -1 if unknown. */
+	private int[] expected = new int[64];
+
+	/** The estimated labels. */
+	private int[] estimated = new int[64];
+
+	/** The confidences of estimated labels. */
+	private float[] confidences = new float[64];
+
+	/** The number of results. */
+	private int size;
+
+	/** The number of correctly classified images. */
+	private int correct;
+
+	/** The confusion matrix indexed by expected and estimated label. */
+	private final int[][] confusion = new int[DataLoader.NUM_LABELS][DataLoader.NUM_LABELS];
+
+	/**
+	 * Removes all results.
+	 */
+	public synchronized void clear() {
+		Arrays.fill(sources, 0, size, null);
+		size = 0;
+		correct = 0;
+		for (int[] row : confusion) {
+			Arrays.fill(row, 0);
+		}
+	}
+
+	/**
+	 * Adds the result.
+	 *
+	 * @param result the result
+	 */
+	public synchronized void add(Classification result) {
+		add(result.getSource(), result.getExpectedLabel(), result.getLabel(), (float) result.getConfidence());
+	}
+
+	/**
+	 * Adds the result.
+	 *
+	 * @param source        the source file, null if unknown
+	 * @param expectedLabel the expected label, -1 if unknown
+	 * @param label         the estimated label
+	 * @param confidence    the confidence of the estimated label
+	 */
+	synchronized void add(File source, int expectedLabel, int label, float confidence) {
+		if (size == sources.length) {
+			int capacity = size * 2;
+			sources = Arrays.copyOf(sources, capacity);
+			expected = Arrays.copyOf(expected, capacity);
+			estimated = Arrays.copyOf(estimated, capacity);
+			confidences = Arrays.copyOf(confidences, capacity);
+		}
+		sources[size] = source;
+		expected[size] = expectedLabel;
+		estimated[size] = label;
+		confidences[size] = confidence;
+		size++;
+		if (expectedLabel == label) {
+			correct++;
+		}
+		if (expectedLabel >= 0) { // Images without a label are not in the matrix.
+			confusion[expectedLabel][label]++;
+		}
+	}
+
+	/**
+	 * Adds all results of the other results.
+	 *
+	 * @param other the other results
+	 */
+	synchronized void addAll(BatchResults other) {
+		synchronized (other) {
+			for (int i = 0; i < other.size; i++) {
+				add(other.sources[i], other.expected[i], other.estimated[i], other.confidences[i]);
+			}
+		}
+	}
+
+	/**
+	 * Replaces all results, e.g. by those voted again with another k.
+	 *
+	 * @param results the results
+	 */
+	public synchronized void set(List<Classification> results) {
+		clear();
+		for (Classification result : results) {
+			add(result);
+		}
+	}
+
+	/**
+	 * Gets the number of results.
+	 *
+	 * @return the number of results
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the number of correctly classified images.
+	 *
+	 * @return the number of images
+	 */
+	public synchronized int getCorrect() {
+		return correct;
+	}
+
+	/**
+	 * Gets the source file of the result.
+	 *
+	 * @param index the index of the result
+	 * @return the source file, null if unknown
+	 */
+	public synchronized File getSource(int index) {
+		return sources[check(index)];
+	}
+
+	/**
+	 * Gets the expected label of the result.
+	 *
+	 * @param index the index of the result
+	 * @return the expected label, -1 if unknown
+	 */
+	public synchronized int getExpectedLabel(int index) {
+		return expected[check(index)];
+	}
+
+	/**
+	 * Gets the estimated label of the result.
+	 *
+	 * @param index the index of the result
+	 * @return the estimated label
+	 */
+	public synchronized int getLabel(int index) {
+		return estimated[check(index)];
+	}
+
+	/**
+	 * Gets the confidence of the estimated label of the result.
+	 *
+	 * @param index the index of the result
+	 * @return the confidence
+	 */
+	public synchronized double getConfidence(int index) {
+		return confidences[check(index)];
+	}
+
+	/**
+	 * Checks if the result is correct.
+	 *
+	 * @param index the index of the result
+	 * @return true, if the estimated label is the expected one
+	 */
+	public synchronized boolean isCorrect(int index) {
+		return expected[check(index)] == estimated[index];
+	}
+
+	/**
+	 * Gets the indexes of results matching the filter, in order.
+	 *
+	 * @param misclassifiedOnly true to keep misclassified images only, unlabeled
+	 *                          images are never misclassified
+	 * @param label             the expected label to keep, -1 for all labels
+	 * @return the indexes of matching results
+	 */
+	public synchronized int[] filter(boolean misclassifiedOnly, int label) {
+		int[] result = new int[size];
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			boolean misclassified = expected[i] >= 0 && expected[i] != estimated[i];
+			if ((!misclassifiedOnly || misclassified) && (label < 0 || expected[i] == label)) {
+				result[count++] = i;
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * Gets a copy of the confusion matrix.
+	 *
+	 * @return the confusion matrix indexed by expected and estimated label
+	 */
+	public synchronized int[][] getConfusion() {
+		int[][] result = new int[confusion.length][];
+		for (int i = 0; i < confusion.length; i++) {
+			result[i] = confusion[i].clone();
+		}
+		return result;
+	}
+
+	/**
+	 * Helper method to check the index of a result.
+	 *
+	 * @param index the index
+	 * @return the index
+	 */
+	private int check(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Result " + index + " of " + size);
+		}
+		return index;
+	}
+
+}
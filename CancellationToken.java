@@ -0,0 +1,29 @@
+package model;
+
+/**
+ * Cancellation of one call, see {@link ClassificationEngine}. The caller keeps
+ * the token and cancels it from any thread; the classifying threads check it
+ * once per chunk of training rows.
+ */
+public class CancellationToken {
+
+	/** True once cancelled. */
+	private volatile boolean cancelled;
+
+	/**
+	 * Cancels the calls which were given this token.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Checks if cancelled.
+	 *
+	 * @return true, if cancelled
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+}
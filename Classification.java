@@ -0,0 +1,137 @@
+package model;
+
+import java.io.File;
+
+/**
+ * Immutable result of classification of one test image.
+ */
+public class Classification {
+
+	/** The source file of the test image, null if unknown. */
+	private final File source;
+
+	/** The expected label (from the file name). */
+	private final int expectedLabel;
+
+	/** The estimated label. */
+	private final int label;
+
+	/** The confidence of every label class. */
+	private final double[] confidences;
+
+	/** True if all training rows were scanned. */
+	private final boolean exact;
+
+	/** The fraction of scanned rows the label has not changed for. */
+	private final double stability;
+
+	/**
+	 * Instantiates a new classification.
+	 *
+	 * @param source        the source file of the test image
+	 * @param expectedLabel the expected label
+	 * @param label         the estimated label
+	 * @param confidences   the confidence of every label class, the array is not
+	 *                      copied and must not be changed afterwards
+	 */
+	public Classification(File source, int expectedLabel, int label, double[] confidences) {
+		this(source, expectedLabel, label, confidences, true, 1);
+	}
+
+	/**
+	 * Instantiates a new classification which may be provisional (an anytime
+	 * scan stopped early).
+	 *
+	 * @param source        the source file of the test image
+	 * @param expectedLabel the expected label
+	 * @param label         the estimated label
+	 * @param confidences   the confidence of every label class, the array is not
+	 *                      copied and must not be changed afterwards
+	 * @param exact         true if all training rows were scanned
+	 * @param stability     the fraction of scanned rows the label has not changed
+	 *                      for
+	 */
+	public Classification(File source, int expectedLabel, int label, double[] confidences, boolean exact,
+			double stability) {
+		this.source = source;
+		this.expectedLabel = expectedLabel;
+		this.label = label;
+		this.confidences = confidences;
+		this.exact = exact;
+		this.stability = stability;
+	}
+
+	/**
+	 * Gets the source file.
+	 *
+	 * @return the source file, null if unknown
+	 */
+	public File getSource() {
+		return source;
+	}
+
+	/**
+	 * Gets the expected label.
+	 *
+	 * @return the expected label
+	 */
+	public int getExpectedLabel() {
+		return expectedLabel;
+	}
+
+	/**
+	 * Gets the estimated label.
+	 *
+	 * @return the estimated label
+	 */
+	public int getLabel() {
+		return label;
+	}
+
+	/**
+	 * Gets the confidence of the estimated label.
+	 *
+	 * @return the confidence
+	 */
+	public double getConfidence() {
+		return confidences[label];
+	}
+
+	/**
+	 * Gets the confidence of every label class.
+	 *
+	 * @return the confidences indexed by label (a copy)
+	 */
+	public double[] getConfidences() {
+		return confidences.clone();
+	}
+
+	/**
+	 * Checks if all training rows were scanned.
+	 *
+	 * @return true, if exact
+	 */
+	public boolean isExact() {
+		return exact;
+	}
+
+	/**
+	 * Gets the stability: the fraction of scanned rows the label has not changed
+	 * for, 1 for exact results.
+	 *
+	 * @return the stability
+	 */
+	public double getStability() {
+		return stability;
+	}
+
+	/**
+	 * Checks if the estimated label equals the expected one.
+	 *
+	 * @return true, if correct
+	 */
+	public boolean isCorrect() {
+		return label == expectedLabel;
+	}
+
+}
@@ -0,0 +1,266 @@
+package model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable, thread-safe k-NN classifier built once over a snapshot of a
+ * training set. Unlike {@link KNN} it keeps no results, progress or stop flag:
+ * every call returns its results and gets its own progress listener and
+ * cancellation token, so many threads can query one resident training set at
+ * once. Scratch buffers are per thread and the hot path takes no locks.
+ */
+public class ClassificationEngine {
+
+	/** Number of scanned rows between checks of cancellation and progress. */
+	static final int CHUNK = 1024;
+
+	/**
+	 * The feature vectors of training rows, only the first rows are used. It is
+	 * the array of the snapshot: the matrix of the set replaces its array when
+	 * it grows.
+	 */
+	private final float[] data;
+
+	/** The squared L2 norms of training rows. */
+	private final double[] norms;
+
+	/** The number of features per row. */
+	private final int dimension;
+
+	/** The number of training rows of the snapshot. */
+	private final int rows;
+
+	/** The labels of training rows. */
+	private final int[] labels;
+
+	/** The multiplicities of training rows. */
+	private final int[] multiplicities;
+
+	/** The feature extractor. */
+	private final FeatureExtractor extractor;
+
+	/** The distance metric. */
+	private final DistanceMetric metric;
+
+	/** The voting strategy. */
+	private final VotingStrategy voting;
+
+	/** The scratch buffers of every thread, rebuilt when k changes. */
+	private final ThreadLocal<QueryContext> contexts = new ThreadLocal<>();
+
+	/**
+	 * Instantiates a new engine over the rows the training set has now. Rows
+	 * added to the set later are not seen by the engine.
+	 *
+	 * @param trainingSet the training set
+	 * @param extractor   the feature extractor
+	 * @param metric      the distance metric
+	 * @param voting      the voting strategy
+	 */
+	public ClassificationEngine(TrainingSet trainingSet, FeatureExtractor extractor, DistanceMetric metric,
+			VotingStrategy voting) {
+		synchronized (trainingSet) {
+			FeatureMatrix features = trainingSet.getFeatures(extractor);
+			this.data = features.getData();
+			this.norms = features.getNorms();
+			this.dimension = features.getDimension();
+			this.rows = features.getRows();
+			// Copies, deduplication may still raise multiplicities of the set.
+			this.labels = Arrays.copyOf(trainingSet.getLabels(), rows);
+			this.multiplicities = Arrays.copyOf(trainingSet.getMultiplicities(), rows);
+		}
+		this.extractor = extractor;
+		this.metric = metric;
+		this.voting = voting;
+	}
+
+	/**
+	 * Classifies one image.
+	 *
+	 * @param image the image
+	 * @param k     the k value
+	 * @return the result
+	 */
+	public Classification classify(RowData image, int k) {
+		return classify(image, k, null, null);
+	}
+
+	/**
+	 * Classifies one image.
+	 *
+	 * @param image    the image
+	 * @param k        the k value
+	 * @param token    the cancellation token, it may be null
+	 * @param listener receives training rows scanned, it may be null
+	 * @return the result
+	 * @throws CancellationException throws if the token was cancelled
+	 */
+	public Classification classify(RowData image, int k, CancellationToken token, ProgressListener listener) {
+		long start = System.nanoTime();
+		QueryContext context = context(k);
+		NeighborHeap heap = context.getHeap();
+		float[] query = context.getFeatures();
+		extractor.extract(image.getImage(), query, 0);
+		double norm = FeatureMatrix.squaredNorm(query, 0, dimension);
+		heap.clear();
+		for (int from = 0; from < rows; from += CHUNK) {
+			if (token != null && token.isCancelled()) {
+				throw new CancellationException();
+			}
+			int to = Math.min(rows, from + CHUNK);
+			scan(query, norm, data, norms, dimension, metric, heap, from, to);
+			if (listener != null) {
+				listener.progress(to, rows);
+			}
+		}
+		long distanceEnd = System.nanoTime();
+		heap.sort();
+		long topKEnd = System.nanoTime();
+		double[] confidences = new double[DataLoader.NUM_LABELS];
+		int label = context.getVoter().vote(heap, labels, multiplicities, heap.size(), confidences);
+		PerfStats.get().recordQuery(distanceEnd - start, topKEnd - distanceEnd, System.nanoTime() - topKEnd, rows);
+		return new Classification(image.getSource(), image.getLabel(), label, confidences);
+	}
+
+	/**
+	 * Classifies many images in parallel.
+	 *
+	 * @param images the images
+	 * @param k      the k value
+	 * @return the results, in the order of images
+	 */
+	public List<Classification> classifyAll(List<RowData> images, int k) {
+		return classifyAll(images, k, null, null);
+	}
+
+	/**
+	 * Classifies many images in parallel.
+	 *
+	 * @param images   the images
+	 * @param k        the k value
+	 * @param token    the cancellation token, it may be null
+	 * @param listener receives images classified, it may be null
+	 * @return the results, in the order of images
+	 * @throws CancellationException throws if the token was cancelled
+	 */
+	public List<Classification> classifyAll(List<RowData> images, int k, CancellationToken token,
+			ProgressListener listener) {
+		Classification[] results = new Classification[images.size()];
+		AtomicLong done = new AtomicLong();
+		IntStream.range(0, results.length).parallel().forEach(i -> {
+			results[i] = classify(images.get(i), k, token, null);
+			if (listener != null) {
+				listener.progress(done.incrementAndGet(), results.length);
+			}
+		});
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * Gets the number of training rows.
+	 *
+	 * @return the number of rows
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Gets the feature extractor.
+	 *
+	 * @return the feature extractor
+	 */
+	public FeatureExtractor getExtractor() {
+		return extractor;
+	}
+
+	/**
+	 * Gets the distance metric.
+	 *
+	 * @return the distance metric
+	 */
+	public DistanceMetric getMetric() {
+		return metric;
+	}
+
+	/**
+	 * Gets the voting strategy.
+	 *
+	 * @return the voting strategy
+	 */
+	public VotingStrategy getVoting() {
+		return voting;
+	}
+
+	/**
+	 * Helper method to get the scratch buffers of the calling thread for k.
+	 *
+	 * @param k the k value
+	 * @return the context
+	 */
+	private QueryContext context(int k) {
+		if (k < 1) {
+			throw new IllegalArgumentException("Invalid k: " + k);
+		}
+		QueryContext context = contexts.get();
+		if (context == null || context.getHeap().capacity() != k) {
+			context = new QueryContext(dimension, k, voting);
+			contexts.set(context);
+		}
+		return context;
+	}
+
+	/**
+	 * Offers training rows from-to (exclusive) to the heap of the k nearest rows,
+	 * abandoning distances early once they exceed the k-th nearest one.
+	 *
+	 * @param query    the feature vector of the query
+	 * @param norm     the squared norm of the query
+	 * @param features the feature vectors of training rows
+	 * @param metric   the distance metric
+	 * @param heap     the heap of the k nearest rows
+	 * @param from     the first row
+	 * @param to       the end (exclusive) of rows
+	 * @return the number of rows rejected by the bound
+	 */
+	static int scan(float[] query, double norm, FeatureMatrix features, DistanceMetric metric, NeighborHeap heap,
+			int from, int to) {
+		return scan(query, norm, features.getData(), features.getNorms(), features.getDimension(), metric, heap,
+				from, to);
+	}
+
+	/**
+	 * Offers training rows from-to (exclusive) to the heap of the k nearest rows,
+	 * abandoning distances early once they exceed the k-th nearest one.
+	 *
+	 * @param query     the feature vector of the query
+	 * @param norm      the squared norm of the query
+	 * @param data      the feature vectors of training rows, row after row
+	 * @param norms     the squared norms of training rows
+	 * @param dimension the number of features per row
+	 * @param metric    the distance metric
+	 * @param heap      the heap of the k nearest rows
+	 * @param from      the first row
+	 * @param to        the end (exclusive) of rows
+	 * @return the number of rows rejected by the bound
+	 */
+	static int scan(float[] query, double norm, float[] data, double[] norms, int dimension, DistanceMetric metric,
+			NeighborHeap heap, int from, int to) {
+		int rejected = 0;
+		for (int l = from; l < to; l++) {
+			double bound = heap.bound(); // Distance of current k-th nearest row.
+			double distance = metric.distance(query, norm, data, l * dimension, norms[l], dimension, bound);
+			if (distance < bound) {
+				heap.offer(distance, l); // Keep only k nearest rows.
+			} else {
+				rejected++;
+			}
+		}
+		return rejected;
+	}
+
+}
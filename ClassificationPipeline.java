@@ -0,0 +1,227 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Staged classification of test image files. Three stages run at once and are
+ * connected by bounded queues, so a slow stage holds back the faster ones
+ * instead of filling the memory:
+ * <ol>
+ * <li>decode: a small pool of I/O threads reads and decodes the images,</li>
+ * <li>classify: one compute thread per core classifies decoded images, every
+ * thread with its own {@link QueryContext},</li>
+ * <li>report: the calling thread passes results to the handler one by one.</li>
+ * </ol>
+ * Every blocking call waits with a timeout and checks
+ * {@link KNN#isAllowRun()}, so 'stop' ends all stages.
+ */
+public class ClassificationPipeline {
+
+	/** Capacity of the queues between stages. */
+	private static final int QUEUE_CAPACITY = 64;
+
+	/** Number of decoding threads, decoding is mostly waiting for the disk. */
+	private static final int DECODE_THREADS = 4;
+
+	/**
+	 * Timeout of blocking calls in milliseconds, stages see 'stop' at the latest
+	 * after it.
+	 */
+	private static final long POLL_MILLIS = 10;
+
+	/** The algorithm. */
+	private final KNN knn;
+
+	/** The k value. */
+	private final int k;
+
+	/** The number of compute threads. */
+	private final int computeThreads;
+
+	/**
+	 * Receives results in the reporting stage.
+	 */
+	@FunctionalInterface
+	public interface ResultHandler {
+
+		/**
+		 * Accepts the result.
+		 *
+		 * @param result the result
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		void accept(Classification result) throws IOException;
+
+	}
+
+	/**
+	 * Instantiates a new classification pipeline with one compute thread per
+	 * core.
+	 *
+	 * @param knn the algorithm, it classifies images and tells if run is allowed
+	 * @param k   the k value
+	 */
+	public ClassificationPipeline(KNN knn, int k) {
+		this(knn, k, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Instantiates a new classification pipeline.
+	 *
+	 * @param knn            the algorithm
+	 * @param k              the k value
+	 * @param computeThreads the number of compute threads
+	 */
+	public ClassificationPipeline(KNN knn, int k, int computeThreads) {
+		this.knn = knn;
+		this.k = k;
+		this.computeThreads = Math.max(1, computeThreads);
+	}
+
+	/**
+	 * Classifies the test files. It returns once all results were handled, 'stop'
+	 * was clicked or a stage failed.
+	 *
+	 * @param files            the test image files
+	 * @param train_features   the feature vectors of training rows
+	 * @param t_labels         the labels of training rows
+	 * @param t_multiplicities the multiplicities of training rows, null if every
+	 *                         row counts once
+	 * @param handler          receives results, always from the calling thread
+	 * @throws Exception throws if a test file is invalid or the handler fails
+	 */
+	public void run(List<File> files, FeatureMatrix train_features, int[] t_labels, int[] t_multiplicities,
+			ResultHandler handler) throws Exception {
+		BlockingQueue<RowData> decoded = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+		BlockingQueue<Classification> results = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+		AtomicReference<Exception> failure = new AtomicReference<>();
+		AtomicInteger next = new AtomicInteger();
+		int decodeThreads = Math.min(DECODE_THREADS, Math.max(1, files.size()));
+		CountDownLatch decodeDone = new CountDownLatch(decodeThreads);
+		CountDownLatch computeDone = new CountDownLatch(computeThreads);
+		ExecutorService decoders = Executors.newFixedThreadPool(decodeThreads, daemon("knn-decode"));
+		ExecutorService workers = Executors.newFixedThreadPool(computeThreads, daemon("knn-compute"));
+		try {
+			for (int i = 0; i < decodeThreads; i++) {
+				decoders.execute(() -> {
+					try {
+						for (int index; (index = next.getAndIncrement()) < files.size() && running(failure);) {
+							List<RowData> rows = DataLoader.load(files.get(index));
+							if (rows != null) {
+								for (RowData row : rows) {
+									put(decoded, row, failure);
+								}
+							}
+						}
+					} catch (InterruptedException e) {
+						// Shut down once the run ended or was stopped.
+					} catch (Exception e) {
+						failure.compareAndSet(null, e);
+					} finally {
+						decodeDone.countDown();
+					}
+				});
+			}
+			for (int i = 0; i < computeThreads; i++) {
+				workers.execute(() -> {
+					QueryContext context = knn.newContext(train_features.getDimension(), k);
+					try {
+						while (running(failure)) {
+							RowData d_img = decoded.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+							if (d_img == null) {
+								if (decodeDone.getCount() == 0 && decoded.isEmpty()) {
+									break; // All images were decoded and taken.
+								}
+								continue;
+							}
+							Classification result = knn.classify(d_img, train_features, t_labels, t_multiplicities, context);
+							if (result != null) {
+								put(results, result, failure);
+							}
+						}
+					} catch (InterruptedException e) {
+						// Shut down once the run ended or was stopped.
+					} catch (Exception e) {
+						failure.compareAndSet(null, e);
+					} finally {
+						computeDone.countDown();
+					}
+				});
+			}
+			while (running(failure)) {
+				Classification result = results.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if (result == null) {
+					if (computeDone.getCount() == 0 && results.isEmpty()) {
+						break; // All images were classified and reported.
+					}
+					continue;
+				}
+				handler.accept(result);
+			}
+		} catch (Exception e) {
+			failure.compareAndSet(null, e);
+		} finally {
+			decoders.shutdownNow();
+			workers.shutdownNow();
+		}
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+	}
+
+	/**
+	 * Helper method to check if stages should go on.
+	 *
+	 * @param failure the first failure of any stage
+	 * @return true, if run is allowed and no stage failed
+	 */
+	private boolean running(AtomicReference<Exception> failure) {
+		return knn.isAllowRun() && failure.get() == null;
+	}
+
+	/**
+	 * Helper method to put the element into the bounded queue, waiting while it
+	 * is full unless the run is stopped.
+	 *
+	 * @param queue   the queue
+	 * @param element the element
+	 * @param failure the first failure of any stage
+	 * @throws InterruptedException if the thread is interrupted
+	 */
+	private <T> void put(BlockingQueue<T> queue, T element, AtomicReference<Exception> failure)
+			throws InterruptedException {
+		while (running(failure)) {
+			if (queue.offer(element, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Helper method to create factory of named daemon threads, so a stuck stage
+	 * never keeps the application alive.
+	 *
+	 * @param name the name of threads
+	 * @return the thread factory
+	 */
+	private static ThreadFactory daemon(String name) {
+		AtomicInteger count = new AtomicInteger();
+		return r -> {
+			Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+}
@@ -0,0 +1,39 @@
+package model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one run of {@link KNN}, from the first test image
+ * to the last one. It costs nothing unless a recording is enabled.
+ */
+@Name("model.ClassificationRun")
+@Label("Classification Run")
+@Category({ "Image Classification" })
+@Description("One run of KNN over all test images")
+public class ClassificationRunEvent extends Event {
+
+	/** The k value. */
+	@Label("K")
+	int k;
+
+	/** The number of training rows. */
+	@Label("Training Rows")
+	int trainingRows;
+
+	/** The number of test images. */
+	@Label("Test Images")
+	int testImages;
+
+	/** The number of classified test images (less if stopped). */
+	@Label("Classified Images")
+	int classifiedImages;
+
+	/** The accuracy in %. */
+	@Label("Accuracy")
+	int accuracy;
+
+}
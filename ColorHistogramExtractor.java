@@ -0,0 +1,61 @@
+package model;
+
+/**
+ * Uses joint RGB color histogram as features. Every channel is quantized to the
+ * given number of bins, so there are bins^3 features which sum up to 1.
+ */
+public class ColorHistogramExtractor implements FeatureExtractor {
+
+	/** The Constant BINS_DEFAULT, 4 bins per channel give 64 features. */
+	public static final int BINS_DEFAULT = 4;
+
+	/** The number of bins per channel. */
+	private final int bins;
+
+	/**
+	 * Instantiates a new color histogram extractor with default number of bins.
+	 */
+	public ColorHistogramExtractor() {
+		this(BINS_DEFAULT);
+	}
+
+	/**
+	 * Instantiates a new color histogram extractor.
+	 *
+	 * @param bins the number of bins per channel (1-256)
+	 */
+	public ColorHistogramExtractor(int bins) {
+		if (bins < 1 || bins > 256) {
+			throw new IllegalArgumentException("Invalid number of bins: " + bins);
+		}
+		this.bins = bins;
+	}
+
+	@Override
+	public String getId() {
+		return "hist:" + bins;
+	}
+
+	@Override
+	public int getDimension() {
+		return bins * bins * bins;
+	}
+
+	@Override
+	public void extract(int[][] image, float[] out, int offset) {
+		int dimension = getDimension();
+		for (int i = 0; i < dimension; i++) {
+			out[offset + i] = 0;
+		}
+		float weight = 1f / (DataLoader.IMG_SIZE * DataLoader.IMG_SIZE);
+		for (int[] column : image) {
+			for (int rgb : column) {
+				int r = (rgb >> 16 & 0xff) * bins >> 8;
+				int g = (rgb >> 8 & 0xff) * bins >> 8;
+				int b = (rgb & 0xff) * bins >> 8;
+				out[offset + (r * bins + g) * bins + b] += weight;
+			}
+		}
+	}
+
+}
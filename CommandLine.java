@@ -0,0 +1,361 @@
+package controller;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import model.AnytimeSettings;
+import model.DataLoader;
+import model.DistanceMetric;
+import model.EvaluationResult;
+import model.FeatureExtractor;
+import model.FolderWatcher;
+import model.Model;
+import model.QueryEngine;
+import model.ShardCoordinator;
+import model.VotingStrategy;
+
+/**
+ * 
+ * Applies command line options to the {@link Model} before the GUI is shown.
+ * Options have the form --name=value, unknown options or invalid values are
+ * reported with {@link IllegalArgumentException}. Some options (for example
+ * --evaluate) run a task without the GUI, see
+ * {@link CommandLine#isHeadless()}.
+ *
+ */
+public class CommandLine {
+
+	/**
+	 * Usage text printed for invalid options.
+	 */
+	public static final String USAGE = String.join(System.lineSeparator(),
+			"Usage: GUI [options]",
+			"  --k=N                  k value (1-10)",
+			"  --metric=NAME          distance metric: l1, l2, cosine, chi2",
+			"  --voting=NAME          voting strategy: majority, distance, rank",
+			"  --features=ID          feature extractor: raw, gray, hist[:bins], hog[:cell[:orientations]]",
+			"  --source=FILE[,FILE]   source (.bin) file(s)",
+			"  --test=FILE            test (.png) image or folder",
+			"  --train-images=FILE[,FILE] labeled (.png) training images or folders, names start with the label",
+			"  --results=FILE         append classification results to the CSV file",
+			"  --anytime=F[:MS]       single test image: provisional answers, stop once stable for F of rows or after MS",
+			"  --keep-resident=true   keep decoded training data in memory between runs and resets",
+			"  --engine=NAME[:N]      engine of runs: auto (planned), sequential, parallel[:threads] or shards[:count]",
+			"  --dedup=MODE           collapse duplicate training rows: off, exact or N (max channel difference)",
+			"  --evaluate=METHOD      evaluate source files without GUI: kfold[:folds] or loo",
+			"  --max-k=N              maximum k evaluated by --evaluate (default 10)",
+			"  --pairwise=true        --evaluate reads distances from a persisted pairwise distance matrix",
+			"  --reduce=STEPS         reduce source files to prototypes without GUI: wilson, cnn or wilson+cnn",
+			"  --reduce-output=FILE   .bin file the prototypes are saved to (default prototypes.bin)",
+			"  --shards=N             classify --test without GUI by N local workers, each with a slice of --source",
+			"  --workers=HOST:PORT[,...] classify --test without GUI by running shard workers",
+			"  --shard-timeout=MS     timeout of connecting to and querying a shard (default 30000)",
+			"  --watch=DIR            without GUI, classify every .png image arriving in DIR until killed");
+
+	/**
+	 * Interval of status lines of --watch in milliseconds.
+	 */
+	private static final long WATCH_STATUS_MILLIS = 5000;
+
+	/**
+	 * The command line arguments.
+	 */
+	private final String[] args;
+
+	/**
+	 * The evaluation method, null if not requested.
+	 */
+	private String evaluate;
+
+	/**
+	 * The maximum k evaluated by --evaluate.
+	 */
+	private int maxK = 10;
+
+	/**
+	 * True if --evaluate uses the persisted pairwise distance matrix.
+	 */
+	private boolean pairwise;
+
+	/**
+	 * The reduction steps, null if not requested.
+	 */
+	private String reduce;
+
+	/**
+	 * The file prototypes are saved to.
+	 */
+	private File reduceOutput = new File("prototypes.bin");
+
+	/**
+	 * The number of local shard workers to launch, 0 if not requested.
+	 */
+	private int shards;
+
+	/**
+	 * The addresses of running shard workers, null if not requested.
+	 */
+	private List<InetSocketAddress> workers;
+
+	/**
+	 * The timeout of shard requests in milliseconds.
+	 */
+	private long shardTimeout = 30_000;
+
+	/**
+	 * The watched folder, null if not requested.
+	 */
+	private File watch;
+
+	/**
+	 * Constructor to initialize CommandLine with the arguments.
+	 * 
+	 * @param args command line arguments
+	 */
+	public CommandLine(String[] args) {
+		this.args = args;
+	}
+
+	/**
+	 * Applies the options to the model.
+	 * 
+	 * @param model {@link Model}
+	 * @throws IllegalArgumentException throws if an option is unknown or invalid
+	 */
+	public void apply(Model model) {
+		for (String arg : args) {
+			int eq = arg.indexOf('=');
+			if (!arg.startsWith("--") || eq < 0) {
+				throw new IllegalArgumentException("Invalid option: " + arg);
+			}
+			String name = arg.substring(2, eq);
+			String value = arg.substring(eq + 1);
+			switch (name) {
+			case "k":
+				int k = Integer.parseInt(value);
+				if (k < 1 || k > 10) {
+					throw new IllegalArgumentException("k must be from 1 to 10: " + value);
+				}
+				model.setK(k);
+				break;
+			case "metric":
+				model.setMetric(DistanceMetric.parse(value));
+				break;
+			case "voting":
+				model.setVoting(VotingStrategy.parse(value));
+				break;
+			case "features":
+				model.setExtractor(FeatureExtractor.forId(value));
+				break;
+			case "source":
+				model.setSourceFiles(files(value));
+				break;
+			case "train-images":
+				List<File> images = new ArrayList<>();
+				for (File file : files(value)) {
+					images.addAll(DataLoader.listTestFiles(file));
+				}
+				model.addTrainingImages(images.toArray(new File[0]));
+				break;
+			case "test":
+				model.setTestFiles(new File(value));
+				break;
+			case "anytime":
+				model.setAnytime(AnytimeSettings.parse(value));
+				break;
+			case "results":
+				model.setResultFile(new File(value));
+				break;
+			case "keep-resident":
+				model.setKeepResident(Boolean.parseBoolean(value));
+				break;
+			case "engine":
+				engine(model, value);
+				break;
+			case "dedup":
+				model.setDedupThreshold(dedupThreshold(value));
+				break;
+			case "evaluate":
+				evaluate = value;
+				break;
+			case "max-k":
+				maxK = Integer.parseInt(value);
+				if (maxK < 1) {
+					throw new IllegalArgumentException("max-k must be positive: " + value);
+				}
+				break;
+			case "pairwise":
+				pairwise = Boolean.parseBoolean(value);
+				break;
+			case "reduce":
+				reduce = value;
+				break;
+			case "reduce-output":
+				reduceOutput = new File(value);
+				break;
+			case "shards":
+				shards = Integer.parseInt(value);
+				if (shards < 1) {
+					throw new IllegalArgumentException("shards must be positive: " + value);
+				}
+				break;
+			case "workers":
+				workers = addresses(value);
+				break;
+			case "shard-timeout":
+				shardTimeout = Long.parseLong(value);
+				if (shardTimeout < 1) {
+					throw new IllegalArgumentException("shard-timeout must be positive: " + value);
+				}
+				break;
+			case "watch":
+				watch = new File(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			}
+		}
+	}
+
+	/**
+	 * Checks if a task without GUI was requested.
+	 * 
+	 * @return true, if headless
+	 */
+	public boolean isHeadless() {
+		return evaluate != null || reduce != null || shards > 0 || workers != null || watch != null;
+	}
+
+	/**
+	 * Runs the requested task without GUI and prints its result.
+	 * 
+	 * @param model {@link Model}
+	 * @throws Exception throws if the task fails
+	 */
+	public void runHeadless(Model model) throws Exception {
+		if (reduce != null) {
+			if (model.getSourceFiles() == null) {
+				throw new IllegalArgumentException("--reduce requires --source");
+			}
+			System.out.print(model.reduce(reduce, reduceOutput));
+		}
+		if (evaluate != null) {
+			if (model.getSourceFiles() == null) {
+				throw new IllegalArgumentException("--evaluate requires --source");
+			}
+			EvaluationResult result = model.evaluate(evaluate, maxK, pairwise);
+			if (model.getDedupReport() != null) {
+				System.out.println(model.getDedupReport());
+			}
+			System.out.print(result);
+		}
+		if (shards > 0 || workers != null) {
+			if (model.getTestImgFilename().isEmpty() || (workers == null && model.getSourceFiles() == null)) {
+				throw new IllegalArgumentException("--shards requires --source and --test, --workers requires --test");
+			}
+			if (workers == null && shards > model.getSourceFiles().length) {
+				throw new IllegalArgumentException("--shards=" + shards + " needs at least " + shards
+						+ " source files, every shard gets whole files: " + model.getSourceFiles().length + " given");
+			}
+			try (ShardCoordinator coordinator = workers != null
+					? ShardCoordinator.connect(workers, model.getExtractor(), model.getMetric(), shardTimeout)
+					: ShardCoordinator.launchLocal(List.of(model.getSourceFiles()), shards, model.getExtractor(),
+							model.getMetric(), shardTimeout)) {
+				System.out.print(model.classifySharded(coordinator));
+			}
+		}
+		if (watch != null) {
+			if (model.getSourceFiles() == null) {
+				throw new IllegalArgumentException("--watch requires --source");
+			}
+			try (FolderWatcher watcher = model.watch(watch)) {
+				System.err.println("Watching " + watch + " for .png images, stop with Ctrl+C");
+				String status = "";
+				while (watcher.isRunning()) { // Status goes to stderr, results may go to stdout.
+					Thread.sleep(WATCH_STATUS_MILLIS);
+					if (!watcher.toString().equals(status)) {
+						status = watcher.toString();
+						System.err.println(status);
+					}
+				}
+				if (watcher.getFailure() != null) {
+					throw watcher.getFailure();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Helper method to parse the --dedup value.
+	 * 
+	 * @param value off, exact or the threshold
+	 * @return the threshold, negative if off
+	 */
+	private static int dedupThreshold(String value) {
+		switch (value.trim().toLowerCase()) {
+		case "off":
+			return -1;
+		case "exact":
+			return 0;
+		default:
+			int threshold = Integer.parseInt(value.trim());
+			if (threshold < 0 || threshold > 255) {
+				throw new IllegalArgumentException("dedup threshold must be from 0 to 255: " + value);
+			}
+			return threshold;
+		}
+	}
+
+	/**
+	 * Helper method to apply the --engine value.
+	 * 
+	 * @param model {@link Model}
+	 * @param value auto or the engine name, optionally followed by :N
+	 */
+	private static void engine(Model model, String value) {
+		int colon = value.indexOf(':');
+		String name = colon < 0 ? value : value.substring(0, colon);
+		int parallelism = colon < 0 ? 0 : Integer.parseInt(value.substring(colon + 1).trim());
+		if (parallelism < 0) {
+			throw new IllegalArgumentException("engine parallelism must be positive: " + value);
+		}
+		model.setEngine(name.trim().equalsIgnoreCase("auto") ? null : QueryEngine.parse(name), parallelism);
+	}
+
+	/**
+	 * Helper method to parse comma separated host:port addresses.
+	 * 
+	 * @param value comma separated addresses
+	 * @return the addresses
+	 */
+	private static List<InetSocketAddress> addresses(String value) {
+		List<InetSocketAddress> result = new ArrayList<>();
+		for (String address : value.split(",")) {
+			int colon = address.lastIndexOf(':');
+			if (colon < 0) {
+				throw new IllegalArgumentException("Invalid worker address: " + address);
+			}
+			result.add(new InetSocketAddress(address.substring(0, colon),
+					Integer.parseInt(address.substring(colon + 1))));
+		}
+		return result;
+	}
+
+	/**
+	 * Helper method to split comma separated file names.
+	 * 
+	 * @param value comma separated file names
+	 * @return the files
+	 */
+	private static File[] files(String value) {
+		String[] names = value.split(",");
+		File[] result = new File[names.length];
+		for (int i = 0; i < names.length; i++) {
+			result[i] = new File(names[i]);
+		}
+		return result;
+	}
+
+}
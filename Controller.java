@@ -1,6 +1,13 @@
 package controller;
 
+import javax.swing.JRadioButtonMenuItem;
+
+import model.AnytimeSettings;
+import model.DistanceMetric;
+import model.FeatureExtractor;
 import model.Model;
+import model.QueryEngine;
+import model.VotingStrategy;
 import view.GUI;
 
 /**
@@ -41,11 +48,29 @@ public class Controller {
 	public void init() {
 
 		model.addObserver(view.getOptionsView()); // To update selected files once model updated.
+		model.addObserver(view.getMenuView()); // To enable adding files before a run only.
 		model.addObserver(view.getProgressView()); // To update progress.
 		model.addObserver(view.getResultView()); // To update result.
+		model.addObserver(view.getResultsBrowser()); // To update results of every image.
 		model.getKnn().addObserver(model); // To update model once KNN changes (progress bar).
 
 		view.getMenuView().getMenuItemExit().addActionListener(e -> view.exit());
+		view.getMenuView().getMenuItemAddSrc()
+				.addActionListener(e -> model.addSourceFiles(view.getOptionsView().getSourceFiles()));
+		view.getMenuView().getMenuItemAddImages()
+				.addActionListener(e -> model.addTrainingImages(view.getOptionsView().getTrainingImages()));
+		view.getMenuView().getMenuItemAnytime().setSelected(model.getAnytime() != null);
+		view.getMenuView().getMenuItemAnytime().addActionListener(e -> model.setAnytime(
+				view.getMenuView().getMenuItemAnytime().isSelected() ? AnytimeSettings.DEFAULT : null));
+		view.getMenuView().getMenuItemKeepResident().setSelected(model.isKeepResident());
+		view.getMenuView().getMenuItemKeepResident().addActionListener(
+				e -> model.setKeepResident(view.getMenuView().getMenuItemKeepResident().isSelected()));
+		JRadioButtonMenuItem[] engines = view.getMenuView().getMenuItemsEngine();
+		for (int i = 0; i < engines.length; i++) {
+			QueryEngine engine = i == 0 ? null : QueryEngine.values()[i - 1];
+			engines[i].setSelected(engine == model.getEngine());
+			engines[i].addActionListener(e -> model.setEngine(engine, 0));
+		}
 		view.getOptionsView().getBtnStart().addActionListener(e -> model.start());
 		view.getOptionsView().getBtnSrc()
 				.addActionListener(e -> model.setSourceFiles(view.getOptionsView().getSourceFiles()));
@@ -55,6 +80,28 @@ public class Controller {
 		view.getOptionsView().getInputK()
 				.addChangeListener(e -> model.setK((int) view.getOptionsView().getInputK().getModel().getValue()));
 		view.getOptionsView().getBtnReset().addActionListener(e -> model.reset());
+		view.getResultView().getBtnExact().addActionListener(e -> model.startExact());
+		view.getResultView().getBtnBrowse().addActionListener(e -> view.getResultsBrowser().open(model.getResults()));
+		view.getOptionsView().getInputVoting().addActionListener(e -> {
+			VotingStrategy voting = (VotingStrategy) view.getOptionsView().getInputVoting().getSelectedItem();
+			if (voting != model.getVoting()) { // Views select the current strategy on every update.
+				model.setVoting(voting);
+			}
+		});
+		view.getOptionsView().getInputMetric().addActionListener(e -> {
+			DistanceMetric metric = (DistanceMetric) view.getOptionsView().getInputMetric().getSelectedItem();
+			if (metric != model.getMetric()) { // Views select the current metric on every update.
+				model.setMetric(metric);
+			}
+		});
+		view.getOptionsView().getInputFeatures().addActionListener(e -> {
+			String features = (String) view.getOptionsView().getInputFeatures().getSelectedItem();
+			if (!features.equals(model.getExtractor().getId())) { // Views select the current one on every update.
+				model.setExtractor(FeatureExtractor.forId(features));
+			}
+		});
+
+		view.getOptionsView().update(model, null); // Show values set from the command line.
 	}
 
 }
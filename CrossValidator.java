@@ -0,0 +1,272 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Evaluates KNN directly on the training set with k-fold cross-validation or
+ * leave-one-out. Instead of running {@link KNN} once per fold and per k value,
+ * it searches the nearest rows of every row once: the distance of every pair of
+ * rows is computed exactly once per evaluation and offered to the neighbor
+ * heaps of both rows (rows of the same fold are skipped). Heaps keep maxK rows,
+ * so every k from 1 to maxK is evaluated from the same heaps.
+ * <p>
+ * Rows are split into blocks and pairs of blocks are processed in rounds of a
+ * round-robin schedule: in one round every block is in exactly one pair, so the
+ * pairs update disjoint heaps and run in parallel without locks.
+ * <p>
+ * Rows of a deduplicated training set stand for several loaded rows: they vote
+ * and are counted with their multiplicities, so the result is (almost) the one
+ * of the set before deduplication. The copies of a row are always in the same
+ * fold; in leave-one-out, the other copies of the held-out row are its nearest
+ * neighbors.
+ */
+public class CrossValidator {
+
+	/** The distance metric, it must be symmetric. */
+	private final DistanceMetric metric;
+
+	/** The voting strategy. */
+	private final VotingStrategy voting;
+
+	/** The maximum evaluated k. */
+	private final int maxK;
+
+	/** Precomputed distances of all pairs, null to compute them. */
+	private PairwiseDistances distances;
+
+	/**
+	 * Instantiates a new cross validator.
+	 *
+	 * @param metric the distance metric
+	 * @param voting the voting strategy
+	 * @param maxK   the maximum evaluated k
+	 */
+	public CrossValidator(DistanceMetric metric, VotingStrategy voting, int maxK) {
+		this.metric = metric;
+		this.voting = voting;
+		this.maxK = maxK;
+	}
+
+	/**
+	 * Sets precomputed distances of all pairs of rows, they are read instead of
+	 * computed.
+	 *
+	 * @param distances the pairwise distances, null to compute distances
+	 */
+	public void setDistances(PairwiseDistances distances) {
+		this.distances = distances;
+	}
+
+	/**
+	 * Runs k-fold cross-validation. Rows are shuffled and split into folds of
+	 * (almost) the same size.
+	 *
+	 * @param features       the feature vectors of rows
+	 * @param labels         the labels of rows
+	 * @param multiplicities the multiplicities of rows, null if every row counts
+	 *                       once
+	 * @param rows           the number of rows
+	 * @param folds          the number of folds (at least 2)
+	 * @param seed           the seed of the shuffle
+	 * @return the evaluation result
+	 */
+	public EvaluationResult kFold(FeatureMatrix features, int[] labels, int[] multiplicities, int rows, int folds,
+			long seed) {
+		if (folds < 2 || folds > rows) {
+			throw new IllegalArgumentException("Invalid number of folds: " + folds);
+		}
+		int[] permutation = IntStream.range(0, rows).toArray();
+		Random random = new Random(seed);
+		for (int i = rows - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = permutation[i];
+			permutation[i] = permutation[j];
+			permutation[j] = swap;
+		}
+		int[] fold = new int[rows];
+		for (int i = 0; i < rows; i++) {
+			fold[permutation[i]] = i % folds;
+		}
+		return evaluate(features, labels, multiplicities, rows, fold, false, folds + "-fold");
+	}
+
+	/**
+	 * Runs leave-one-out evaluation: every row is classified by all other rows.
+	 *
+	 * @param features       the feature vectors of rows
+	 * @param labels         the labels of rows
+	 * @param multiplicities the multiplicities of rows, null if every row counts
+	 *                       once
+	 * @param rows           the number of rows
+	 * @return the evaluation result
+	 */
+	public EvaluationResult leaveOneOut(FeatureMatrix features, int[] labels, int[] multiplicities, int rows) {
+		return evaluate(features, labels, multiplicities, rows, IntStream.range(0, rows).toArray(), true,
+				"leave-one-out");
+	}
+
+	/**
+	 * Classifies every row by its maxK nearest other rows (leave-one-out) and
+	 * returns the estimated labels, for example to find rows which disagree with
+	 * their neighborhood.
+	 *
+	 * @param features       the feature vectors of rows
+	 * @param labels         the labels of rows
+	 * @param multiplicities the multiplicities of rows, null if every row counts
+	 *                       once
+	 * @param rows           the number of rows
+	 * @return the estimated label of every row
+	 */
+	public int[] predictLeaveOneOut(FeatureMatrix features, int[] labels, int[] multiplicities, int rows) {
+		NeighborHeap[] heaps = new NeighborHeap[rows];
+		for (int i = 0; i < rows; i++) {
+			heaps[i] = new NeighborHeap(maxK);
+		}
+		search(features, rows, IntStream.range(0, rows).toArray(), heaps);
+		int[] result = new int[rows];
+		int[] votes = multiplicities != null ? Arrays.copyOf(multiplicities, rows) : null;
+		Voter voter = new Voter(voting);
+		for (int i = 0; i < rows; i++) {
+			boolean twins = addTwins(heaps[i], votes, i);
+			heaps[i].sort();
+			result[i] = voter.vote(heaps[i], labels, votes, maxK, null);
+			if (twins) {
+				votes[i]++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Helper method to search neighbors of all rows and vote for every k.
+	 *
+	 * @param features       the feature vectors of rows
+	 * @param labels         the labels of rows
+	 * @param multiplicities the multiplicities of rows, null if every row counts
+	 *                       once
+	 * @param rows           the number of rows
+	 * @param fold           the fold of every row, rows of the same fold are not
+	 *                       neighbors
+	 * @param twins          true if the other copies of a row are its neighbors
+	 * @param name           the name of the evaluation
+	 * @return the evaluation result
+	 */
+	private EvaluationResult evaluate(FeatureMatrix features, int[] labels, int[] multiplicities, int rows,
+			int[] fold, boolean twins, String name) {
+		long start = System.nanoTime();
+		NeighborHeap[] heaps = new NeighborHeap[rows];
+		for (int i = 0; i < rows; i++) {
+			heaps[i] = new NeighborHeap(maxK);
+		}
+		search(features, rows, fold, heaps);
+
+		// Every k from 1 to maxK is voted from the same sorted heaps.
+		int[][][] confusion = new int[maxK + 1][DataLoader.NUM_LABELS][DataLoader.NUM_LABELS];
+		int[] votes = multiplicities != null ? Arrays.copyOf(multiplicities, rows) : null;
+		int copies = 0;
+		Voter voter = new Voter(voting);
+		for (int i = 0; i < rows; i++) {
+			int count = votes != null ? votes[i] : 1;
+			boolean added = twins && addTwins(heaps[i], votes, i);
+			heaps[i].sort();
+			for (int k = 1; k <= maxK; k++) {
+				confusion[k][labels[i]][voter.vote(heaps[i], labels, votes, k, null)] += count;
+			}
+			if (added) {
+				votes[i]++;
+			}
+			copies += count;
+		}
+		return new EvaluationResult(name, copies, confusion, System.nanoTime() - start);
+	}
+
+	/**
+	 * Helper method to offer the other copies of a held-out row to its heap: the
+	 * row itself at distance 0, voting with one copy less. The caller restores
+	 * the multiplicity after the vote.
+	 *
+	 * @param heap  the heap of the row
+	 * @param votes the multiplicities of rows, null if every row counts once
+	 * @param row   the row
+	 * @return true, if the multiplicity of the row was decremented
+	 */
+	private static boolean addTwins(NeighborHeap heap, int[] votes, int row) {
+		if (votes == null || votes[row] < 2) {
+			return false;
+		}
+		votes[row]--;
+		heap.offer(0, row);
+		return true;
+	}
+
+	/**
+	 * Helper method to compute the distance of every pair of rows once and offer
+	 * it to the heaps of both rows.
+	 *
+	 * @param features the feature vectors of rows
+	 * @param rows     the number of rows
+	 * @param fold     the fold of every row
+	 * @param heaps    the heaps of rows
+	 */
+	private void search(FeatureMatrix features, int rows, int[] fold, NeighborHeap[] heaps) {
+		int blocks = Math.max(2, 4 * Runtime.getRuntime().availableProcessors());
+		blocks = Math.min(blocks + (blocks & 1), rows + (rows & 1)); // The schedule needs an even number.
+		int size = (rows + blocks - 1) / blocks;
+		int count = blocks;
+
+		// Blocks with themselves, all of them are independent.
+		IntStream.range(0, count).parallel().forEach(a -> tile(features, fold, heaps, a * size,
+				Math.min(rows, (a + 1) * size), a * size, Math.min(rows, (a + 1) * size)));
+
+		// Round-robin (circle method): block 0 is fixed, the others rotate.
+		for (int round = 0; round < count - 1; round++) {
+			final int r = round;
+			IntStream.range(0, count / 2).parallel().forEach(p -> {
+				int a = p == 0 ? 0 : 1 + (r + p - 1) % (count - 1);
+				int b = 1 + (r + count - 2 - p) % (count - 1);
+				tile(features, fold, heaps, a * size, Math.min(rows, (a + 1) * size), b * size,
+						Math.min(rows, (b + 1) * size));
+			});
+		}
+	}
+
+	/**
+	 * Helper method to process all pairs of rows of two blocks. If both blocks are
+	 * the same, every pair is processed once.
+	 *
+	 * @param features the feature vectors of rows
+	 * @param fold     the fold of every row
+	 * @param heaps    the heaps of rows
+	 * @param aFrom    the first row of the first block
+	 * @param aTo      the end (exclusive) of the first block
+	 * @param bFrom    the first row of the second block
+	 * @param bTo      the end (exclusive) of the second block
+	 */
+	private void tile(FeatureMatrix features, int[] fold, NeighborHeap[] heaps, int aFrom, int aTo, int bFrom,
+			int bTo) {
+		float[] data = features.getData();
+		int dimension = features.getDimension();
+		float[] query = new float[dimension];
+		for (int i = aFrom; i < aTo; i++) {
+			System.arraycopy(data, features.offset(i), query, 0, dimension);
+			double norm = features.getNorm(i);
+			NeighborHeap heap = heaps[i];
+			for (int j = aFrom == bFrom ? i + 1 : bFrom; j < bTo; j++) {
+				if (fold[i] == fold[j]) {
+					continue;
+				}
+				double bound = Math.max(heap.bound(), heaps[j].bound());
+				double distance = distances != null ? distances.get(i, j)
+						: metric.distance(query, norm, data, features.offset(j), features.getNorm(j), dimension,
+								bound);
+				if (distance <= bound) {
+					heap.offer(distance, j);
+					heaps[j].offer(distance, i);
+				}
+			}
+		}
+	}
+
+}
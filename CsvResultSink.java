@@ -0,0 +1,80 @@
+package model;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Writes classification results as CSV lines: file, expected label, estimated
+ * label, confidence. Results are appended, so continuous runs can share one
+ * file. File names are quoted as in RFC 4180 if needed.
+ */
+public class CsvResultSink implements ResultSink {
+
+	/** The writer. */
+	private final BufferedWriter writer;
+
+	/**
+	 * Instantiates a new CSV result sink. A header is written to a new file.
+	 *
+	 * @param file the file
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public CsvResultSink(File file) throws IOException {
+		this(new FileWriter(file, true), !file.exists() || file.length() == 0);
+	}
+
+	/**
+	 * Instantiates a new CSV result sink writing to the writer, e.g. standard
+	 * output.
+	 *
+	 * @param out    the writer, it is closed with the sink
+	 * @param header true to write the header first
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public CsvResultSink(Writer out, boolean header) throws IOException {
+		writer = new BufferedWriter(out);
+		if (header) {
+			writer.write("file,expected,estimated,confidence");
+			writer.newLine();
+		}
+	}
+
+	@Override
+	public void write(Classification result) throws IOException {
+		writer.write(result.getSource() != null ? quote(result.getSource().getPath()) : "");
+		writer.write(String.format(Locale.ROOT, ",%d,%d,%.3f", result.getExpectedLabel(), result.getLabel(),
+				result.getConfidence()));
+		writer.newLine();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+
+	/**
+	 * Helper method to quote a field which contains a comma, a double quote or a
+	 * line break: it is enclosed in double quotes and its double quotes are
+	 * doubled.
+	 *
+	 * @param field the field
+	 * @return the field as written to CSV
+	 */
+	private static String quote(String field) {
+		if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0
+				&& field.indexOf('\r') < 0) {
+			return field;
+		}
+		return '"' + field.replace("\"", "\"\"") + '"';
+	}
+
+}
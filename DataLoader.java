@@ -1,14 +1,19 @@
 package model;
 
-import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-
-import javax.imageio.ImageIO;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
 
 /**
  * 
@@ -22,11 +27,26 @@ public class DataLoader {
 	 */
 	public final static int IMG_SIZE = 32;
 
+	/**
+	 * Number of image classes, labels are values from 0 to 9.
+	 */
+	public final static int NUM_LABELS = 10;
+
 	/**
 	 * First element defines label, next 3072 are values of pixels.
 	 */
 	private final static int ROW_LENGTH = 3073;
 
+	/**
+	 * Reads the next .bin file while the current one is decoded, see
+	 * {@link DataLoader#loadEach(List, BiConsumer)}.
+	 */
+	private final static ExecutorService READ_AHEAD = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "bin-read-ahead");
+		thread.setDaemon(true);
+		return thread;
+	});
+
 	/**
 	 * Accepts single or multiple files and returns list of {@link RowData}.
 	 * Depending on what extension the file(s) has, it calls appropriate helper
@@ -52,34 +72,128 @@ public class DataLoader {
 		return result;
 	}
 
+	/**
+	 * Loads the files one by one and passes rows of every file to the consumer
+	 * as soon as the file is decoded. Bytes of the next .bin file are read in
+	 * background while the current file is decoded, so reading and decoding
+	 * overlap.
+	 * 
+	 * @param files    .bin files or labeled .png images
+	 * @param consumer receives every file with its rows, in the order of files
+	 * @throws Exception throws if input file is invalid or does not exist
+	 */
+	public static void loadEach(List<File> files, BiConsumer<File, List<RowData>> consumer) throws Exception {
+		CompletableFuture<byte[]> next = readAhead(files, 0);
+		for (int i = 0; i < files.size(); i++) {
+			File file = files.get(i);
+			CompletableFuture<byte[]> current = next;
+			next = readAhead(files, i + 1);
+			if (current == null) {
+				consumer.accept(file, load(file));
+				continue;
+			}
+			long start = System.nanoTime();
+			byte[] input;
+			try {
+				input = current.join();
+			} catch (CompletionException e) {
+				throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+			}
+			consumer.accept(file, decodeTrainFile(file, input, start));
+		}
+	}
+
+	/**
+	 * Writes rows to a .bin file in the format read by
+	 * {@link DataLoader#load(File...)}: label followed by red, green and blue
+	 * values of all pixels.
+	 * 
+	 * @param file output .bin file
+	 * @param rows the rows
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static void writeTrainFile(File file, List<RowData> rows) throws IOException {
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+			byte[] row = new byte[ROW_LENGTH];
+			for (RowData data : rows) {
+				row[0] = (byte) data.getLabel();
+				int[][] t_img = data.getImage();
+				int i = 1;
+				for (int y = 0; y < IMG_SIZE; y++) {
+					for (int x = 0; x < IMG_SIZE; x++) {
+						int rgb = t_img[x][y];
+						row[i] = (byte) (rgb >> 16);
+						row[i + 1024] = (byte) (rgb >> 8);
+						row[i + 2048] = (byte) rgb;
+						i++;
+					}
+				}
+				out.write(row);
+			}
+		}
+	}
+
+	/**
+	 * Counts rows of the .bin file from its size, without reading it.
+	 * 
+	 * @param binFile the .bin file
+	 * @return the number of rows
+	 */
+	public static long countRows(File binFile) {
+		return (binFile.length() + ROW_LENGTH - 1) / ROW_LENGTH;
+	}
+
+	/**
+	 * Lists test images: all files of the directory (sorted by name) or the
+	 * single file.
+	 * 
+	 * @param file .png file or directory with .png files
+	 * @return the test images
+	 */
+	public static List<File> listTestFiles(File file) {
+		if (!file.isDirectory()) {
+			return List.of(file);
+		}
+		File[] files = file.listFiles();
+		Arrays.sort(files);
+		return List.of(files);
+	}
+
+	/**
+	 * Helper method to start reading of the i-th file in background if it is a
+	 * .bin file.
+	 * 
+	 * @param files the files
+	 * @param i     the index of the file
+	 * @return the future bytes, null if there is no such .bin file
+	 */
+	private static CompletableFuture<byte[]> readAhead(List<File> files, int i) {
+		if (i >= files.size() || !files.get(i).getName().toLowerCase().endsWith(".bin")) {
+			return null;
+		}
+		File file = files.get(i);
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return Files.readAllBytes(file.toPath());
+			} catch (Exception e) {
+				throw new CompletionException(e);
+			}
+		}, READ_AHEAD);
+	}
+
 	/**
 	 * Helper method to get list of {@link RowData} from the input test file or
-	 * folder with multiple test files. First, it reads the image and convert it to
-	 * BufferedImage, the creates d_img 2D array of pixels to get RGB value from
-	 * every pixel of BufferedImage and store it to the 2D array.
+	 * folder with multiple test files. Images of any size are decoded in parallel
+	 * and area-averaged to 32x32 pixels by {@link ImageIngest}; the label is the
+	 * first character of the file name, it is required to compare with the label
+	 * of train image.
 	 * 
 	 * @param files input file/folder
 	 * @return list of {@link RowData}
 	 * @throws Exception throws if invalid file
 	 */
 	private static List<RowData> loadTestFiles(File... files) throws Exception {
-		List<RowData> result = new ArrayList<>();
-		for (File testImg : files) {
-			BufferedImage bi = ImageIO.read(testImg);
-			int[][] d_img = new int[IMG_SIZE][IMG_SIZE];
-			for (int y = 0; y < IMG_SIZE; y++) {
-				for (int x = 0; x < IMG_SIZE; x++) {
-					d_img[x][y] = bi.getRGB(x, y);
-				}
-			}
-
-			// Retrieve label from file name and store it as well.
-			// Label of test image is required to compare with the label
-			// of train image.
-			int label = Integer.parseInt(testImg.getName().substring(0, 1));
-			result.add(new RowData(d_img, label));
-		}
-		return result;
+		return new ArrayList<>(ImageIngest.load(files));
 	}
 
 	/**
@@ -102,22 +216,62 @@ public class DataLoader {
 	private static List<RowData> loadTrainFiles(File... files) throws Exception {
 		List<RowData> result = new ArrayList<>();
 		for (File binFile : files) {
-			byte[] input = Files.readAllBytes(binFile.toPath());
-			for (int j = 0; j < input.length; j += ROW_LENGTH) {
-				byte[] image = Arrays.copyOfRange(input, j + 1, j + ROW_LENGTH);
-				int[][] t_img = new int[IMG_SIZE][IMG_SIZE];
-				int i = 0;
-				for (int y = 0; y < IMG_SIZE; y++) {
-					for (int x = 0; x < IMG_SIZE; x++) {
-						int rgb = (image[i] & 0xff) << 16 | (image[i + 1024] & 0xff) << 8 | (image[i + 2048] & 0xff);
-						t_img[x][y] = rgb;
-						i++;
-					}
+			long start = System.nanoTime();
+			result.addAll(decodeTrainFile(binFile, Files.readAllBytes(binFile.toPath()), start));
+		}
+		return result;
+	}
+
+	/**
+	 * Helper method to decode rows of one .bin file, see
+	 * {@link DataLoader#loadTrainFiles(File...)} for the format.
+	 * 
+	 * @param binFile input file
+	 * @param input   bytes of the file
+	 * @param start   the time the load of the file started at (for metrics)
+	 * @return list of {@link RowData}
+	 */
+	private static List<RowData> decodeTrainFile(File binFile, byte[] input, long start) {
+		List<RowData> result = new ArrayList<>(input.length / ROW_LENGTH + 1);
+		LoadEvent event = new LoadEvent();
+		event.begin();
+		for (int j = 0; j < input.length; j += ROW_LENGTH) {
+			byte[] image = Arrays.copyOfRange(input, j + 1, j + ROW_LENGTH);
+			int[][] t_img = new int[IMG_SIZE][IMG_SIZE];
+			int i = 0;
+			for (int y = 0; y < IMG_SIZE; y++) {
+				for (int x = 0; x < IMG_SIZE; x++) {
+					int rgb = (image[i] & 0xff) << 16 | (image[i + 1024] & 0xff) << 8 | (image[i + 2048] & 0xff);
+					t_img[x][y] = rgb;
+					i++;
 				}
-				result.add(new RowData(t_img, input[j]));
 			}
+			result.add(new RowData(t_img, input[j]));
 		}
+		PerfStats.get().recordBinLoad(System.nanoTime() - start, input.length);
+		commit(event, binFile, "bin", input.length, (input.length + ROW_LENGTH - 1) / ROW_LENGTH);
 		return result;
 	}
 
+	/**
+	 * Helper method to fill in and commit Flight Recorder event for the loaded
+	 * file. Fields are set only if the event is recorded.
+	 * 
+	 * @param event {@link LoadEvent}
+	 * @param file  loaded file
+	 * @param kind  bin or png
+	 * @param bytes size of the file
+	 * @param rows  number of decoded rows
+	 */
+	private static void commit(LoadEvent event, File file, String kind, long bytes, int rows) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.path = file.getPath();
+			event.kind = kind;
+			event.bytes = bytes;
+			event.rows = rows;
+			event.commit();
+		}
+	}
+
 }
@@ -0,0 +1,295 @@
+package perf;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import model.DataLoader;
+import model.RowData;
+
+/**
+ * Generates synthetic data sets in the CIFAR format read by {@link DataLoader}:
+ * .bin files of 3073-byte records (label and red, green and blue planes) and a
+ * folder of 32x32 PNG test images whose names start with the label. Every class
+ * has a few clusters; a cluster center is a smooth random image and rows are
+ * centers with Gaussian noise, so the difficulty is controlled by the number of
+ * clusters and the noise. Run it with ant dataset, options:
+ * <ul>
+ * <li>--out=DIR output directory (default dataset),</li>
+ * <li>--rows=N training rows (default 10000),</li>
+ * <li>--rows-per-file=N rows of one .bin file (default 10000),</li>
+ * <li>--test=N test images (default 100),</li>
+ * <li>--balance=uniform, zipf:S or ten comma separated class weights,</li>
+ * <li>--clusters=N clusters per class (default 3),</li>
+ * <li>--noise=SIGMA standard deviation of the noise per channel (default 40),</li>
+ * <li>--seed=N seed of the generator (default 1).</li>
+ * </ul>
+ */
+public class DatasetGenerator {
+
+	/** The size of the grid of random colors which is upsampled to a center. */
+	private static final int GRID = 4;
+
+	/** The random generator. */
+	private final Random random;
+
+	/** The cumulative weights of classes, the last one is 1. */
+	private final double[] cumulative;
+
+	/** The cluster centers per class, as 32x32 arrays of RGB pixels. */
+	private final int[][][][] centers;
+
+	/** The standard deviation of the noise per channel. */
+	private final double noise;
+
+	/**
+	 * Instantiates a new dataset generator.
+	 *
+	 * @param seed     the seed
+	 * @param weights  the weights of classes
+	 * @param clusters the number of clusters per class
+	 * @param noise    the standard deviation of the noise per channel
+	 */
+	public DatasetGenerator(long seed, double[] weights, int clusters, double noise) {
+		random = new Random(seed);
+		cumulative = new double[DataLoader.NUM_LABELS];
+		double total = 0;
+		for (double weight : weights) {
+			total += weight;
+		}
+		double sum = 0;
+		for (int label = 0; label < DataLoader.NUM_LABELS; label++) {
+			sum += weights[label] / total;
+			cumulative[label] = sum;
+		}
+		cumulative[DataLoader.NUM_LABELS - 1] = 1;
+		centers = new int[DataLoader.NUM_LABELS][clusters][][];
+		for (int[][][] label : centers) {
+			for (int c = 0; c < clusters; c++) {
+				label[c] = center();
+			}
+		}
+		this.noise = noise;
+	}
+
+	/**
+	 * Generates the next row: a random class by the weights, a random cluster of
+	 * the class and noise.
+	 *
+	 * @return the row
+	 */
+	public RowData next() {
+		double r = random.nextDouble();
+		int label = 0;
+		while (cumulative[label] < r) {
+			label++;
+		}
+		int[][] center = centers[label][random.nextInt(centers[label].length)];
+		int[][] image = new int[DataLoader.IMG_SIZE][DataLoader.IMG_SIZE];
+		for (int x = 0; x < DataLoader.IMG_SIZE; x++) {
+			for (int y = 0; y < DataLoader.IMG_SIZE; y++) {
+				int rgb = center[x][y];
+				image[x][y] = channel(rgb >> 16) << 16 | channel(rgb >> 8) << 8 | channel(rgb);
+			}
+		}
+		return new RowData(image, label);
+	}
+
+	/**
+	 * Writes training rows to .bin files data_batch_1.bin, data_batch_2.bin and
+	 * so on.
+	 *
+	 * @param dir         the output directory
+	 * @param rows        the number of rows
+	 * @param rowsPerFile the number of rows of one file
+	 * @return the written files
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public List<File> writeTrainFiles(File dir, long rows, int rowsPerFile) throws IOException {
+		List<File> files = new ArrayList<>();
+		for (long written = 0; written < rows; written += rowsPerFile) {
+			int count = (int) Math.min(rowsPerFile, rows - written);
+			List<RowData> batch = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				batch.add(next());
+			}
+			File file = new File(dir, "data_batch_" + (files.size() + 1) + ".bin");
+			DataLoader.writeTrainFile(file, batch);
+			files.add(file);
+		}
+		return files;
+	}
+
+	/**
+	 * Writes test images as PNG files named label_number.png.
+	 *
+	 * @param dir   the output directory
+	 * @param count the number of images
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void writeTestFiles(File dir, int count) throws IOException {
+		for (int i = 0; i < count; i++) {
+			RowData row = next();
+			BufferedImage image = new BufferedImage(DataLoader.IMG_SIZE, DataLoader.IMG_SIZE,
+					BufferedImage.TYPE_INT_RGB);
+			for (int x = 0; x < DataLoader.IMG_SIZE; x++) {
+				for (int y = 0; y < DataLoader.IMG_SIZE; y++) {
+					image.setRGB(x, y, row.getImage()[x][y]);
+				}
+			}
+			ImageIO.write(image, "png", new File(dir, row.getLabel() + "_" + i + ".png"));
+		}
+	}
+
+	/**
+	 * Helper method to add noise to the channel of the pixel.
+	 *
+	 * @param value the pixel shifted so the channel is the lowest byte
+	 * @return the channel with noise, 0-255
+	 */
+	private int channel(int value) {
+		return (int) Math.max(0, Math.min(255, Math.round((value & 0xff) + random.nextGaussian() * noise)));
+	}
+
+	/**
+	 * Helper method to create a smooth random image: a small grid of random
+	 * colors bilinearly upsampled to 32x32.
+	 *
+	 * @return the image
+	 */
+	private int[][] center() {
+		int[][][] grid = new int[GRID + 1][GRID + 1][3];
+		for (int[][] row : grid) {
+			for (int[] color : row) {
+				for (int c = 0; c < 3; c++) {
+					color[c] = random.nextInt(256);
+				}
+			}
+		}
+		int[][] image = new int[DataLoader.IMG_SIZE][DataLoader.IMG_SIZE];
+		double scale = (double) GRID / (DataLoader.IMG_SIZE - 1);
+		for (int x = 0; x < DataLoader.IMG_SIZE; x++) {
+			for (int y = 0; y < DataLoader.IMG_SIZE; y++) {
+				double gx = x * scale;
+				double gy = y * scale;
+				int x0 = Math.min(GRID - 1, (int) gx);
+				int y0 = Math.min(GRID - 1, (int) gy);
+				double fx = gx - x0;
+				double fy = gy - y0;
+				int rgb = 0;
+				for (int c = 0; c < 3; c++) {
+					double value = grid[x0][y0][c] * (1 - fx) * (1 - fy) + grid[x0 + 1][y0][c] * fx * (1 - fy)
+							+ grid[x0][y0 + 1][c] * (1 - fx) * fy + grid[x0 + 1][y0 + 1][c] * fx * fy;
+					rgb = rgb << 8 | (int) Math.round(value);
+				}
+				image[x][y] = rgb;
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * Helper method to parse the class balance.
+	 *
+	 * @param value uniform, zipf:S or ten comma separated weights
+	 * @return the weights of classes
+	 */
+	private static double[] balance(String value) {
+		double[] weights = new double[DataLoader.NUM_LABELS];
+		if (value.equals("uniform")) {
+			Arrays.fill(weights, 1);
+		} else if (value.startsWith("zipf:")) {
+			double s = Double.parseDouble(value.substring(5));
+			for (int label = 0; label < weights.length; label++) {
+				weights[label] = 1 / Math.pow(label + 1, s);
+			}
+		} else {
+			String[] parts = value.split(",");
+			if (parts.length != weights.length) {
+				throw new IllegalArgumentException("Expected " + weights.length + " class weights: " + value);
+			}
+			for (int label = 0; label < weights.length; label++) {
+				weights[label] = Double.parseDouble(parts[label]);
+				if (weights[label] < 0) {
+					throw new IllegalArgumentException("Negative class weight: " + value);
+				}
+			}
+			if (Arrays.stream(weights).sum() <= 0) {
+				throw new IllegalArgumentException("No class has a positive weight: " + value);
+			}
+		}
+		return weights;
+	}
+
+	/**
+	 * The main method.
+	 *
+	 * @param args the options, see {@link DatasetGenerator}
+	 * @throws Exception throws if an option is invalid or files cannot be written
+	 */
+	public static void main(String[] args) throws Exception {
+		File out = new File("dataset");
+		long rows = 10_000;
+		int rowsPerFile = 10_000;
+		int test = 100;
+		String balance = "uniform";
+		int clusters = 3;
+		double noise = 40;
+		long seed = 1;
+		for (String arg : args) {
+			int eq = arg.indexOf('=');
+			if (!arg.startsWith("--") || eq < 0) {
+				throw new IllegalArgumentException("Invalid option: " + arg);
+			}
+			String value = arg.substring(eq + 1);
+			switch (arg.substring(2, eq)) {
+			case "out":
+				out = new File(value);
+				break;
+			case "rows":
+				rows = Long.parseLong(value);
+				break;
+			case "rows-per-file":
+				rowsPerFile = Integer.parseInt(value);
+				break;
+			case "test":
+				test = Integer.parseInt(value);
+				break;
+			case "balance":
+				balance = value;
+				break;
+			case "clusters":
+				clusters = Integer.parseInt(value);
+				break;
+			case "noise":
+				noise = Double.parseDouble(value);
+				break;
+			case "seed":
+				seed = Long.parseLong(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			}
+		}
+		if (rows < 1 || rowsPerFile < 1 || test < 0 || clusters < 1 || noise < 0) {
+			throw new IllegalArgumentException("Counts must be positive and noise must not be negative");
+		}
+		File testDir = new File(out, "test");
+		if (!testDir.isDirectory() && !testDir.mkdirs()) {
+			throw new IOException("Cannot create " + testDir);
+		}
+		long start = System.nanoTime();
+		DatasetGenerator generator = new DatasetGenerator(seed, balance(balance), clusters, noise);
+		List<File> files = generator.writeTrainFiles(out, rows, rowsPerFile);
+		generator.writeTestFiles(testDir, test);
+		System.out.printf("Wrote %d rows to %d .bin files and %d test images to %s in %.1f s%n", rows,
+				files.size(), test, out, (System.nanoTime() - start) / 1e9);
+	}
+
+}
@@ -0,0 +1,234 @@
+package model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds rows which duplicate a row appended before, so {@link TrainingSet} can
+ * collapse them into one row with a multiplicity. Only rows with the same
+ * label are collapsed.
+ * <p>
+ * Exact duplicates are looked up by the content hash. Near duplicates are rows
+ * whose every channel of every pixel differs by at most the threshold. To avoid
+ * comparing every pair, rows are bucketed by their mean red, green and blue
+ * value on a grid with cells of threshold + 1: means of near duplicates differ
+ * by at most the threshold, so only the 27 cells around the row are searched.
+ */
+public class Deduplicator {
+
+	/** The maximum difference of a channel of near duplicates, 0 for exact only. */
+	private final int threshold;
+
+	/** Indexes of rows by content hash. */
+	private final Map<Long, int[]> exact = new HashMap<>();
+
+	/** Indexes of rows by label and grid cell of mean color. */
+	private final Map<Long, int[]> cells = new HashMap<>();
+
+	/** The number of rows seen. */
+	private long rows;
+
+	/** The number of collapsed exact duplicates. */
+	private long exactDuplicates;
+
+	/** The number of collapsed near duplicates. */
+	private long nearDuplicates;
+
+	/**
+	 * Instantiates a new deduplicator.
+	 *
+	 * @param threshold the maximum difference of a channel (0-255) of near
+	 *                  duplicates, 0 to collapse exact duplicates only
+	 */
+	public Deduplicator(int threshold) {
+		if (threshold < 0 || threshold > 255) {
+			throw new IllegalArgumentException("Threshold must be from 0 to 255: " + threshold);
+		}
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Finds the row the given row duplicates. If there is none, the row is
+	 * indexed as the next row of the set.
+	 *
+	 * @param row   the row
+	 * @param hash  the content hash of the row, see {@link TrainingSet#hash(RowData)}
+	 * @param index the index the row gets if it is appended
+	 * @param set   the rows appended so far
+	 * @return the index of the duplicated row, -1 if it is not a duplicate
+	 */
+	public int find(RowData row, long hash, int index, List<RowData> set) {
+		rows++;
+		int[] same = exact.get(hash);
+		if (same != null) {
+			for (int i = 1; i <= same[0]; i++) {
+				RowData other = set.get(same[i]);
+				if (other.getLabel() == row.getLabel() && Arrays.deepEquals(other.getImage(), row.getImage())) {
+					exactDuplicates++;
+					return same[i];
+				}
+			}
+		}
+		long[] mean = threshold > 0 ? cell(row) : null;
+		if (mean != null) {
+			for (long r = mean[0] - 1; r <= mean[0] + 1; r++) {
+				for (long g = mean[1] - 1; g <= mean[1] + 1; g++) {
+					for (long b = mean[2] - 1; b <= mean[2] + 1; b++) {
+						int[] near = cells.get(key(row.getLabel(), r, g, b));
+						if (near == null) {
+							continue;
+						}
+						for (int i = 1; i <= near[0]; i++) {
+							if (isNear(set.get(near[i]).getImage(), row.getImage())) {
+								nearDuplicates++;
+								return near[i];
+							}
+						}
+					}
+				}
+			}
+			cells.merge(key(row.getLabel(), mean[0], mean[1], mean[2]), new int[] { 1, index }, Deduplicator::add);
+		}
+		exact.merge(hash, new int[] { 1, index }, Deduplicator::add);
+		return -1;
+	}
+
+	/**
+	 * Removes all indexed rows and counters.
+	 */
+	public void clear() {
+		exact.clear();
+		cells.clear();
+		rows = 0;
+		exactDuplicates = 0;
+		nearDuplicates = 0;
+	}
+
+	/**
+	 * Gets the threshold.
+	 *
+	 * @return the threshold, 0 for exact duplicates only
+	 */
+	public int getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Gets the number of rows seen.
+	 *
+	 * @return the rows
+	 */
+	public long getRows() {
+		return rows;
+	}
+
+	/**
+	 * Gets the number of collapsed exact duplicates.
+	 *
+	 * @return the exact duplicates
+	 */
+	public long getExactDuplicates() {
+		return exactDuplicates;
+	}
+
+	/**
+	 * Gets the number of collapsed near duplicates.
+	 *
+	 * @return the near duplicates
+	 */
+	public long getNearDuplicates() {
+		return nearDuplicates;
+	}
+
+	/**
+	 * Gets the report of the reduction of the training set.
+	 *
+	 * @return the report
+	 */
+	@Override
+	public String toString() {
+		long collapsed = exactDuplicates + nearDuplicates;
+		return String.format("Deduplication: %d rows -> %d (%d exact, %d near duplicates, -%.1f%%)", rows,
+				rows - collapsed, exactDuplicates, nearDuplicates, rows > 0 ? collapsed * 100.0 / rows : 0.0);
+	}
+
+	/**
+	 * Helper method to get the grid cell of the mean red, green and blue value of
+	 * the image.
+	 *
+	 * @param row the row
+	 * @return the cell coordinates
+	 */
+	private long[] cell(RowData row) {
+		long r = 0;
+		long g = 0;
+		long b = 0;
+		for (int[] column : row.getImage()) {
+			for (int pixel : column) {
+				r += pixel >> 16 & 0xff;
+				g += pixel >> 8 & 0xff;
+				b += pixel & 0xff;
+			}
+		}
+		long pixels = DataLoader.IMG_SIZE * DataLoader.IMG_SIZE * (threshold + 1L);
+		return new long[] { r / pixels, g / pixels, b / pixels };
+	}
+
+	/**
+	 * Helper method to check if no channel of the images differs by more than the
+	 * threshold.
+	 *
+	 * @param a the image
+	 * @param b the other image
+	 * @return true, if near duplicates
+	 */
+	private boolean isNear(int[][] a, int[][] b) {
+		for (int x = 0; x < a.length; x++) {
+			for (int y = 0; y < a[x].length; y++) {
+				int p = a[x][y];
+				int q = b[x][y];
+				if (Math.abs((p >> 16 & 0xff) - (q >> 16 & 0xff)) > threshold
+						|| Math.abs((p >> 8 & 0xff) - (q >> 8 & 0xff)) > threshold
+						|| Math.abs((p & 0xff) - (q & 0xff)) > threshold) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Helper method to combine the label and cell coordinates (each below 256)
+	 * into a key.
+	 *
+	 * @param label the label
+	 * @param r     the red cell
+	 * @param g     the green cell
+	 * @param b     the blue cell
+	 * @return the key
+	 */
+	private static long key(int label, long r, long g, long b) {
+		return ((label * 512L + r) * 512L + g) * 512L + b;
+	}
+
+	/**
+	 * Helper method to append the index of the single element list to the list
+	 * (the first element is the size).
+	 *
+	 * @param list    the list
+	 * @param element the single element list
+	 * @return the list
+	 */
+	private static int[] add(int[] list, int[] element) {
+		int size = list[0] + 1;
+		if (size == list.length) {
+			list = Arrays.copyOf(list, size * 2);
+		}
+		list[size] = element[1];
+		list[0] = size;
+		return list;
+	}
+
+}
@@ -0,0 +1,126 @@
+package perf;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import model.DistanceMetric;
+import model.FeatureMatrix;
+
+/**
+ * Micro-benchmark of {@link DistanceMetric} kernels. For every metric and
+ * typical dimension (raw pixels, HOG, color histogram) it scans a matrix of
+ * random rows, once computing exact distances and once with the bound of early
+ * abandon, and prints nanoseconds per distance. Run it with ant bench.
+ */
+public class DistanceBenchmark {
+
+	/** The number of rows in the scanned matrix. */
+	private static final int ROWS = 10_000;
+
+	/** The dimensions: raw pixels, HOG 8:9, color histogram 4. */
+	private static final int[] DIMENSIONS = { 1024, 324, 64 };
+
+	/** The number of warm-up scans, so the kernels are compiled. */
+	private static final int WARMUP = 20;
+
+	/** The number of measured scans. */
+	private static final int SCANS = 20;
+
+	/** Sink for results, so the JIT cannot drop the computation. */
+	private static double sink;
+
+	/**
+	 * Utility class, no instances.
+	 */
+	private DistanceBenchmark() {
+	}
+
+	/**
+	 * The main method.
+	 *
+	 * @param args the arguments (not used)
+	 */
+	public static void main(String[] args) {
+		Random random = new Random(42);
+		System.out.printf("%-24s %6s %12s %12s%n", "metric", "dim", "exact ns", "bounded ns");
+		for (int dimension : DIMENSIONS) {
+			FeatureMatrix matrix = new FeatureMatrix(dimension, ROWS);
+			float[] data = matrix.getData();
+			for (int i = 0; i < ROWS * dimension; i++) {
+				data[i] = random.nextFloat();
+			}
+			matrix.commit(ROWS);
+			float[] query = new float[dimension];
+			for (int i = 0; i < dimension; i++) {
+				query[i] = random.nextFloat();
+			}
+			for (DistanceMetric metric : DistanceMetric.values()) {
+				double exact = measure(metric, matrix, query, Double.POSITIVE_INFINITY);
+				double bound = median(metric, matrix, query) * 0.5; // Roughly what a full heap gives.
+				double bounded = measure(metric, matrix, query, bound);
+				System.out.printf("%-24s %6d %12.1f %12.1f%n", metric, dimension, exact, bounded);
+			}
+		}
+		System.out.printf("checksum %.6g%n", sink);
+	}
+
+	/**
+	 * Measures average time of one distance.
+	 *
+	 * @param metric the metric
+	 * @param matrix the matrix
+	 * @param query  the query
+	 * @param bound  the bound of early abandon
+	 * @return nanoseconds per distance
+	 */
+	private static double measure(DistanceMetric metric, FeatureMatrix matrix, float[] query, double bound) {
+		for (int i = 0; i < WARMUP; i++) {
+			scan(metric, matrix, query, bound);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < SCANS; i++) {
+			scan(metric, matrix, query, bound);
+		}
+		return (double) (System.nanoTime() - start) / SCANS / matrix.getRows();
+	}
+
+	/**
+	 * Scans all rows of the matrix.
+	 *
+	 * @param metric the metric
+	 * @param matrix the matrix
+	 * @param query  the query
+	 * @param bound  the bound of early abandon
+	 */
+	private static void scan(DistanceMetric metric, FeatureMatrix matrix, float[] query, double bound) {
+		float[] data = matrix.getData();
+		int dimension = matrix.getDimension();
+		double norm = FeatureMatrix.squaredNorm(query, 0, dimension);
+		double sum = 0;
+		for (int row = 0; row < matrix.getRows(); row++) {
+			sum += metric.distance(query, norm, data, matrix.offset(row), matrix.getNorm(row), dimension, bound);
+		}
+		sink += sum;
+	}
+
+	/**
+	 * Estimates the median distance from the first rows.
+	 *
+	 * @param metric the metric
+	 * @param matrix the matrix
+	 * @param query  the query
+	 * @return the median distance
+	 */
+	private static double median(DistanceMetric metric, FeatureMatrix matrix, float[] query) {
+		int count = Math.min(101, matrix.getRows());
+		double[] distances = new double[count];
+		double norm = FeatureMatrix.squaredNorm(query, 0, matrix.getDimension());
+		for (int row = 0; row < count; row++) {
+			distances[row] = metric.distance(query, norm, matrix.getData(), matrix.offset(row), matrix.getNorm(row),
+					matrix.getDimension(), Double.POSITIVE_INFINITY);
+		}
+		Arrays.sort(distances);
+		return distances[count / 2];
+	}
+
+}
@@ -0,0 +1,224 @@
+package model;
+
+/**
+ * Distance between a query vector and a row of {@link FeatureMatrix}. Every
+ * metric is a tight loop over primitive arrays without allocation, so the JIT
+ * can inline and unroll it. Metrics which are sums of non-negative terms
+ * support early abandon: once the partial sum exceeds the given bound (the
+ * distance of the current k-th nearest row), the row cannot be among the k
+ * nearest and the rest of the sum is skipped.
+ */
+public enum DistanceMetric {
+
+	/** Manhattan distance, sum of absolute differences. */
+	L1("L1 (Manhattan)", true) {
+		@Override
+		public double distance(float[] query, double queryNorm, float[] data, int offset, double rowNorm,
+				int dimension, double bound) {
+			double sum = 0;
+			int i = 0;
+			while (i + BLOCK <= dimension) {
+				double s0 = 0, s1 = 0, s2 = 0, s3 = 0; // Independent sums, so additions can overlap.
+				for (int end = i + BLOCK; i < end; i += 4) {
+					int o = offset + i;
+					s0 += Math.abs((double) query[i] - data[o]);
+					s1 += Math.abs((double) query[i + 1] - data[o + 1]);
+					s2 += Math.abs((double) query[i + 2] - data[o + 2]);
+					s3 += Math.abs((double) query[i + 3] - data[o + 3]);
+				}
+				sum += (s0 + s1) + (s2 + s3);
+				if (sum > bound) {
+					return sum;
+				}
+			}
+			for (; i < dimension; i++) {
+				sum += Math.abs((double) query[i] - data[offset + i]);
+			}
+			return sum;
+		}
+	},
+
+	/**
+	 * Squared Euclidean distance. It orders rows exactly as Euclidean distance,
+	 * without the square root.
+	 */
+	L2("L2 (squared Euclidean)", true) {
+		@Override
+		public double distance(float[] query, double queryNorm, float[] data, int offset, double rowNorm,
+				int dimension, double bound) {
+			double sum = 0;
+			int i = 0;
+			while (i + BLOCK <= dimension) {
+				double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+				for (int end = i + BLOCK; i < end; i += 4) {
+					int o = offset + i;
+					double d0 = (double) query[i] - data[o];
+					double d1 = (double) query[i + 1] - data[o + 1];
+					double d2 = (double) query[i + 2] - data[o + 2];
+					double d3 = (double) query[i + 3] - data[o + 3];
+					s0 += d0 * d0;
+					s1 += d1 * d1;
+					s2 += d2 * d2;
+					s3 += d3 * d3;
+				}
+				sum += (s0 + s1) + (s2 + s3);
+				if (sum > bound) {
+					return sum;
+				}
+			}
+			for (; i < dimension; i++) {
+				double diff = (double) query[i] - data[offset + i];
+				sum += diff * diff;
+			}
+			return sum;
+		}
+	},
+
+	/**
+	 * Cosine distance (1 - cosine similarity) using precomputed squared norms.
+	 * The dot product is not monotone, so there is no early abandon.
+	 */
+	COSINE("Cosine", false) {
+		@Override
+		public double distance(float[] query, double queryNorm, float[] data, int offset, double rowNorm,
+				int dimension, double bound) {
+			double d0 = 0, d1 = 0, d2 = 0, d3 = 0;
+			int i = 0;
+			for (; i + 4 <= dimension; i += 4) {
+				int o = offset + i;
+				d0 += (double) query[i] * data[o];
+				d1 += (double) query[i + 1] * data[o + 1];
+				d2 += (double) query[i + 2] * data[o + 2];
+				d3 += (double) query[i + 3] * data[o + 3];
+			}
+			double dot = (d0 + d1) + (d2 + d3);
+			for (; i < dimension; i++) {
+				dot += (double) query[i] * data[offset + i];
+			}
+			double norms = queryNorm * rowNorm;
+			return norms > 0 ? 1 - dot / Math.sqrt(norms) : 1;
+		}
+	},
+
+	/**
+	 * Chi-square distance, sum of (a - b)^2 / (a + b). It is meant for
+	 * non-negative features such as histograms, all extractors yield those.
+	 * Early abandon assumes them: terms of negative features can be negative,
+	 * so a partial sum above the bound could still fall below it.
+	 */
+	CHI_SQUARE("Chi-square", true) {
+		@Override
+		public double distance(float[] query, double queryNorm, float[] data, int offset, double rowNorm,
+				int dimension, double bound) {
+			double sum = 0;
+			int i = 0;
+			while (i + BLOCK <= dimension) {
+				double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+				for (int end = i + BLOCK; i < end; i += 4) {
+					int o = offset + i;
+					s0 += chiSquare(query[i], data[o]);
+					s1 += chiSquare(query[i + 1], data[o + 1]);
+					s2 += chiSquare(query[i + 2], data[o + 2]);
+					s3 += chiSquare(query[i + 3], data[o + 3]);
+				}
+				sum += (s0 + s1) + (s2 + s3);
+				if (sum > bound) {
+					return sum;
+				}
+			}
+			for (; i < dimension; i++) {
+				sum += chiSquare(query[i], data[offset + i]);
+			}
+			return sum;
+		}
+	};
+
+	/** The Constant DEFAULT metric. */
+	public static final DistanceMetric DEFAULT = L2;
+
+	/**
+	 * Number of features summed between two checks of the bound. Checking every
+	 * feature would prevent unrolling of the inner loop. It must be a multiple of
+	 * 4, the inner loop keeps 4 independent partial sums.
+	 */
+	private static final int BLOCK = 32;
+
+	/** The text displayed to the user. */
+	private final String text;
+
+	/** True if the metric supports early abandon. */
+	private final boolean earlyAbandon;
+
+	/**
+	 * Instantiates a new distance metric.
+	 *
+	 * @param text         the text displayed to the user
+	 * @param earlyAbandon true if the metric supports early abandon
+	 */
+	DistanceMetric(String text, boolean earlyAbandon) {
+		this.text = text;
+		this.earlyAbandon = earlyAbandon;
+	}
+
+	/**
+	 * Computes the distance between the query and a row. If the metric supports
+	 * early abandon, it may return any value greater than the bound as soon as
+	 * the distance is known to exceed it.
+	 *
+	 * @param query     the query vector
+	 * @param queryNorm the squared norm of the query vector
+	 * @param data      the array with the row
+	 * @param offset    the offset of the row in the array
+	 * @param rowNorm   the squared norm of the row
+	 * @param dimension the length of vectors
+	 * @param bound     the bound, {@link Double#POSITIVE_INFINITY} to compute the
+	 *                  exact distance
+	 * @return the distance
+	 */
+	public abstract double distance(float[] query, double queryNorm, float[] data, int offset, double rowNorm,
+			int dimension, double bound);
+
+	/**
+	 * Checks if the metric supports early abandon.
+	 *
+	 * @return true, if supported
+	 */
+	public boolean isEarlyAbandon() {
+		return earlyAbandon;
+	}
+
+	/**
+	 * Parses the metric from its name (case insensitive): l1, l2, cosine or
+	 * chi_square (chi2).
+	 *
+	 * @param name the name
+	 * @return the distance metric
+	 * @throws IllegalArgumentException throws if name is unknown
+	 */
+	public static DistanceMetric parse(String name) {
+		String value = name.trim().toUpperCase();
+		return value.equals("CHI2") ? CHI_SQUARE : valueOf(value);
+	}
+
+	@Override
+	public String toString() {
+		return text;
+	}
+
+	/**
+	 * Computes one term of chi-square distance.
+	 *
+	 * @param a the first value
+	 * @param b the second value
+	 * @return the term
+	 */
+	private static double chiSquare(float a, float b) {
+		double sum = (double) a + b;
+		if (sum == 0) {
+			return 0;
+		}
+		double diff = (double) a - b;
+		return diff * diff / sum;
+	}
+
+}
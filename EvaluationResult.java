@@ -0,0 +1,122 @@
+package model;
+
+/**
+ * Result of {@link CrossValidator}: accuracy and confusion matrix for every k
+ * from 1 to the maximum evaluated k.
+ */
+public class EvaluationResult {
+
+	/** The name of the evaluation (k-fold or leave-one-out). */
+	private final String name;
+
+	/** The number of evaluated rows. */
+	private final int rows;
+
+	/** The confusion matrices indexed by k, expected label and estimated label. */
+	private final int[][][] confusion;
+
+	/** The duration of the evaluation in nanoseconds. */
+	private final long nanos;
+
+	/**
+	 * Instantiates a new evaluation result.
+	 *
+	 * @param name      the name of the evaluation
+	 * @param rows      the number of evaluated rows
+	 * @param confusion the confusion matrices indexed by k (index 0 is not used)
+	 * @param nanos     the duration of the evaluation
+	 */
+	public EvaluationResult(String name, int rows, int[][][] confusion, long nanos) {
+		this.name = name;
+		this.rows = rows;
+		this.confusion = confusion;
+		this.nanos = nanos;
+	}
+
+	/**
+	 * Gets the maximum evaluated k.
+	 *
+	 * @return the maximum k
+	 */
+	public int getMaxK() {
+		return confusion.length - 1;
+	}
+
+	/**
+	 * Gets the accuracy for the k value.
+	 *
+	 * @param k the k value
+	 * @return the accuracy (0-1)
+	 */
+	public double getAccuracy(int k) {
+		int correct = 0;
+		for (int label = 0; label < DataLoader.NUM_LABELS; label++) {
+			correct += confusion[k][label][label];
+		}
+		return rows > 0 ? (double) correct / rows : 0;
+	}
+
+	/**
+	 * Gets the confusion matrix for the k value.
+	 *
+	 * @param k the k value
+	 * @return the confusion matrix indexed by expected and estimated label
+	 */
+	public int[][] getConfusion(int k) {
+		return confusion[k];
+	}
+
+	/**
+	 * Gets the k value with the best accuracy (the smallest one if tied).
+	 *
+	 * @return the best k
+	 */
+	public int getBestK() {
+		int best = 1;
+		for (int k = 2; k <= getMaxK(); k++) {
+			if (getAccuracy(k) > getAccuracy(best)) {
+				best = k;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Gets the duration of the evaluation.
+	 *
+	 * @return the duration in nanoseconds
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+
+	/**
+	 * Returns a report with accuracy for every k and the confusion matrix of the
+	 * best k.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		String nl = System.lineSeparator();
+		result.append(String.format("%s evaluation of %d rows in %.1f s%n", name, rows, nanos / 1e9));
+		for (int k = 1; k <= getMaxK(); k++) {
+			result.append(String.format("k = %2d  accuracy %6.2f%%%n", k, getAccuracy(k) * 100));
+		}
+		int best = getBestK();
+		result.append("Confusion matrix for k = ").append(best).append(" (rows: expected, columns: estimated)")
+				.append(nl).append("    ");
+		for (int label = 0; label < DataLoader.NUM_LABELS; label++) {
+			result.append(String.format("%6d", label));
+		}
+		result.append(nl);
+		for (int expected = 0; expected < DataLoader.NUM_LABELS; expected++) {
+			result.append(String.format("%4d", expected));
+			for (int estimated = 0; estimated < DataLoader.NUM_LABELS; estimated++) {
+				result.append(String.format("%6d", confusion[best][expected][estimated]));
+			}
+			result.append(nl);
+		}
+		return result.toString();
+	}
+
+}
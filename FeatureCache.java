@@ -0,0 +1,158 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * On-disk cache of extracted features of .bin files. An entry is keyed by the
+ * canonical path, size and modification time of the source file and by the id
+ * of the extractor, so a changed file or a different configuration never hits
+ * a stale entry. The directory is taken from system property
+ * {@value FeatureCache#DIR_PROPERTY}, by default .knn-cache in the user home.
+ */
+public class FeatureCache {
+
+	/** The Constant DIR_PROPERTY. */
+	public static final String DIR_PROPERTY = "knn.cache.dir";
+
+	/** The Constant MAGIC at the start of every entry. */
+	private static final int MAGIC = 0x4b4e4e46; // "KNNF"
+
+	/** The Constant HEADER size in bytes: magic, rows, dimension. */
+	private static final int HEADER = 12;
+
+	/** The cache directory. */
+	private final File dir;
+
+	/**
+	 * Instantiates a new feature cache in the default directory.
+	 */
+	public FeatureCache() {
+		this(new File(System.getProperty(DIR_PROPERTY, System.getProperty("user.home") + File.separator + ".knn-cache")));
+	}
+
+	/**
+	 * Instantiates a new feature cache.
+	 *
+	 * @param dir the cache directory
+	 */
+	public FeatureCache(File dir) {
+		this.dir = dir;
+	}
+
+	/**
+	 * Reads cached features of the source file into the matrix, right after its
+	 * last row. Nothing is read if there is no valid entry.
+	 *
+	 * @param source    the source file
+	 * @param extractor the extractor
+	 * @param rows      the expected number of rows
+	 * @param matrix    the matrix with ensured capacity
+	 * @return true, if features were read
+	 */
+	public boolean read(File source, FeatureExtractor extractor, int rows, FeatureMatrix matrix) {
+		File entry = entry(source, extractor);
+		if (!entry.isFile()) {
+			return false;
+		}
+		try (FileChannel channel = FileChannel.open(entry.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+					.order(ByteOrder.LITTLE_ENDIAN);
+			if (buffer.getInt() != MAGIC || buffer.getInt() != rows || buffer.getInt() != matrix.getDimension()
+					|| buffer.remaining() != rows * matrix.getDimension() * Float.BYTES) {
+				return false;
+			}
+			buffer.asFloatBuffer().get(matrix.getData(), matrix.offset(matrix.getRows()), rows * matrix.getDimension());
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Writes features of the source file to the cache. The entry is written to a
+	 * temporary file first and then moved, so readers never see partial entries;
+	 * the temporary file is deleted if writing fails. Failures are printed but
+	 * not thrown, the cache is only an optimization.
+	 *
+	 * @param source    the source file
+	 * @param extractor the extractor
+	 * @param matrix    the matrix
+	 * @param first     the first row of the source file in the matrix
+	 * @param rows      the number of rows of the source file
+	 */
+	public void write(File source, FeatureExtractor extractor, FeatureMatrix matrix, int first, int rows) {
+		File entry = entry(source, extractor);
+		int floats = rows * matrix.getDimension();
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER + floats * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(rows).putInt(matrix.getDimension());
+		buffer.asFloatBuffer().put(matrix.getData(), matrix.offset(first), floats);
+		Path tmp = null;
+		try {
+			Files.createDirectories(dir.toPath());
+			tmp = Files.createTempFile(dir.toPath(), entry.getName(), ".tmp");
+			Files.write(tmp, buffer.array());
+			Files.move(tmp, entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			if (tmp != null) {
+				try {
+					Files.deleteIfExists(tmp); // Already moved unless writing failed.
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Helper method to get the entry file of the source file and extractor.
+	 *
+	 * @param source    the source file
+	 * @param extractor the extractor
+	 * @return the entry file
+	 */
+	private File entry(File source, FeatureExtractor extractor) {
+		return new File(dir, key(source, extractor.getId()) + ".feat");
+	}
+
+	/**
+	 * Computes the key of the source file (canonical path, size, modification
+	 * time) combined with the given configuration id.
+	 *
+	 * @param source the source file
+	 * @param id     the configuration id
+	 * @return the hex key
+	 */
+	static String key(File source, String id) {
+		String path;
+		try {
+			path = source.getCanonicalPath();
+		} catch (IOException e) {
+			path = source.getAbsolutePath();
+		}
+		String text = path + '\n' + source.length() + '\n' + source.lastModified() + '\n' + id;
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+			StringBuilder result = new StringBuilder();
+			for (int i = 0; i < 16; i++) {
+				result.append(String.format("%02x", digest[i]));
+			}
+			return result.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -0,0 +1,70 @@
+package model;
+
+/**
+ * Converts an image to a compact vector of features which {@link KNN} compares
+ * instead of raw pixels. Implementations must be stateless (thread-safe), since
+ * the training set is extracted in parallel.
+ */
+public interface FeatureExtractor {
+
+	/**
+	 * Gets the id. It identifies both the extractor and its configuration, so it
+	 * is used as a part of the key of cached features.
+	 *
+	 * @return the id
+	 */
+	String getId();
+
+	/**
+	 * Gets the number of features.
+	 *
+	 * @return the dimension
+	 */
+	int getDimension();
+
+	/**
+	 * Extracts features of the image and writes them to the output array.
+	 *
+	 * @param image  2d array of pixels (packed RGB values)
+	 * @param out    the output array
+	 * @param offset the offset of the first feature in the output array
+	 */
+	void extract(int[][] image, float[] out, int offset);
+
+	/**
+	 * Checks if features should be cached on disk. It is false for extractors
+	 * which are cheaper than reading the cache.
+	 *
+	 * @return true, if cached
+	 */
+	default boolean isCached() {
+		return true;
+	}
+
+	/**
+	 * Creates an extractor from its id: raw, gray, hist[:bins] or
+	 * hog[:cell[:orientations]].
+	 *
+	 * @param id the id
+	 * @return the feature extractor
+	 * @throws IllegalArgumentException throws if id is unknown
+	 */
+	static FeatureExtractor forId(String id) {
+		String[] parts = id.trim().toLowerCase().split(":");
+		switch (parts[0]) {
+		case "raw":
+			return new RawPixelExtractor();
+		case "gray":
+			return new GrayscaleExtractor();
+		case "hist":
+			return parts.length > 1 ? new ColorHistogramExtractor(Integer.parseInt(parts[1]))
+					: new ColorHistogramExtractor();
+		case "hog":
+			return new HogExtractor(parts.length > 1 ? Integer.parseInt(parts[1]) : HogExtractor.CELL_DEFAULT,
+					parts.length > 2 ? Integer.parseInt(parts[2]) : HogExtractor.ORIENTATIONS_DEFAULT);
+		default:
+			throw new IllegalArgumentException("Unknown feature extractor: " + id);
+		}
+	}
+
+}
@@ -0,0 +1,163 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Feature vectors of rows stored in one flat float array (row after row), so a
+ * scan over all rows reads memory sequentially. It grows when rows are
+ * appended and keeps the squared L2 norm of every row.
+ */
+public class FeatureMatrix {
+
+	/** The Constant MAX_LENGTH, the maximum length of an array. */
+	private static final int MAX_LENGTH = Integer.MAX_VALUE - 8;
+
+	/** The number of features per row. */
+	private final int dimension;
+
+	/** The features, row i starts at i * dimension. */
+	private float[] data;
+
+	/** The squared L2 norm of every row. */
+	private double[] norms;
+
+	/** The number of rows. */
+	private int rows;
+
+	/**
+	 * Instantiates a new empty feature matrix.
+	 *
+	 * @param dimension the number of features per row
+	 * @param capacity  the initial number of rows
+	 */
+	public FeatureMatrix(int dimension, int capacity) {
+		this.dimension = dimension;
+		capacity = Math.max(capacity, 1);
+		data = new float[length(capacity)];
+		norms = new double[capacity];
+	}
+
+	/**
+	 * Makes room for the given number of rows in total.
+	 *
+	 * @param capacity the number of rows
+	 * @throws IllegalArgumentException throws if the features of the rows do not
+	 *                                  fit into one array
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > norms.length) {
+			length(capacity); // Checks that the rows fit.
+			long doubled = Math.min((long) norms.length * 2, MAX_LENGTH / Math.max(dimension, 1));
+			int grown = (int) Math.max(capacity, doubled);
+			data = Arrays.copyOf(data, grown * dimension);
+			norms = Arrays.copyOf(norms, grown);
+		}
+	}
+
+	/**
+	 * Helper method to compute the length of the data array of rows.
+	 *
+	 * @param capacity the number of rows
+	 * @return the number of features
+	 * @throws IllegalArgumentException throws if the features do not fit into
+	 *                                  one array
+	 */
+	private int length(int capacity) {
+		long length = (long) capacity * dimension;
+		if (length > MAX_LENGTH) {
+			throw new IllegalArgumentException(String.format(
+					"%d rows of %d features need %d floats, more than the %d of one array; use fewer source"
+							+ " files or a smaller feature extractor",
+					capacity, dimension, length, MAX_LENGTH));
+		}
+		return (int) length;
+	}
+
+	/**
+	 * Appends rows which were written to {@link FeatureMatrix#getData()} after the
+	 * current last row (capacity must be ensured first). Norms of the rows are
+	 * computed here.
+	 *
+	 * @param count the number of rows
+	 */
+	public void commit(int count) {
+		for (int i = rows; i < rows + count; i++) {
+			norms[i] = squaredNorm(data, i * dimension, dimension);
+		}
+		rows += count;
+	}
+
+	/**
+	 * Gets the data. It is a live array which is replaced when the matrix grows.
+	 *
+	 * @return the data
+	 */
+	public float[] getData() {
+		return data;
+	}
+
+	/**
+	 * Gets the dimension.
+	 *
+	 * @return the dimension
+	 */
+	public int getDimension() {
+		return dimension;
+	}
+
+	/**
+	 * Gets the number of rows.
+	 *
+	 * @return the number of rows
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Gets the offset of the first feature of the row.
+	 *
+	 * @param row the row
+	 * @return the offset
+	 */
+	public int offset(int row) {
+		return row * dimension;
+	}
+
+	/**
+	 * Gets the squared L2 norms of rows. It is a live array which is replaced
+	 * when the matrix grows.
+	 *
+	 * @return the norms
+	 */
+	public double[] getNorms() {
+		return norms;
+	}
+
+	/**
+	 * Gets the squared L2 norm of the row.
+	 *
+	 * @param row the row
+	 * @return the squared norm
+	 */
+	public double getNorm(int row) {
+		return norms[row];
+	}
+
+	/**
+	 * Computes the squared L2 norm of a vector.
+	 *
+	 * @param data      the array
+	 * @param offset    the offset of the vector
+	 * @param dimension the length of the vector
+	 * @return the squared norm
+	 */
+	public static double squaredNorm(float[] data, int offset, int dimension) {
+		double result = 0;
+		for (int i = offset; i < offset + dimension; i++) {
+			result += (double) data[i] * data[i];
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,331 @@
+package model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a folder and classifies every .png image which is created or
+ * changed there, against a resident training set (a
+ * {@link ClassificationEngine}). Results are appended to a sink, which is
+ * flushed after every batch.
+ * <p>
+ * Bursts are batched: once an image arrives, the watcher waits until no event
+ * came for {@value #QUIET_MILLIS} ms (or {@value #MAX_BATCH} images are
+ * waiting) and classifies the batch in parallel. An image which cannot be
+ * decoded yet, e.g. because it is still being written, is retried with the
+ * next batch, up to {@value #ATTEMPTS} times. The backlog depth and the latency
+ * from arrival to result are reported to {@link PerfStats}.
+ * <p>
+ * Classified images are remembered, so an unchanged image is not classified
+ * twice. An image is forgotten once it is deleted, and at most
+ * {@value #MAX_CLASSIFIED} images are remembered (the least recently seen are
+ * forgotten first), so a folder watched for a long time does not fill the heap.
+ */
+public class FolderWatcher implements Closeable {
+
+	/** The quiet period which ends a burst, in milliseconds. */
+	public static final long QUIET_MILLIS = 100;
+
+	/** The maximum number of images of one batch. */
+	public static final int MAX_BATCH = 256;
+
+	/** The number of attempts to decode an image. */
+	public static final int ATTEMPTS = 3;
+
+	/** The maximum number of remembered classified images. */
+	public static final int MAX_CLASSIFIED = 100_000;
+
+	/** The watched folder. */
+	private final Path dir;
+
+	/** The engine over the resident training set. */
+	private final ClassificationEngine engine;
+
+	/** The k value. */
+	private final int k;
+
+	/** The sink of results. */
+	private final ResultSink sink;
+
+	/** The watch service. */
+	private final WatchService watchService;
+
+	/** The thread of the watcher. */
+	private final Thread thread;
+
+	/** Cancels the batch being classified once the watcher is closed. */
+	private final CancellationToken token = new CancellationToken();
+
+	/** Images waiting for classification with their arrival time, oldest first. */
+	private final Map<Path, Long> pending = new LinkedHashMap<>();
+
+	/** Failed attempts to decode waiting images. */
+	private final Map<Path, Integer> attempts = new HashMap<>();
+
+	/**
+	 * The modification time and size of classified images, to skip duplicates,
+	 * in access order.
+	 */
+	private final Map<Path, List<Long>> classified = new LinkedHashMap<Path, List<Long>>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Path, List<Long>> eldest) {
+			return size() > MAX_CLASSIFIED;
+		}
+	};
+
+	/** The number of classified images. */
+	private volatile long images;
+
+	/** The number of classified batches. */
+	private volatile long batches;
+
+	/** The latency of the last classified image in milliseconds. */
+	private volatile double lastLatencyMillis;
+
+	/** The failure which stopped the watcher, null if none. */
+	private volatile Exception failure;
+
+	/**
+	 * Instantiates a new folder watcher. Images already in the folder are not
+	 * classified, call {@link FolderWatcher#start()} to start watching.
+	 *
+	 * @param dir    the folder
+	 * @param engine the engine over the resident training set
+	 * @param k      the k value
+	 * @param sink   the sink of results, it is closed with the watcher
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public FolderWatcher(File dir, ClassificationEngine engine, int k, ResultSink sink) throws IOException {
+		if (!dir.isDirectory()) {
+			throw new IOException("Not a folder: " + dir);
+		}
+		this.dir = dir.toPath();
+		this.engine = engine;
+		this.k = k;
+		this.sink = sink;
+		watchService = FileSystems.getDefault().newWatchService();
+		this.dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+				StandardWatchEventKinds.ENTRY_DELETE);
+		thread = new Thread(this::run, "folder-watcher");
+		thread.setDaemon(true);
+	}
+
+	/**
+	 * Starts watching in the background.
+	 */
+	public void start() {
+		thread.start();
+	}
+
+	/**
+	 * Stops watching, waits until the current batch is cancelled and closes the
+	 * sink. Images of the backlog are not classified.
+	 */
+	@Override
+	public void close() throws IOException {
+		token.cancel();
+		watchService.close();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		sink.close();
+	}
+
+	/**
+	 * Checks if the watcher is running.
+	 *
+	 * @return true, if running
+	 */
+	public boolean isRunning() {
+		return thread.isAlive();
+	}
+
+	/**
+	 * Gets the number of classified images.
+	 *
+	 * @return the number of images
+	 */
+	public long getImages() {
+		return images;
+	}
+
+	/**
+	 * Gets the number of classified batches.
+	 *
+	 * @return the number of batches
+	 */
+	public long getBatches() {
+		return batches;
+	}
+
+	/**
+	 * Gets the number of images which arrived and are not classified yet.
+	 *
+	 * @return the backlog depth
+	 */
+	public int getBacklog() {
+		return PerfStats.get().getWatchBacklog();
+	}
+
+	/**
+	 * Gets the latency from arrival to result of the last classified image.
+	 *
+	 * @return the latency in milliseconds
+	 */
+	public double getLastLatencyMillis() {
+		return lastLatencyMillis;
+	}
+
+	/**
+	 * Gets the failure which stopped the watcher.
+	 *
+	 * @return the failure, null if none
+	 */
+	public Exception getFailure() {
+		return failure;
+	}
+
+	@Override
+	public String toString() {
+		PerfStats stats = PerfStats.get();
+		return String.format("%s: %d images in %d batches, backlog %d, latency %.1f ms (last %.1f ms)", dir,
+				images, batches, stats.getWatchBacklog(), stats.getWatchLatencyMillis(), lastLatencyMillis);
+	}
+
+	/**
+	 * Helper method to wait for events and classify batches until the watcher is
+	 * closed or the sink fails.
+	 */
+	private void run() {
+		try {
+			while (!token.isCancelled()) {
+				// Blocks until an image arrives, then collects the burst.
+				WatchKey key = pending.isEmpty() ? watchService.take()
+						: watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+				while (key != null) {
+					collect(key);
+					key = pending.size() < MAX_BATCH ? watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)
+							: null;
+				}
+				if (!pending.isEmpty()) {
+					classifyBatch();
+				}
+			}
+		} catch (ClosedWatchServiceException | InterruptedException e) {
+			// Closed.
+		} catch (Exception e) {
+			failure = e;
+			e.printStackTrace();
+		} finally {
+			PerfStats.get().setWatchBacklog(0);
+		}
+	}
+
+	/**
+	 * Helper method to add images of the events to the backlog and to forget
+	 * deleted images.
+	 *
+	 * @param key the signalled key
+	 */
+	private void collect(WatchKey key) {
+		long now = System.nanoTime();
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				continue; // Events were lost, images arriving later are still seen.
+			}
+			Path file = dir.resolve((Path) event.context());
+			if (!file.getFileName().toString().toLowerCase().endsWith(".png")) {
+				continue;
+			}
+			if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+				classified.remove(file);
+				pending.remove(file);
+				attempts.remove(file);
+			} else {
+				pending.putIfAbsent(file, now);
+			}
+		}
+		key.reset();
+		PerfStats.get().setWatchBacklog(pending.size());
+	}
+
+	/**
+	 * Helper method to classify waiting images and write their results. Images
+	 * which were deleted or did not change since they were classified are
+	 * dropped, images which cannot be decoded stay for the next batch.
+	 *
+	 * @throws IOException Signals that the sink failed.
+	 */
+	private void classifyBatch() throws IOException {
+		List<Path> files = new ArrayList<>();
+		List<RowData> rows = new ArrayList<>();
+		for (Iterator<Path> it = pending.keySet().iterator(); it.hasNext();) {
+			Path file = it.next();
+			File image = file.toFile();
+			List<Long> version = List.of(image.lastModified(), image.length());
+			if (!image.isFile() || version.equals(classified.get(file))) {
+				it.remove();
+				attempts.remove(file);
+				continue;
+			}
+			try {
+				rows.add(ImageIngest.load(image));
+				files.add(file);
+				classified.put(file, version);
+			} catch (IOException e) {
+				int failed = attempts.merge(file, 1, Integer::sum);
+				if (failed >= ATTEMPTS) {
+					System.err.println("Skipping " + file + ": " + e.getMessage());
+					it.remove();
+					attempts.remove(file);
+				}
+			}
+		}
+		if (rows.isEmpty()) {
+			PerfStats.get().setWatchBacklog(pending.size());
+			return;
+		}
+		List<Classification> results;
+		try {
+			results = engine.classifyAll(rows, k, token, null);
+		} catch (CancellationException e) {
+			return; // Closed.
+		}
+		for (Classification result : results) {
+			sink.write(result);
+		}
+		sink.flush();
+		long now = System.nanoTime();
+		for (Path file : files) {
+			long latency = now - pending.remove(file);
+			attempts.remove(file);
+			PerfStats.get().recordWatchedImage(latency);
+			lastLatencyMillis = latency / 1e6;
+		}
+		images += files.size();
+		batches++;
+		PerfStats.get().setWatchBacklog(pending.size());
+	}
+
+}
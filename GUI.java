@@ -1,10 +1,10 @@
 package view;
 
 import java.awt.BorderLayout;
-import java.io.IOException;
 
 import javax.swing.JFrame;
 
+import controller.CommandLine;
 import controller.Controller;
 import model.Model;
 
@@ -29,6 +29,9 @@ public class GUI extends JFrame {
 	/** The result view. */
 	private ResultView resultView = new ResultView(this);
 
+	/** The results browser, a dialog opened from the result view. */
+	private ResultsBrowser resultsBrowser;
+
 	/**
 	 * Instantiates a new gui.
 	 *
@@ -38,6 +41,7 @@ public class GUI extends JFrame {
 		super(title);
 
 		initComponents();
+		resultsBrowser = new ResultsBrowser(this);
 
 		setDefaultCloseOperation(EXIT_ON_CLOSE);
 		setResizable(false);
@@ -84,11 +88,23 @@ public class GUI extends JFrame {
 	/**
 	 * The main method.
 	 *
-	 * @param args the arguments
-	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @param args the command line arguments, see {@link CommandLine#USAGE}
+	 * @throws Exception Signals that the task without GUI has failed.
 	 */
-	public static void main(String[] args) throws IOException {
+	public static void main(String[] args) throws Exception {
 		Model model = new Model();
+		CommandLine commandLine = new CommandLine(args);
+		try {
+			commandLine.apply(model);
+			if (commandLine.isHeadless()) {
+				commandLine.runHeadless(model);
+				return;
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(CommandLine.USAGE);
+			System.exit(1);
+		}
 		GUI view = new GUI("Image Classification");
 		Controller controller = new Controller(model, view);
 		controller.init();
@@ -113,4 +129,13 @@ public class GUI extends JFrame {
 		return resultView;
 	}
 
+	/**
+	 * Gets the results browser.
+	 *
+	 * @return the results browser
+	 */
+	public ResultsBrowser getResultsBrowser() {
+		return resultsBrowser;
+	}
+
 }
@@ -0,0 +1,37 @@
+package model;
+
+/**
+ * Uses luminance (0-255) of every pixel as features.
+ */
+public class GrayscaleExtractor implements FeatureExtractor {
+
+	@Override
+	public String getId() {
+		return "gray";
+	}
+
+	@Override
+	public int getDimension() {
+		return DataLoader.IMG_SIZE * DataLoader.IMG_SIZE;
+	}
+
+	@Override
+	public void extract(int[][] image, float[] out, int offset) {
+		for (int i = 0; i < DataLoader.IMG_SIZE; i++) {
+			for (int j = 0; j < DataLoader.IMG_SIZE; j++) {
+				out[offset++] = luminance(image[i][j]);
+			}
+		}
+	}
+
+	/**
+	 * Computes luminance (ITU-R BT.601) of the packed RGB value.
+	 *
+	 * @param rgb the packed RGB value
+	 * @return the luminance
+	 */
+	static float luminance(int rgb) {
+		return 0.299f * (rgb >> 16 & 0xff) + 0.587f * (rgb >> 8 & 0xff) + 0.114f * (rgb & 0xff);
+	}
+
+}
@@ -0,0 +1,101 @@
+package model;
+
+/**
+ * Uses histogram of oriented gradients (HOG) of the grayscale image as
+ * features. The image is split into square cells, every cell gets a histogram
+ * of unsigned gradient orientations weighted by magnitude, and histograms of
+ * every 2x2 block of cells are L2 normalized.
+ */
+public class HogExtractor implements FeatureExtractor {
+
+	/** The Constant CELL_DEFAULT (in pixels). */
+	public static final int CELL_DEFAULT = 8;
+
+	/** The Constant ORIENTATIONS_DEFAULT (bins over 0-180 degrees). */
+	public static final int ORIENTATIONS_DEFAULT = 9;
+
+	/** The size of a cell in pixels. */
+	private final int cell;
+
+	/** The number of orientation bins. */
+	private final int orientations;
+
+	/** The number of cells per row (and column). */
+	private final int cells;
+
+	/**
+	 * Instantiates a new HOG extractor.
+	 *
+	 * @param cell         the size of a cell in pixels, it must divide 32
+	 * @param orientations the number of orientation bins
+	 */
+	public HogExtractor(int cell, int orientations) {
+		if (cell < 2 || DataLoader.IMG_SIZE % cell != 0 || DataLoader.IMG_SIZE / cell < 2 || orientations < 1) {
+			throw new IllegalArgumentException("Invalid HOG configuration: " + cell + ":" + orientations);
+		}
+		this.cell = cell;
+		this.orientations = orientations;
+		this.cells = DataLoader.IMG_SIZE / cell;
+	}
+
+	@Override
+	public String getId() {
+		return "hog:" + cell + ":" + orientations;
+	}
+
+	@Override
+	public int getDimension() {
+		return (cells - 1) * (cells - 1) * 4 * orientations;
+	}
+
+	@Override
+	public void extract(int[][] image, float[] out, int offset) {
+		int size = DataLoader.IMG_SIZE;
+		float[] gray = new float[size * size];
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				gray[y * size + x] = GrayscaleExtractor.luminance(image[x][y]);
+			}
+		}
+
+		// Histograms of cells.
+		float[] histograms = new float[cells * cells * orientations];
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				float dx = gray[y * size + Math.min(x + 1, size - 1)] - gray[y * size + Math.max(x - 1, 0)];
+				float dy = gray[Math.min(y + 1, size - 1) * size + x] - gray[Math.max(y - 1, 0) * size + x];
+				double angle = Math.atan2(dy, dx);
+				if (angle < 0) {
+					angle += Math.PI; // Unsigned orientation.
+				}
+				int bin = Math.min(orientations - 1, (int) (angle / Math.PI * orientations));
+				int c = (y / cell * cells + x / cell) * orientations;
+				histograms[c + bin] += (float) Math.sqrt(dx * dx + dy * dy);
+			}
+		}
+
+		// Normalize every 2x2 block of cells.
+		int o = offset;
+		for (int by = 0; by < cells - 1; by++) {
+			for (int bx = 0; bx < cells - 1; bx++) {
+				int start = o;
+				double norm = 1e-6;
+				for (int cy = by; cy <= by + 1; cy++) {
+					for (int cx = bx; cx <= bx + 1; cx++) {
+						int c = (cy * cells + cx) * orientations;
+						for (int b = 0; b < orientations; b++) {
+							float value = histograms[c + b];
+							out[o++] = value;
+							norm += value * value;
+						}
+					}
+				}
+				float scale = (float) (1 / Math.sqrt(norm));
+				for (int i = start; i < o; i++) {
+					out[i] *= scale;
+				}
+			}
+		}
+	}
+
+}
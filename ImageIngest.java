@@ -0,0 +1,291 @@
+package model;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Ingestion of test images of any size: an image is decoded and area-averaged
+ * down (or up) to 32x32 pixels in a single pass over its rows, files are
+ * decoded in parallel and decoded pixels are kept in a content-addressed cache,
+ * so the same picture is decoded once however it is named. The alpha channel
+ * is dropped.
+ * <p>
+ * The cache is keyed by the SHA-256 digest of the file bytes and holds at most
+ * {@value #CACHE_PROPERTY} entries (system property, 8192 by default, about
+ * 4 KB each), least recently used ones are evicted.
+ */
+public class ImageIngest {
+
+	/** The Constant CACHE_PROPERTY. */
+	public static final String CACHE_PROPERTY = "knn.ingest.cache.entries";
+
+	/** The maximum number of cached images. */
+	private static final int CACHE_ENTRIES = Integer.getInteger(CACHE_PROPERTY, 8192);
+
+	/** The decoded pixels by digest of the file bytes, the eldest first. */
+	private static final Map<ByteBuffer, int[][]> CACHE = new LinkedHashMap<>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<ByteBuffer, int[][]> eldest) {
+			return size() > CACHE_ENTRIES;
+		}
+
+	};
+
+	/** The number of lookups which found the image. */
+	private static long hits;
+
+	/** The number of lookups which did not find the image. */
+	private static long misses;
+
+	/**
+	 * Utility class, no instances.
+	 */
+	private ImageIngest() {
+	}
+
+	/**
+	 * Loads test images in parallel. The label is the first character of the
+	 * file name, -1 if it is not a digit.
+	 *
+	 * @param files the .png files
+	 * @return the rows, in the order of files
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static List<RowData> load(File... files) throws IOException {
+		RowData[] rows = new RowData[files.length];
+		try {
+			IntStream.range(0, files.length).parallel().forEach(i -> {
+				try {
+					rows[i] = load(files[i]);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return Arrays.asList(rows);
+	}
+
+	/**
+	 * Loads one test image, from the cache if the same bytes were decoded
+	 * before. The label is the first character of the file name, -1 if it is not
+	 * a digit.
+	 *
+	 * @param file the .png file
+	 * @return the row
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static RowData load(File file) throws IOException {
+		LoadEvent event = new LoadEvent();
+		event.begin();
+		long start = System.nanoTime();
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		ByteBuffer key = ByteBuffer.wrap(digest(bytes));
+		int[][] d_img;
+		synchronized (CACHE) {
+			d_img = CACHE.get(key);
+			if (d_img != null) {
+				hits++;
+			} else {
+				misses++;
+			}
+		}
+		if (d_img == null) {
+			BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes));
+			if (image == null) {
+				throw new IOException("Not a supported image: " + file);
+			}
+			d_img = resize(image);
+			synchronized (CACHE) {
+				CACHE.put(key, d_img);
+			}
+		}
+		int label = Character.digit(file.getName().charAt(0), 10); // -1 for unlabeled images.
+		PerfStats.get().recordPngDecode(System.nanoTime() - start, bytes.length);
+		event.end();
+		if (event.shouldCommit()) {
+			event.path = file.getPath();
+			event.kind = "png";
+			event.bytes = bytes.length;
+			event.rows = 1;
+			event.commit();
+		}
+		return new RowData(copy(d_img), label, file);
+	}
+
+	/**
+	 * Area-averages the image to 32x32 pixels. Every source pixel adds its
+	 * color, weighted by the area it covers, to the one or few target pixels it
+	 * overlaps; rows of the image are read once, in order. A 32x32 image is
+	 * returned unchanged (without alpha).
+	 *
+	 * @param image the image of any size
+	 * @return the pixels, indexed [x][y]
+	 */
+	public static int[][] resize(BufferedImage image) {
+		int size = DataLoader.IMG_SIZE;
+		int width = image.getWidth();
+		int height = image.getHeight();
+		// In units of 1/size of a source pixel and 1/width (1/height) of a target
+		// pixel, all overlaps are integers.
+		int[][] columns = overlaps(width);
+		int[][] rows = overlaps(height);
+		long[] sums = new long[size * size * 3];
+		long[] line = new long[size * 3]; // Sums of the current source row.
+		int[] rgb = new int[width];
+		for (int y = 0; y < height; y++) {
+			image.getRGB(0, y, width, 1, rgb, 0, width);
+			Arrays.fill(line, 0);
+			for (int x = 0; x < width; x++) {
+				int pixel = rgb[x];
+				int r = pixel >> 16 & 0xff;
+				int g = pixel >> 8 & 0xff;
+				int b = pixel & 0xff;
+				int[] overlap = columns[x];
+				for (int o = 0; o < overlap.length; o += 2) {
+					int t = overlap[o] * 3;
+					int weight = overlap[o + 1];
+					line[t] += r * weight;
+					line[t + 1] += g * weight;
+					line[t + 2] += b * weight;
+				}
+			}
+			int[] overlap = rows[y];
+			for (int o = 0; o < overlap.length; o += 2) {
+				int offset = overlap[o] * size * 3;
+				int weight = overlap[o + 1];
+				for (int i = 0; i < line.length; i++) {
+					sums[offset + i] += line[i] * weight;
+				}
+			}
+		}
+		long area = (long) width * height; // Total weight of every target pixel.
+		int[][] d_img = new int[size][size];
+		for (int ty = 0; ty < size; ty++) {
+			for (int tx = 0; tx < size; tx++) {
+				int i = (ty * size + tx) * 3;
+				d_img[tx][ty] = channel(sums[i], area) << 16 | channel(sums[i + 1], area) << 8
+						| channel(sums[i + 2], area);
+			}
+		}
+		return d_img;
+	}
+
+	/**
+	 * Gets the number of cache lookups which found the image.
+	 *
+	 * @return the hits
+	 */
+	public static long getHits() {
+		synchronized (CACHE) {
+			return hits;
+		}
+	}
+
+	/**
+	 * Gets the number of cache lookups which did not find the image.
+	 *
+	 * @return the misses
+	 */
+	public static long getMisses() {
+		synchronized (CACHE) {
+			return misses;
+		}
+	}
+
+	/**
+	 * Removes all cached images.
+	 */
+	public static void clear() {
+		synchronized (CACHE) {
+			CACHE.clear();
+		}
+	}
+
+	/**
+	 * Helper method to get the target pixels every source pixel of one axis
+	 * overlaps. Source pixel s covers [s * size, (s + 1) * size) and target pixel
+	 * t covers [t * length, (t + 1) * length), so overlaps of a target pixel sum
+	 * up to the length.
+	 *
+	 * @param length the number of source pixels of the axis
+	 * @return for every source pixel the pairs of target pixel and overlap
+	 */
+	private static int[][] overlaps(int length) {
+		int size = DataLoader.IMG_SIZE;
+		int[][] result = new int[length][];
+		for (int s = 0; s < length; s++) {
+			int from = s * size;
+			int to = from + size;
+			int first = from / length;
+			int last = (to - 1) / length;
+			int[] overlap = new int[(last - first + 1) * 2];
+			for (int t = first; t <= last; t++) {
+				int start = Math.max(from, t * length);
+				int end = Math.min(to, (t + 1) * length);
+				overlap[(t - first) * 2] = t;
+				overlap[(t - first) * 2 + 1] = end - start;
+			}
+			result[s] = overlap;
+		}
+		return result;
+	}
+
+	/**
+	 * Helper method to get the rounded average of a channel.
+	 *
+	 * @param sum  the weighted sum
+	 * @param area the total weight
+	 * @return the channel, 0-255
+	 */
+	private static int channel(long sum, long area) {
+		return (int) ((sum + area / 2) / area);
+	}
+
+	/**
+	 * Helper method to copy pixels, cached arrays are never handed out.
+	 *
+	 * @param d_img the pixels
+	 * @return the copy
+	 */
+	private static int[][] copy(int[][] d_img) {
+		int[][] result = new int[d_img.length][];
+		for (int x = 0; x < d_img.length; x++) {
+			result[x] = d_img[x].clone();
+		}
+		return result;
+	}
+
+	/**
+	 * Helper method to get the SHA-256 digest of the bytes.
+	 *
+	 * @param bytes the bytes
+	 * @return the digest
+	 */
+	private static byte[] digest(byte[] bytes) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(bytes);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // Every Java platform supports SHA-256.
+		}
+	}
+
+}
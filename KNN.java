@@ -1,10 +1,13 @@
 package model;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Observable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
 
 /**
  * The Class KNN represents KNN algorithm to find the k-nearest neighbor. It is
@@ -12,17 +15,59 @@ import java.util.Observable;
  * {@link KNN#progress} variable calculates the % of progress of knn algorithm
  * and this value is needed to be displayed in ProgressView window panel, so
  * every time it is changed, the Model is notified and changes accordingly.
+ * Concurrent queries of one training set are served by
+ * {@link ClassificationEngine}, see {@link KNN#engine(TrainingSet)}.
  */
 public class KNN extends Observable {
 
-	/** The progress value in %. */
-	private int progress;
+	/** Number of scanned rows after which progress and metrics are updated. */
+	private static final int PROGRESS_CHUNK = ClassificationEngine.CHUNK;
+
+	/** The live metrics of the run. */
+	private final RunMetrics metrics;
+
+	/** The feature extractor, raw pixels by default. */
+	private FeatureExtractor extractor = new RawPixelExtractor();
+
+	/** The distance metric. */
+	private DistanceMetric metric = DistanceMetric.DEFAULT;
+
+	/** The voting strategy. */
+	private VotingStrategy voting = VotingStrategy.DEFAULT;
+
+	/** The anytime settings, null for exact full scans. */
+	private AnytimeSettings anytime;
+
+	/** The store of nearest rows of test images, null if they are not kept. */
+	private NeighborStore neighborStore;
+
+	/** The number of compute threads of runs over test image files. */
+	private int computeThreads = Runtime.getRuntime().availableProcessors();
+
+	/** The results of every image of the last run. */
+	private final BatchResults results = new BatchResults();
+
+	/** True if the last run resumed a batch from its checkpoint. */
+	private volatile boolean resumed;
+
+	/** True if the estimated label is provisional (anytime scan not finished). */
+	private volatile boolean provisional;
+
+	/** The fraction of scanned rows the estimated label has not changed for. */
+	private volatile double stability = 1;
+
+	/** The progress value in %, it is updated by classifying threads. */
+	private volatile int progress;
+
+	/** True while a notification of Model is queued on the event dispatch thread. */
+	private final AtomicBoolean notifyQueued = new AtomicBoolean();
 
 	/**
 	 * True if run the algorithm is allowed, otherwise false (if user clicks on
-	 * 'Stop' button).
+	 * 'Stop' button). It is volatile, classifying threads check it between chunks
+	 * of {@value #PROGRESS_CHUNK} rows, so they stop within milliseconds.
 	 */
-	private boolean allowRun;
+	private volatile boolean allowRun;
 
 	/** The estimated label. */
 	private int estimated_label;
@@ -30,6 +75,9 @@ public class KNN extends Observable {
 	/** The confidence. */
 	private double confidence;
 
+	/** The confidence of every label class (they sum up to 1). */
+	private double[] confidences = new double[DataLoader.NUM_LABELS];
+
 	/**
 	 * For multiple test images: num_correct_classifications/num_test_images (%).
 	 */
@@ -39,78 +87,663 @@ public class KNN extends Observable {
 	 * Instantiates a new KNN. Run is allowed by default.
 	 */
 	public KNN() {
+		this(new RunMetrics());
+	}
+
+	/**
+	 * Instantiates a new KNN which reports to the given metrics. Run is allowed by
+	 * default.
+	 *
+	 * @param metrics the live metrics
+	 */
+	public KNN(RunMetrics metrics) {
+		this.metrics = metrics;
 		allowRun = true;
 	}
 
 	/**
-	 * Runs the algorithm.
+	 * Runs the algorithm. Images are compared by their feature vectors, see
+	 * {@link KNN#setExtractor(FeatureExtractor)}.
 	 *
-	 * @param k             the k value
-	 * @param train_dataset the train dataset
-	 * @param test_dataset  the test dataset
+	 * @param k            the k value
+	 * @param train_set    the train dataset
+	 * @param test_dataset the test dataset
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
-	public void run(int k, List<RowData> train_dataset, List<RowData> test_dataset) throws IOException {
+	public void run(int k, TrainingSet train_set, List<RowData> test_dataset) throws IOException {
+		FeatureMatrix train_features = train_set.getFeatures(extractor);
+		int[] t_labels = train_set.getLabels();
+		int[] t_multiplicities = train_set.getMultiplicities();
+		QueryContext context = newContext(train_features.getDimension(), k);
+		int num_test_images = test_dataset.size();
+		if (neighborStore != null) {
+			neighborStore.startBatch();
+		}
+		provisional = false;
+		resumed = false;
+		results.clear();
+		metrics.classifying(num_test_images, train_features.getRows());
+		ClassificationRunEvent runEvent = new ClassificationRunEvent();
+		runEvent.begin();
+		int num_correct_classifications = 0;
+		int classified = 0;
+		for (RowData d_img : test_dataset) { // Iterate over all test files.
+			Classification result = classify(d_img, train_features, t_labels, t_multiplicities, context);
+			if (result == null) { // Break the loop once 'stop' was clicked.
+				break;
+			}
+			update(result);
+			results.add(result);
+			if (result.isCorrect()) {
+				num_correct_classifications++;
+			}
+			classified++;
+		}
+		finish(runEvent, k, train_features.getRows(), num_test_images, classified, num_correct_classifications);
+	}
+
+	/**
+	 * Runs the algorithm over test image files with {@link ClassificationPipeline}:
+	 * decoding of images, classification and writing of results overlap.
+	 *
+	 * @param k          the k value
+	 * @param train_set  the train dataset
+	 * @param test_files the test image files
+	 * @param sink       the sink of results, it may be null
+	 * @throws Exception throws if a test file is invalid or results cannot be
+	 *                   written
+	 */
+	public void run(int k, TrainingSet train_set, List<File> test_files, ResultSink sink) throws Exception {
+		run(k, train_set, test_files, sink, null);
+	}
 
-		List<DistLblData> distance_lbl_array = new ArrayList<>();
-		int numData = 0;
+	/**
+	 * Runs the algorithm over test image files with {@link ClassificationPipeline}
+	 * and records classified images in the checkpoint. Images which the
+	 * checkpoint holds from an earlier, stopped run are not classified again,
+	 * their results are restored and count for accuracy; the checkpoint is
+	 * completed (deleted) once all images are classified, otherwise it is
+	 * flushed and closed.
+	 *
+	 * @param k          the k value
+	 * @param train_set  the train dataset
+	 * @param test_files the test image files
+	 * @param sink       the sink of results, it may be null
+	 * @param checkpoint the checkpoint, it may be null
+	 * @throws Exception throws if a test file is invalid or results cannot be
+	 *                   written
+	 */
+	public void run(int k, TrainingSet train_set, List<File> test_files, ResultSink sink, BatchCheckpoint checkpoint)
+			throws Exception {
+		FeatureMatrix train_features = train_set.getFeatures(extractor);
+		List<File> remaining = checkpoint != null ? checkpoint.remaining(test_files) : test_files;
+		metrics.classifying(test_files.size(), train_features.getRows());
+		metrics.resumed(test_files.size() - remaining.size(), train_features.getRows());
+		ClassificationRunEvent runEvent = new ClassificationRunEvent();
+		runEvent.begin();
+		// Classified and correctly classified images, with those of the checkpoint.
+		int[] counts = new int[2];
+		if (checkpoint != null) {
+			counts[0] = test_files.size() - remaining.size();
+			counts[1] = checkpoint.getCorrect();
+		}
+		provisional = false;
+		results.clear();
+		if (checkpoint != null) {
+			checkpoint.restore(results);
+		}
+		resumed = counts[0] > 0;
+		if (neighborStore != null) {
+			neighborStore.startBatch();
+		}
+		ClassificationPipeline pipeline = new ClassificationPipeline(this, k, computeThreads);
+		try {
+			pipeline.run(remaining, train_features, train_set.getLabels(), train_set.getMultiplicities(), result -> {
+				update(result);
+				results.add(result);
+				counts[0]++;
+				if (result.isCorrect()) {
+					counts[1]++;
+				}
+				if (sink != null) {
+					sink.write(result);
+				}
+				if (checkpoint != null) {
+					checkpoint.record(result);
+				}
+			});
+		} finally {
+			if (checkpoint != null) {
+				if (counts[0] == test_files.size()) {
+					checkpoint.complete();
+				} else {
+					checkpoint.close();
+				}
+			}
+		}
+		finish(runEvent, k, train_features.getRows(), test_files.size(), counts[0], counts[1]);
+	}
+
+	/**
+	 * Runs the algorithm over test image files with shard workers, each with a
+	 * slice of the training set, see {@link ShardCoordinator}. Images are sent
+	 * one after another, 'stop' is checked between images.
+	 *
+	 * @param k           the k value
+	 * @param test_files  the test image files
+	 * @param coordinator the coordinator of shards
+	 * @param sink        the sink of results, it may be null
+	 * @throws Exception throws if a test file is invalid, a shard fails or
+	 *                   results cannot be written
+	 */
+	public void run(int k, List<File> test_files, ShardCoordinator coordinator, ResultSink sink) throws Exception {
+		long num_train = coordinator.getRows();
+		metrics.classifying(test_files.size(), num_train);
+		ClassificationRunEvent runEvent = new ClassificationRunEvent();
+		runEvent.begin();
 		int num_correct_classifications = 0;
-		int num_test_images = test_dataset.size();
-		int totalData = train_dataset.size() * num_test_images;
-		outer: for (RowData d_img : test_dataset) { // Iterate over all test files.
-			for (int l = 0; l < train_dataset.size(); l++) { // Iterate over all train files.
-				if (!allowRun) { // Break the outer loop once 'stop' was clicked.
-					break outer;
+		int classified = 0;
+		provisional = false;
+		resumed = false;
+		results.clear();
+		for (File test_file : test_files) {
+			for (RowData d_img : DataLoader.load(test_file)) {
+				if (!allowRun) { // Stop once 'stop' was clicked.
+					break;
 				}
-				int[][] t_img = train_dataset.get(l).getImage(); // Store current train image.
-				int t_lbl = train_dataset.get(l).getLabel(); // Store current train label.
-				double eD = 0; // Stores final Euclidean distance for all pixels.
-
-				for (int i = 0; i < DataLoader.IMG_SIZE; i++) { // Loop through the row-pixels.
-					for (int j = 0; j < DataLoader.IMG_SIZE; j++) { // Loop through the column-pixels.
-						eD += Math.pow(t_img[i][j] - d_img.getImage()[i][j], 2);
-					}
+				Classification result = coordinator.classify(d_img, k, voting);
+				metrics.imageClassified();
+				reportProgress(num_train);
+				update(result);
+				results.add(result);
+				if (result.isCorrect()) {
+					num_correct_classifications++;
 				}
+				classified++;
+				if (sink != null) {
+					sink.write(result);
+				}
+			}
+		}
+		finish(runEvent, k, (int) num_train, test_files.size(), classified, num_correct_classifications);
+	}
 
-				eD = Math.sqrt(eD); // Update Euclidean distance.
-				distance_lbl_array.add(new DistLblData(eD, t_lbl)); // Add to the list along witht the label.
-				numData++;
-				progress = numData * 100 / totalData; // Update progress value.
+	/**
+	 * Classifies one test image: scans all training rows keeping the k nearest
+	 * ones and lets them vote. It may be called by many threads at once, every
+	 * thread with its own context.
+	 *
+	 * @param d_img            the test image
+	 * @param train_features   the feature vectors of training rows
+	 * @param t_labels         the labels of training rows
+	 * @param t_multiplicities the multiplicities of training rows, null if every
+	 *                         row counts once
+	 * @param context          the scratch buffers of the calling thread
+	 * @return the result, null if 'stop' was clicked
+	 */
+	public Classification classify(RowData d_img, FeatureMatrix train_features, int[] t_labels,
+			int[] t_multiplicities, QueryContext context) {
+		QueryEvent queryEvent = new QueryEvent();
+		queryEvent.begin();
+		long start = System.nanoTime();
+		if (anytime != null) {
+			return classifyAnytime(d_img, train_features, t_labels, t_multiplicities, context, anytime,
+					queryEvent);
+		}
+		int num_train = train_features.getRows();
+		double[] d_confidences = new double[DataLoader.NUM_LABELS];
+		NeighborStore store = neighborStore;
+		long hash = store != null ? TrainingSet.hash(d_img) : 0;
+		if (store != null) { // Nearest rows of a test image seen before are voted again.
+			int label = store.vote(hash, d_img, context.getK(), context.getScratch(), context.getVoter(),
+					d_confidences);
+			if (label >= 0) {
+				PerfStats.get().recordQuery(0, 0, System.nanoTime() - start, 0);
+				reportProgress(num_train);
+				metrics.imageClassified();
+				return new Classification(d_img.getSource(), d_img.getLabel(), label, d_confidences);
+			}
+		}
+		int rejected = search(d_img, train_features, context);
+		if (rejected < 0) { // 'stop' was clicked.
+			return null;
+		}
+		long distanceEnd = System.nanoTime();
 
-				// Notify Model that progress value has changed.
-				setChanged();
-				notifyObservers();
+		// Sort by distances to have shortest distance at the first place of heap.
+		NeighborHeap heap = context.getHeap();
+		heap.sort();
+		long topKEnd = System.nanoTime();
+		if (store != null) {
+			try {
+				store.put(hash, d_img, heap, t_labels, t_multiplicities);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
 			}
+		}
 
-			// Sort by distances to have shortest distance at the first place of list.
-			Collections.sort(distance_lbl_array, (e1, e2) -> Double.compare(e1.getDistance(), e2.getDistance()));
+		// Find the label class with maximum weight of votes.
+		int label = context.getVoter().vote(heap, t_labels, t_multiplicities, context.getK(), d_confidences);
 
-			// Apply K value.
-			List<DistLblData> closest_k_label_array = distance_lbl_array.subList(0, k);
+		long end = System.nanoTime();
+		PerfStats.get().recordQuery(distanceEnd - start, topKEnd - distanceEnd, end - topKEnd, num_train);
+		queryEvent.end();
+		if (queryEvent.shouldCommit()) {
+			queryEvent.rowsScanned = num_train;
+			queryEvent.rowsPruned = rejected;
+			queryEvent.expectedLabel = d_img.getLabel();
+			queryEvent.estimatedLabel = label;
+			queryEvent.commit();
+		}
+		metrics.imageClassified();
+		return new Classification(d_img.getSource(), d_img.getLabel(), label, d_confidences);
+	}
 
-			// Sort by the frequencies of labels to have the label with the most frequencies
-			// at the first
-			// place of the list.
-			Collections.sort(closest_k_label_array,
-					(e1, e2) -> Integer.compare(Collections.frequency(closest_k_label_array, e2),
-							Collections.frequency(closest_k_label_array, e1)));
+	/**
+	 * Helper method to classify the test image with an anytime scan: chunks of
+	 * rows are scanned in a random order (rows of a chunk stay contiguous in
+	 * memory) and after every chunk a copy of the heap votes a provisional answer,
+	 * which is published to observers. The scan stops early once the label has not
+	 * changed for the stable fraction of all rows or the latency budget expires.
+	 *
+	 * @param d_img            the test image
+	 * @param train_features   the feature vectors of training rows
+	 * @param t_labels         the labels of training rows
+	 * @param t_multiplicities the multiplicities of training rows
+	 * @param context          the scratch buffers of the calling thread
+	 * @param settings         the anytime settings
+	 * @param queryEvent       the begun event of the query, it is committed with
+	 *                         the rows actually scanned
+	 * @return the result, null if 'stop' was clicked
+	 */
+	private Classification classifyAnytime(RowData d_img, FeatureMatrix train_features, int[] t_labels,
+			int[] t_multiplicities, QueryContext context, AnytimeSettings settings, QueryEvent queryEvent) {
+		long start = System.nanoTime();
+		long deadline = settings.getBudgetMillis() > 0 ? start + settings.getBudgetMillis() * 1_000_000
+				: Long.MAX_VALUE;
+		int dimension = train_features.getDimension();
+		int num_train = train_features.getRows();
+		float[] d_features = context.getFeatures();
+		extractor.extract(d_img.getImage(), d_features, 0);
+		double d_norm = FeatureMatrix.squaredNorm(d_features, 0, dimension);
+		NeighborHeap heap = context.getHeap();
+		NeighborHeap scratch = context.getScratch();
+		heap.clear();
+		double[] d_confidences = new double[DataLoader.NUM_LABELS];
+		int label = -1;
+		long scanned = 0; // Rows scanned so far.
+		long stable = 0; // Rows scanned since the label changed.
+		int rejected = 0; // Rows rejected by the bound so far.
+		for (int chunk : context.getChunkOrder((num_train + PROGRESS_CHUNK - 1) / PROGRESS_CHUNK)) {
+			if (!allowRun) { // Stop once 'stop' was clicked.
+				return null;
+			}
+			int from = chunk * PROGRESS_CHUNK;
+			int to = Math.min(num_train, from + PROGRESS_CHUNK);
+			rejected += ClassificationEngine.scan(d_features, d_norm, train_features, metric, heap, from, to);
+			scanned += to - from;
 
-			// Update estimated label.
-			estimated_label = (int) closest_k_label_array.get(0).getLabel();
+			// Vote a sorted copy, the heap itself is still offered rows.
+			heap.copyTo(scratch);
+			scratch.sort();
+			int voted = context.getVoter().vote(scratch, t_labels, t_multiplicities, context.getK(), d_confidences);
+			stable = voted == label ? stable + to - from : 0;
+			label = voted;
+			stability = (double) stable / scanned;
+			if (scanned < num_train) {
+				estimated_label = label;
+				confidence = d_confidences[label];
+				confidences = d_confidences.clone();
+				provisional = true;
+			}
+			reportProgress(to - from, scanned < num_train);
+			if (scanned < num_train
+					&& (stable >= settings.getStableFraction() * num_train || System.nanoTime() > deadline)) {
+				break; // The answer is stable enough or the budget has expired.
+			}
+		}
+		boolean exact = scanned == num_train;
+		PerfStats.get().recordQuery(System.nanoTime() - start, 0, 0, scanned);
+		queryEvent.end();
+		if (queryEvent.shouldCommit()) {
+			queryEvent.rowsScanned = (int) scanned;
+			queryEvent.rowsPruned = rejected;
+			queryEvent.expectedLabel = d_img.getLabel();
+			queryEvent.estimatedLabel = Math.max(0, label);
+			queryEvent.commit();
+		}
+		metrics.imageClassified();
+		return new Classification(d_img.getSource(), d_img.getLabel(), Math.max(0, label), d_confidences, exact,
+				exact ? 1 : stability);
+	}
 
-			// Update confidence.
-			confidence = (double) Collections.frequency(closest_k_label_array, closest_k_label_array.get(0))
-					/ closest_k_label_array.size();
+	/**
+	 * Finds the k nearest training rows of the test image, they are kept in the
+	 * (unsorted) heap of the context. It may be called by many threads at once,
+	 * every thread with its own context.
+	 *
+	 * @param d_img          the test image
+	 * @param train_features the feature vectors of training rows
+	 * @param context        the scratch buffers of the calling thread
+	 * @return the number of rows rejected by the bound, -1 if 'stop' was clicked
+	 */
+	public int search(RowData d_img, FeatureMatrix train_features, QueryContext context) {
+		int dimension = train_features.getDimension();
+		int num_train = train_features.getRows();
+		float[] d_features = context.getFeatures(); // Features of the test image.
+		extractor.extract(d_img.getImage(), d_features, 0);
+		double d_norm = FeatureMatrix.squaredNorm(d_features, 0, dimension);
+		NeighborHeap heap = context.getHeap();
+		heap.clear();
+		int rejected = 0; // Rows which cannot be among the k nearest.
+		for (int from = 0; from < num_train; from += PROGRESS_CHUNK) {
+			if (!allowRun) { // Stop once 'stop' was clicked.
+				return -1;
+			}
+			int to = Math.min(num_train, from + PROGRESS_CHUNK);
+			rejected += ClassificationEngine.scan(d_features, d_norm, train_features, metric, heap, from, to);
+			reportProgress(to - from);
+		}
+		return rejected;
+	}
 
-			if (estimated_label == d_img.getLabel()) {
-				num_correct_classifications++;
+	/**
+	 * Updates estimated label and confidence with the latest result.
+	 *
+	 * @param result the result
+	 */
+	private void update(Classification result) {
+		estimated_label = result.getLabel();
+		confidence = result.getConfidence();
+		confidences = result.getConfidences();
+		stability = result.getStability();
+		provisional = !result.isExact();
+	}
+
+	/**
+	 * Updates accuracy at the end of a run and commits the run event.
+	 *
+	 * @param runEvent     the run event
+	 * @param k            the k value
+	 * @param trainingRows the number of training rows
+	 * @param testImages   the number of test images
+	 * @param classified   the number of classified images
+	 * @param correct      the number of correctly classified images
+	 */
+	private void finish(ClassificationRunEvent runEvent, int k, int trainingRows, int testImages, int classified,
+			int correct) {
+		// Update accuracy.
+		accuracy = testImages > 0 ? correct * 100 / testImages : 0;
+
+		runEvent.end();
+		if (runEvent.shouldCommit()) {
+			runEvent.k = k;
+			runEvent.trainingRows = trainingRows;
+			runEvent.testImages = testImages;
+			runEvent.classifiedImages = classified;
+			runEvent.accuracy = accuracy;
+			runEvent.commit();
+		}
+	}
+
+	/**
+	 * Updates metrics with the scanned rows and, only if the % value has changed,
+	 * the progress value. Model is notified only in the latter case, so views are
+	 * not flooded with updates.
+	 *
+	 * @param rows the rows scanned since the last report
+	 */
+	private void reportProgress(long rows) {
+		reportProgress(rows, false);
+	}
+
+	/**
+	 * Updates metrics with the scanned rows and the progress value. Model is
+	 * notified if the % value has changed or a provisional answer was published.
+	 * Classifying threads only queue the notification: it is sent from the event
+	 * dispatch thread, at most one is waiting, so views are not changed from many
+	 * threads at once.
+	 *
+	 * @param rows      the rows scanned since the last report
+	 * @param published true if a provisional answer was published
+	 */
+	private void reportProgress(long rows, boolean published) {
+		metrics.rowsScanned(rows);
+		int value = metrics.getProgress();
+		if (value != progress || published) {
+			progress = value; // Update progress value.
+
+			// Notify Model that progress value has changed.
+			if (notifyQueued.compareAndSet(false, true)) {
+				SwingUtilities.invokeLater(() -> {
+					notifyQueued.set(false);
+					setChanged();
+					notifyObservers();
+				});
 			}
+		}
+	}
 
-			distance_lbl_array.clear();
+	/**
+	 * Creates scratch buffers of a classifying thread. They keep
+	 * {@value NeighborStore#NEIGHBORS} nearest rows if they are stored.
+	 *
+	 * @param dimension the dimension of feature vectors
+	 * @param k         the k value
+	 * @return the query context
+	 */
+	public QueryContext newContext(int dimension, int k) {
+		return new QueryContext(dimension, k, neighborStore != null ? NeighborStore.NEIGHBORS : k, voting);
+	}
+
+	/**
+	 * Checks if the last batch can be voted again from stored nearest rows. A
+	 * batch resumed from its checkpoint cannot: its batch in the store holds
+	 * the images classified after resuming only.
+	 *
+	 * @return true, if nearest rows of the last batch were stored
+	 */
+	public boolean canRevote() {
+		NeighborStore store = neighborStore;
+		return !resumed && store != null && store.getBatchSize() > 0;
+	}
+
+	/**
+	 * Checks if the last run resumed a batch from its checkpoint.
+	 *
+	 * @return true, if resumed
+	 */
+	public boolean isResumed() {
+		return resumed;
+	}
+
+	/**
+	 * Votes the images of the last batch again from their stored nearest rows,
+	 * without computing distances, and updates accuracy.
+	 *
+	 * @param k the k value, at most {@value NeighborStore#NEIGHBORS}
+	 * @return true, if the batch was voted again, false if rows of the last batch
+	 *         were not stored
+	 */
+	public boolean revote(int k) {
+		if (!canRevote() || k > NeighborStore.NEIGHBORS) {
+			return false;
 		}
+		NeighborStore store = neighborStore;
+		results.set(store.revoteBatch(k, voting));
+		accuracy = results.getCorrect() * 100 / results.size();
+		return true;
+	}
 
-		// Update accuracy.
-		accuracy = num_correct_classifications * 100 / num_test_images;
+	/**
+	 * Sets the store of nearest rows of test images. Runs then keep
+	 * {@value NeighborStore#NEIGHBORS} nearest rows of every image in the store
+	 * and vote stored rows of images seen before instead of scanning.
+	 *
+	 * @param neighborStore the neighbor store, null to not keep nearest rows
+	 */
+	public void setNeighborStore(NeighborStore neighborStore) {
+		this.neighborStore = neighborStore;
+	}
+
+	/**
+	 * Gets the store of nearest rows of test images.
+	 *
+	 * @return the neighbor store, null if nearest rows are not kept
+	 */
+	public NeighborStore getNeighborStore() {
+		return neighborStore;
+	}
+
+	/**
+	 * Sets the number of compute threads of runs over test image files.
+	 *
+	 * @param computeThreads the number of threads
+	 */
+	public void setComputeThreads(int computeThreads) {
+		this.computeThreads = Math.max(1, computeThreads);
+	}
+
+	/**
+	 * Gets the number of compute threads of runs over test image files.
+	 *
+	 * @return the number of threads
+	 */
+	public int getComputeThreads() {
+		return computeThreads;
+	}
+
+	/**
+	 * Gets the results of every image of the last run, including those which a
+	 * resumed run took from its checkpoint.
+	 *
+	 * @return the results
+	 */
+	public BatchResults getResults() {
+		return results;
+	}
+
+	/**
+	 * Builds a thread-safe engine over the rows the training set has now, with
+	 * the current extractor, metric and voting strategy. Results, progress and
+	 * 'stop' of this KNN do not apply to the engine.
+	 *
+	 * @param train_set the train dataset
+	 * @return the engine
+	 */
+	public ClassificationEngine engine(TrainingSet train_set) {
+		return new ClassificationEngine(train_set, extractor, metric, voting);
+	}
+
+	/**
+	 * Checks if run is allowed.
+	 *
+	 * @return true, if run is allowed
+	 */
+	public boolean isAllowRun() {
+		return allowRun;
+	}
+
+	/**
+	 * Sets the feature extractor.
+	 *
+	 * @param extractor the new feature extractor
+	 */
+	public void setExtractor(FeatureExtractor extractor) {
+		this.extractor = extractor;
+	}
+
+	/**
+	 * Sets the anytime settings. They are meant for a single interactive image,
+	 * with many test images every image is classified anytime.
+	 *
+	 * @param anytime the anytime settings, null for exact full scans
+	 */
+	public void setAnytime(AnytimeSettings anytime) {
+		this.anytime = anytime;
+	}
+
+	/**
+	 * Checks if the estimated label is provisional: an anytime scan is in
+	 * progress or it stopped early.
+	 *
+	 * @return true, if provisional
+	 */
+	public boolean isProvisional() {
+		return provisional;
+	}
+
+	/**
+	 * Gets the stability of the estimated label: the fraction of scanned rows it
+	 * has not changed for, 1 for exact results.
+	 *
+	 * @return the stability
+	 */
+	public double getStability() {
+		return stability;
+	}
+
+	/**
+	 * Sets the distance metric.
+	 *
+	 * @param metric the new distance metric
+	 */
+	public void setMetric(DistanceMetric metric) {
+		this.metric = metric;
+	}
+
+	/**
+	 * Gets the distance metric.
+	 *
+	 * @return the distance metric
+	 */
+	public DistanceMetric getMetric() {
+		return metric;
+	}
+
+	/**
+	 * Sets the voting strategy.
+	 *
+	 * @param voting the new voting strategy
+	 */
+	public void setVoting(VotingStrategy voting) {
+		this.voting = voting;
+	}
+
+	/**
+	 * Gets the voting strategy.
+	 *
+	 * @return the voting strategy
+	 */
+	public VotingStrategy getVoting() {
+		return voting;
+	}
+
+	/**
+	 * Gets the confidence of every label class of the last classified image.
+	 *
+	 * @return the confidences, indexed by label
+	 */
+	public double[] getConfidences() {
+		return confidences.clone();
+	}
+
+	/**
+	 * Gets the feature extractor.
+	 *
+	 * @return the feature extractor
+	 */
+	public FeatureExtractor getExtractor() {
+		return extractor;
+	}
+
+	/**
+	 * Gets the metrics.
+	 *
+	 * @return the metrics
+	 */
+	public RunMetrics getMetrics() {
+		return metrics;
 	}
 
 	/**
@@ -0,0 +1,37 @@
+package model;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for loading of one .bin or .png file by
+ * {@link DataLoader}.
+ */
+@Name("model.Load")
+@Label("Load")
+@Category({ "Image Classification" })
+@Description("Reading and decoding of one input file")
+public class LoadEvent extends Event {
+
+	/** The path of the file. */
+	@Label("Path")
+	String path;
+
+	/** The kind of the file: bin or png. */
+	@Label("Kind")
+	String kind;
+
+	/** The size of the file. */
+	@Label("Size")
+	@DataAmount
+	long bytes;
+
+	/** The number of decoded rows (images). */
+	@Label("Rows")
+	int rows;
+
+}
@@ -1,16 +1,37 @@
 package view;
 
+import java.util.Observable;
+import java.util.Observer;
+
 import javax.swing.*;
 
+import model.Model;
+import model.QueryEngine;
+
 /**
  * The Class MenuBarView. Contains menu
  * File with Exit option.
  */
-public class MenuBarView extends JMenuBar {
+public class MenuBarView extends JMenuBar implements Observer {
 	
 	/** The Constant serialVersionUID. */
 	private static final long serialVersionUID = 1L;
 
+	/** The menu item to append source files to the resident training set. */
+	private JMenuItem menuItemAddSrc = new JMenuItem("Add source file(s)...");
+
+	/** The menu item to append labeled .png images to the resident training set. */
+	private JMenuItem menuItemAddImages = new JMenuItem("Add training image(s)...");
+
+	/** The menu item to keep decoded training data in memory between runs. */
+	private JCheckBoxMenuItem menuItemKeepResident = new JCheckBoxMenuItem("Keep training data resident");
+
+	/** The menu item to answer single test images provisionally while scanning. */
+	private JCheckBoxMenuItem menuItemAnytime = new JCheckBoxMenuItem("Anytime single-image answers");
+
+	/** The menu items of engines, the first one plans the engine automatically. */
+	private JRadioButtonMenuItem[] menuItemsEngine = new JRadioButtonMenuItem[QueryEngine.values().length + 1];
+
 	/** The menu item exit. */
 	private JMenuItem menuItemExit = new JMenuItem("Exit");
 
@@ -26,8 +47,42 @@ public class MenuBarView extends JMenuBar {
 	 */
 	private void initComponents() {
 		JMenu menuFile = new JMenu("File");
+		menuFile.add(menuItemAddSrc);
+		menuFile.add(menuItemAddImages);
+		menuFile.add(menuItemKeepResident);
+		menuFile.add(menuItemAnytime);
+		menuFile.addSeparator();
 		menuFile.add(menuItemExit);
 		add(menuFile);
+
+		JMenu menuEngine = new JMenu("Engine");
+		ButtonGroup engines = new ButtonGroup();
+		for (int i = 0; i < menuItemsEngine.length; i++) {
+			menuItemsEngine[i] = new JRadioButtonMenuItem(i == 0 ? "Automatic" : QueryEngine.values()[i - 1].toString());
+			engines.add(menuItemsEngine[i]);
+			menuEngine.add(menuItemsEngine[i]);
+		}
+		add(menuEngine);
+	}
+
+	/**
+	 * Enables adding files to the training data only before a run, see
+	 * {@link Model#isAppendable()}.
+	 *
+	 * @param o   the observable object (Model)
+	 * @param arg the passed argument (not used here)
+	 */
+	@Override
+	public void update(Observable o, Object arg) {
+		Model model = (Model) o;
+		SwingUtilities.invokeLater(() -> {
+			boolean appendable = model.isAppendable();
+			String tip = appendable ? null : Model.APPEND_DISABLED;
+			menuItemAddSrc.setEnabled(appendable);
+			menuItemAddSrc.setToolTipText(tip);
+			menuItemAddImages.setEnabled(appendable);
+			menuItemAddImages.setToolTipText(tip);
+		});
 	}
 
 	/**
@@ -39,4 +94,50 @@ public class MenuBarView extends JMenuBar {
 		return menuItemExit;
 	}
 
+	/**
+	 * Gets the menu item add source.
+	 *
+	 * @return the menu item add source
+	 */
+	public JMenuItem getMenuItemAddSrc() {
+		return menuItemAddSrc;
+	}
+
+	/**
+	 * Gets the menu item add images.
+	 *
+	 * @return the menu item add images
+	 */
+	public JMenuItem getMenuItemAddImages() {
+		return menuItemAddImages;
+	}
+
+	/**
+	 * Gets the menu item anytime.
+	 *
+	 * @return the menu item anytime
+	 */
+	public JCheckBoxMenuItem getMenuItemAnytime() {
+		return menuItemAnytime;
+	}
+
+	/**
+	 * Gets the menu items of engines: automatic planning, then one item per
+	 * {@link QueryEngine} in declaration order.
+	 *
+	 * @return the menu items engine
+	 */
+	public JRadioButtonMenuItem[] getMenuItemsEngine() {
+		return menuItemsEngine;
+	}
+
+	/**
+	 * Gets the menu item keep resident.
+	 *
+	 * @return the menu item keep resident
+	 */
+	public JCheckBoxMenuItem getMenuItemKeepResident() {
+		return menuItemKeepResident;
+	}
+
 }
@@ -0,0 +1,156 @@
+package model;
+
+/**
+ * Immutable sample of {@link RunMetrics} with derived rates.
+ */
+public class MetricsSnapshot {
+
+	/** The stage. */
+	private final Stage stage;
+
+	/** The elapsed time of the run in nanoseconds. */
+	private final long elapsedNanos;
+
+	/** The units of work done in the stage. */
+	private final long stageDone;
+
+	/** The units of work of the stage, 0 if unknown. */
+	private final long stageTotal;
+
+	/** The classified test images. */
+	private final long imagesDone;
+
+	/** The test images to classify. */
+	private final long imagesTotal;
+
+	/** The scanned training rows. */
+	private final long rowsDone;
+
+	/** The training rows to scan. */
+	private final long rowsTotal;
+
+	/** The time spent classifying in nanoseconds. */
+	private final long classifyNanos;
+
+	/** The estimated remaining time of the stage in nanoseconds, -1 if unknown. */
+	private final long etaNanos;
+
+	/**
+	 * Instantiates a new metrics snapshot.
+	 *
+	 * @param stage         the stage
+	 * @param elapsedNanos  the elapsed time of the run
+	 * @param stageDone     the units of work done in the stage
+	 * @param stageTotal    the units of work of the stage
+	 * @param imagesDone    the classified test images
+	 * @param imagesTotal   the test images to classify
+	 * @param rowsDone      the scanned training rows
+	 * @param rowsTotal     the training rows to scan
+	 * @param classifyNanos the time spent classifying
+	 * @param etaNanos      the estimated remaining time
+	 */
+	public MetricsSnapshot(Stage stage, long elapsedNanos, long stageDone, long stageTotal, long imagesDone,
+			long imagesTotal, long rowsDone, long rowsTotal, long classifyNanos, long etaNanos) {
+		this.stage = stage;
+		this.elapsedNanos = elapsedNanos;
+		this.stageDone = stageDone;
+		this.stageTotal = stageTotal;
+		this.imagesDone = imagesDone;
+		this.imagesTotal = imagesTotal;
+		this.rowsDone = rowsDone;
+		this.rowsTotal = rowsTotal;
+		this.classifyNanos = classifyNanos;
+		this.etaNanos = etaNanos;
+	}
+
+	/**
+	 * Gets the stage.
+	 *
+	 * @return the stage
+	 */
+	public Stage getStage() {
+		return stage;
+	}
+
+	/**
+	 * Gets the elapsed time of the run.
+	 *
+	 * @return the elapsed time in nanoseconds
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * Gets the progress of the current stage.
+	 *
+	 * @return the progress in %, -1 if unknown
+	 */
+	public int getStageProgress() {
+		return stageTotal > 0 ? (int) (stageDone * 100 / stageTotal) : -1;
+	}
+
+	/**
+	 * Gets the classified test images.
+	 *
+	 * @return the images
+	 */
+	public long getImagesDone() {
+		return imagesDone;
+	}
+
+	/**
+	 * Gets the test images to classify.
+	 *
+	 * @return the images
+	 */
+	public long getImagesTotal() {
+		return imagesTotal;
+	}
+
+	/**
+	 * Gets the scanned training rows.
+	 *
+	 * @return the rows
+	 */
+	public long getRowsDone() {
+		return rowsDone;
+	}
+
+	/**
+	 * Gets the training rows to scan.
+	 *
+	 * @return the rows
+	 */
+	public long getRowsTotal() {
+		return rowsTotal;
+	}
+
+	/**
+	 * Gets the classified images per second.
+	 *
+	 * @return the images per second
+	 */
+	public double getImagesPerSecond() {
+		return classifyNanos > 0 ? imagesDone * 1e9 / classifyNanos : 0;
+	}
+
+	/**
+	 * Gets the scanned rows per second.
+	 *
+	 * @return the rows per second
+	 */
+	public double getRowsPerSecond() {
+		return classifyNanos > 0 ? rowsDone * 1e9 / classifyNanos : 0;
+	}
+
+	/**
+	 * Gets the estimated remaining time of the current stage.
+	 *
+	 * @return the remaining time in nanoseconds, -1 if unknown
+	 */
+	public long getEtaNanos() {
+		return etaNanos;
+	}
+
+}
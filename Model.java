@@ -2,11 +2,23 @@ package model;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
 
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
 /**
  * As a part of MVC pattern, this class contains all business logic of
@@ -19,26 +31,73 @@ public class Model extends Observable implements Observer {
 	/** The Constant K_DEFAULT value (it can be any value from 1 to 10). */
 	public static final int K_DEFAULT = 5;
 
+	/** The timeout of shard requests of sharded runs in milliseconds. */
+	private static final long SHARD_TIMEOUT_MILLIS = 30_000;
+
 	/** The knn reference. */
 	private KNN knn;
 
-	/** The source files. */
-	private File[] sourceFiles;
+	/** The live metrics of the current run, sampled by views. */
+	private RunMetrics metrics = new RunMetrics();
+
+	/** The Constant APPEND_DISABLED, why files cannot be added. */
+	public static final String APPEND_DISABLED = "Files cannot be added while a run is active or finished,"
+			+ " click RESET first.";
+
+	/** The source files, runs work on a snapshot. */
+	private volatile File[] sourceFiles;
+
+	/** Single labeled .png images added to the training data, runs work on a snapshot. */
+	private List<File> trainingImages = new CopyOnWriteArrayList<>();
+
+	/** The resident training set, it is kept between runs. */
+	private TrainingSet trainingSet = new TrainingSet();
+
+	/** The distances of all pairs of training rows, null until requested. */
+	private PairwiseDistances pairwiseDistances;
+
+	/** The fingerprint {@link Model#pairwiseDistances} were computed for. */
+	private long pairwiseFingerprint;
+
+	/** The nearest rows of test images of batch runs, null until a batch runs. */
+	private NeighborStore neighborStore;
+
+	/** The fingerprint {@link Model#neighborStore} was opened for. */
+	private long neighborFingerprint;
 
 	/** The test files. */
 	private File testFiles;
 
+	/** The file classification results are appended to, null if not written. */
+	private File resultFile;
+
+	/** The anytime settings of single test images, null for exact full scans. */
+	private AnytimeSettings anytime;
+
+	/** True if the next run scans all rows even of a single test image. */
+	private boolean exactRequested;
+
 	/** The k value. */
 	private int k;
 
+	/** Chooses the engine of runs, see {@link QueryPlanner}. */
+	private final QueryPlanner planner = new QueryPlanner();
+
 	/** True if algorithm is being performed, otherwise false. */
-	private boolean started;
+	private volatile boolean started;
 
 	/** True if algorithm has finished, otherwise false. */
-	private boolean finished;
+	private volatile boolean finished;
 
-	/** The reference to the thread where knn is run. */
-	private Thread knnThread;
+	/** Runs loading and classification off the event dispatch thread. */
+	private final ExecutorService runner = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "knn-runner");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/** The running or last run task, null if never started. */
+	private Future<?> task;
 
 	/** True if it is single test mode, otherwise false (multiple test files). */
 	private boolean singleTest;
@@ -50,8 +109,11 @@ public class Model extends Observable implements Observer {
 	 * Instantiates a new model.
 	 */
 	public Model() {
-		knn = new KNN();
+		knn = new KNN(metrics);
 		k = K_DEFAULT; // Default k value.
+		PerfStats.get(); // Registers the MBean, so it is visible before the first run.
+		// Calibrates the planner for the defaults while the user picks files.
+		runner.submit(() -> planner.calibrate(getMetric(), getExtractor().getDimension(), k));
 	}
 
 	/**
@@ -68,6 +130,131 @@ public class Model extends Observable implements Observer {
 		}
 	}
 
+	/**
+	 * Appends source files to the already selected ones. The files are loaded into
+	 * the resident training set in the background, so the next run does not
+	 * reload the rows which are already there. Files cannot be added while a run
+	 * is active or finished (until reset), the user is told so.
+	 *
+	 * @param sourceFiles the source files to append
+	 */
+	public void addSourceFiles(File[] sourceFiles) {
+		if (sourceFiles == null || !checkAppendable() || !isSrcValid(sourceFiles)) {
+			return;
+		}
+		Set<File> merged = new LinkedHashSet<>();
+		if (this.sourceFiles != null) {
+			merged.addAll(List.of(this.sourceFiles));
+		}
+		merged.addAll(List.of(sourceFiles));
+		this.sourceFiles = merged.toArray(new File[0]); // A run started meanwhile loads them too.
+		setChanged();
+		notifyObservers();
+		append(sourceFiles, () -> {
+			List<File> kept = new ArrayList<>(List.of(this.sourceFiles));
+			kept.removeAll(List.of(sourceFiles));
+			this.sourceFiles = kept.isEmpty() ? null : kept.toArray(new File[0]);
+		});
+	}
+
+	/**
+	 * Appends single labeled .png images (file name starts with the label) to the
+	 * resident training set.
+	 *
+	 * @param images the labeled images, nothing is added if it is null
+	 */
+	public void addTrainingImages(File... images) {
+		if (images == null || !checkAppendable()) {
+			return;
+		}
+		for (File image : images) {
+			if (!isLabeledImage(image)) {
+				return;
+			}
+		}
+		List<File> added = List.of(images);
+		trainingImages.addAll(added);
+		setChanged();
+		notifyObservers();
+		append(images, () -> trainingImages.removeAll(added));
+	}
+
+	/**
+	 * Checks if files can be added to the training data: not while a run is
+	 * active, nor once it has finished, because reset drops the selected files.
+	 *
+	 * @return true, if files can be added
+	 */
+	public boolean isAppendable() {
+		return !started && !finished;
+	}
+
+	/**
+	 * Helper method to check if files can be added, the user is told if not.
+	 *
+	 * @return true, if files can be added
+	 */
+	private boolean checkAppendable() {
+		if (!isAppendable()) {
+			JOptionPane.showMessageDialog(null, APPEND_DISABLED, "Cannot add files", JOptionPane.INFORMATION_MESSAGE);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Helper method to append files to the resident training set on the
+	 * background {@link Model#runner}, so the GUI is not frozen. Loading is
+	 * cancelled between files once 'reset' was clicked; it is skipped if a run
+	 * was started meanwhile, the run loads the files itself.
+	 *
+	 * @param files    the .bin files or labeled images
+	 * @param rollback called on the event dispatch thread if a file is invalid
+	 */
+	private void append(File[] files, Runnable rollback) {
+		task = runner.submit(() -> {
+			if (!knn.isAllowRun() || started) {
+				return;
+			}
+			metrics.start();
+			metrics.enter(Stage.LOADING, files.length);
+			try {
+				trainingSet.addFiles(file -> {
+					metrics.advance(1);
+					if (!knn.isAllowRun()) {
+						throw new CancellationException(); // Rows of the file are kept.
+					}
+				}, files);
+			} catch (CancellationException e) {
+				// 'stop' or 'reset' was clicked while loading.
+			} catch (Exception e) {
+				e.printStackTrace();
+				SwingUtilities.invokeLater(() -> {
+					rollback.run();
+					JOptionPane.showMessageDialog(null, "Invalid input file", "Error occurred",
+							JOptionPane.ERROR_MESSAGE);
+					setChanged();
+					notifyObservers();
+				});
+			} finally {
+				if (!started) {
+					metrics.reset();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Checks if the file is a .png image which name starts with the label.
+	 *
+	 * @param image the image
+	 * @return true, if valid
+	 */
+	private boolean isLabeledImage(File image) {
+		String name = image.getName().toLowerCase();
+		return name.endsWith(".png") && Character.isDigit(name.charAt(0));
+	}
+
 	/**
 	 * Sets the test files. Also checks whether the files are valid and if so,
 	 * notifies views (observers).
@@ -82,6 +269,112 @@ public class Model extends Observable implements Observer {
 		}
 	}
 
+	/**
+	 * Sets the file classification results are appended to as CSV lines.
+	 *
+	 * @param resultFile the result file, null to not write results
+	 */
+	public void setResultFile(File resultFile) {
+		this.resultFile = resultFile;
+	}
+
+	/**
+	 * Sets the anytime settings: a single test image is answered provisionally
+	 * while rows are scanned and the scan may stop early, see
+	 * {@link AnytimeSettings}.
+	 *
+	 * @param anytime the anytime settings, null for exact full scans
+	 */
+	public void setAnytime(AnytimeSettings anytime) {
+		this.anytime = anytime;
+	}
+
+	/**
+	 * Gets the anytime settings.
+	 *
+	 * @return the anytime settings, null for exact full scans
+	 */
+	public AnytimeSettings getAnytime() {
+		return anytime;
+	}
+
+	/**
+	 * Checks if the estimated label is provisional: an anytime scan is in progress
+	 * or it stopped early.
+	 *
+	 * @return true, if provisional
+	 */
+	public boolean isProvisional() {
+		return knn.isProvisional();
+	}
+
+	/**
+	 * Gets the stability of the estimated label: the fraction of scanned rows it
+	 * has not changed for.
+	 *
+	 * @return the stability
+	 */
+	public double getStability() {
+		return knn.getStability();
+	}
+
+	/**
+	 * Sets whether decoded training data is kept in memory. If set, reset keeps
+	 * the training set with its feature vectors and cached .bin files are never
+	 * evicted, see {@link TrainingSetCache}.
+	 *
+	 * @param keepResident true to keep training data resident
+	 */
+	public void setKeepResident(boolean keepResident) {
+		TrainingSetCache.get().setKeepResident(keepResident);
+	}
+
+	/**
+	 * Checks if decoded training data is kept in memory.
+	 *
+	 * @return true, if kept resident
+	 */
+	public boolean isKeepResident() {
+		return TrainingSetCache.get().isKeepResident();
+	}
+
+	/**
+	 * Sets deduplication of training rows. Duplicates are collapsed into one row
+	 * which votes with its multiplicity, see {@link Deduplicator}. The training
+	 * set is loaded again on the next run if the setting changes.
+	 *
+	 * @param threshold the maximum difference of a channel (0-255) of near
+	 *                  duplicates, 0 for exact duplicates only, negative to keep
+	 *                  all rows
+	 */
+	public void setDedupThreshold(int threshold) {
+		Deduplicator current = trainingSet.getDeduplicator();
+		if (threshold < 0) {
+			trainingSet.setDeduplicator(null);
+		} else if (current == null || current.getThreshold() != threshold) {
+			trainingSet.setDeduplicator(new Deduplicator(threshold));
+		}
+	}
+
+	/**
+	 * Gets the report of deduplication of the training set.
+	 *
+	 * @return the report, null if deduplication is off
+	 */
+	public String getDedupReport() {
+		Deduplicator deduplicator = trainingSet.getDeduplicator();
+		return deduplicator != null ? deduplicator.toString() : null;
+	}
+
+	/**
+	 * Gets the result file.
+	 *
+	 * @return the result file, null if results are not written
+	 */
+	public File getResultFile() {
+		return resultFile;
+	}
+
 	/**
 	 * Checks if source files are valid.
 	 *
@@ -145,39 +438,398 @@ public class Model extends Observable implements Observer {
 	}
 
 	/**
-	 * Starts KNN algorithm. It runs KNN in a separate thread to avoid freezing the
-	 * GUI.
+	 * Starts KNN algorithm. Loading, indexing and classification run in the
+	 * background {@link Model#runner}, so the GUI is not frozen and 'stop' is
+	 * handled while files are still being loaded. Progress of every stage is
+	 * reported by {@link Model#getMetrics()}.
 	 */
 	public void start() {
 		started = true;
 		reseted = false;
 		finished = false;
+		metrics.start();
+		// The run works on these snapshots, even if files are added meanwhile.
+		File[] source_files = sourceFiles.clone();
+		List<File> images = new ArrayList<>(trainingImages);
+		List<File> sources = new ArrayList<>(List.of(source_files));
+		sources.addAll(images);
+		List<File> test_files = DataLoader.listTestFiles(testFiles); // Decoded while classifying.
+		singleTest = test_files.size() == 1;
+		knn.setAnytime(singleTest && !exactRequested ? anytime : null); // Anytime is for interactive use.
+		exactRequested = false;
+		metrics.enter(Stage.LOADING, sources.size()); // Every source file.
 
 		// Notify views.
 		setChanged();
 		notifyObservers();
 
-		try {
-			List<RowData> test_files = DataLoader.load(testFiles);
-			singleTest = test_files.size() == 1;
-			List<RowData> src_files = DataLoader.load(sourceFiles);
-			knnThread = new Thread(() -> {
-				try {
-					knn.run(k, src_files, test_files);
-					stop();
-				} catch (IOException e) {
-					e.printStackTrace();
+		task = runner.submit(() -> {
+			try {
+				QueryPlan plan = plan(source_files, images.size(), test_files.size());
+				if (plan.getEngine() == QueryEngine.SHARDED) {
+					knn.setNeighborStore(null); // Otherwise 'revote' would vote the batch before.
+					try (ShardCoordinator coordinator = ShardCoordinator.launchLocal(List.of(source_files),
+							plan.getParallelism(), getExtractor(), getMetric(), SHARD_TIMEOUT_MILLIS);
+							ResultSink sink = resultFile != null ? new CsvResultSink(resultFile) : null) {
+						knn.run(k, test_files, coordinator, sink);
+					} catch (IOException e) { // E.g. a shard failed or timed out, the message says which.
+						e.printStackTrace();
+						SwingUtilities.invokeLater(() -> {
+							JOptionPane.showMessageDialog(null, e.getMessage(), "Sharded run failed",
+									JOptionPane.ERROR_MESSAGE);
+							abort();
+						});
+						return;
+					}
+					if (started) {
+						stop();
+					}
+					return;
+				}
+				knn.setComputeThreads(plan.getParallelism());
+				load(sources.toArray(new File[0]));
+				if (knn.isAllowRun()) {
+					metrics.enter(Stage.INDEXING, 0);
+					trainingSet.getFeatures(knn.getExtractor()); // Extracts features of new rows only.
+					knn.setNeighborStore(singleTest ? null : getNeighborStore(source_files[0]));
+				}
+				if (knn.isAllowRun()) {
+					try (ResultSink sink = resultFile != null ? new CsvResultSink(resultFile) : null) {
+						knn.run(k, trainingSet, test_files, sink,
+								singleTest ? null : getCheckpoint(test_files, source_files[0]));
+					}
+				}
+			} catch (CancellationException e) {
+				// 'stop' was clicked while loading.
+			} catch (Exception e) {
+				e.printStackTrace();
+				SwingUtilities.invokeLater(() -> {
+					JOptionPane.showMessageDialog(null, "Invalid input file", "Error occurred",
+							JOptionPane.ERROR_MESSAGE);
+					reset();
+				});
+				return;
+			}
+			if (started) {
+				stop();
+			}
+		});
+	}
+
+	/**
+	 * Classifies the single test image again, scanning all training rows, after
+	 * an anytime run published a provisional answer.
+	 */
+	public void startExact() {
+		exactRequested = true;
+		knn.setAllowRun(true);
+		start();
+	}
+
+	/**
+	 * Helper method to make the resident training set contain the source files.
+	 * Files which are not resident yet are loaded, the next file is read while
+	 * the current one is decoded. Loading is cancelled between files once 'stop'
+	 * was clicked.
+	 *
+	 * @param files the source files
+	 * @throws Exception throws if input file is invalid
+	 */
+	private void load(File[] files) throws Exception {
+		trainingSet.retain(files);
+		for (File source : files) {
+			if (trainingSet.contains(source)) {
+				metrics.advance(1); // Already resident.
+			}
+		}
+		trainingSet.addFiles(file -> {
+			metrics.advance(1);
+			if (!knn.isAllowRun()) {
+				throw new CancellationException(); // Rows of the file are kept.
+			}
+		}, files);
+	}
+
+	/**
+	 * Evaluates the selected source files with cross-validation (no test files
+	 * are needed). It uses the current feature extractor, distance metric and
+	 * voting strategy and evaluates every k from 1 to maxK at once.
+	 *
+	 * @param method   kfold[:folds] (10 folds by default) or loo (leave-one-out)
+	 * @param maxK     the maximum evaluated k
+	 * @param pairwise true to read distances from {@link PairwiseDistances}
+	 *                 (computed and persisted on the first use), stored as
+	 *                 floats: near ties may be broken differently
+	 * @return the evaluation result
+	 * @throws Exception throws if input file is invalid or method is unknown
+	 */
+	public EvaluationResult evaluate(String method, int maxK, boolean pairwise) throws Exception {
+		syncTrainingSet();
+		FeatureMatrix features = trainingSet.getFeatures(getExtractor());
+		CrossValidator validator = new CrossValidator(getMetric(), getVoting(), maxK);
+		if (pairwise) {
+			validator.setDistances(getPairwiseDistances());
+		}
+		String[] parts = method.trim().toLowerCase().split(":");
+		switch (parts[0]) {
+		case "loo":
+			return validator.leaveOneOut(features, trainingSet.getLabels(), trainingSet.getMultiplicities(),
+					trainingSet.size());
+		case "kfold":
+			int folds = parts.length > 1 ? Integer.parseInt(parts[1]) : 10;
+			return validator.kFold(features, trainingSet.getLabels(), trainingSet.getMultiplicities(),
+					trainingSet.size(), folds, 0);
+		default:
+			throw new IllegalArgumentException("Unknown evaluation method: " + method);
+		}
+	}
+
+	/**
+	 * Reduces the selected source files to a smaller set of prototypes and saves
+	 * it as a .bin file, which can be selected as the source of later runs. If
+	 * test files are selected, they are classified with both the full and the
+	 * reduced set to measure the accuracy and time per query.
+	 *
+	 * @param methods the reduction steps in order, separated by '+': wilson
+	 *                (editing, k nearest rows vote) and cnn (Hart's condensing),
+	 *                editing can only be the first step
+	 * @param output  the output .bin file
+	 * @return the report
+	 * @throws Exception throws if input file is invalid or method is unknown
+	 */
+	public String reduce(String methods, File output) throws Exception {
+		syncTrainingSet();
+		FeatureMatrix features = trainingSet.getFeatures(getExtractor());
+		int[] labels = trainingSet.getLabels();
+		PrototypeReducer reducer = new PrototypeReducer(getMetric(), getVoting());
+		int[] kept = IntStream.range(0, trainingSet.size()).toArray();
+		StringBuilder report = new StringBuilder();
+		for (String method : methods.trim().toLowerCase().split("\\+")) {
+			long start = System.nanoTime();
+			int before = kept.length;
+			switch (method) {
+			case "wilson":
+				if (before != trainingSet.size()) {
+					throw new IllegalArgumentException("wilson must be the first reduction step");
+				}
+				kept = reducer.edit(features, labels, trainingSet.getMultiplicities(), before, k);
+				break;
+			case "cnn":
+				kept = reducer.condense(features, labels, kept);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown reduction method: " + method);
+			}
+			report.append(String.format("%s: %d -> %d rows in %.1f s%n", method, before, kept.length,
+					(System.nanoTime() - start) / 1e9));
+		}
+		List<RowData> prototypes = new ArrayList<>(kept.length);
+		for (int row : kept) {
+			prototypes.add(trainingSet.getRows().get(row));
+		}
+		DataLoader.writeTrainFile(output, prototypes);
+		report.append(String.format("Saved %d prototypes to %s%n", kept.length, output));
+		if (testFiles != null) {
+			List<RowData> test = DataLoader.load(testFiles);
+			TrainingSet reduced = new TrainingSet();
+			reduced.addFiles(output);
+			report.append(measure("full", trainingSet, test)).append(measure("reduced", reduced, test));
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Helper method to classify the test rows with the training set and format
+	 * the accuracy and time per query.
+	 *
+	 * @param name the name of the training set
+	 * @param set  the training set
+	 * @param test the test rows
+	 * @return the formatted line
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private String measure(String name, TrainingSet set, List<RowData> test) throws IOException {
+		KNN measured = new KNN();
+		measured.setExtractor(getExtractor());
+		measured.setMetric(getMetric());
+		measured.setVoting(getVoting());
+		set.getFeatures(getExtractor()); // Extraction is not part of query time.
+		long start = System.nanoTime();
+		measured.run(k, set, test);
+		double millis = (System.nanoTime() - start) / 1e6 / Math.max(1, test.size());
+		return String.format("%s: %d rows, accuracy %d%%, %.2f ms/query%n", name, set.size(), measured.getAccuracy(),
+				millis);
+	}
+
+	/**
+	 * Classifies the test files with shard workers instead of the resident
+	 * training set. Results are appended to the result file if it is set.
+	 *
+	 * @param coordinator the coordinator of shards
+	 * @return the report: accuracy and time per query
+	 * @throws Exception throws if a test file is invalid or a shard fails
+	 */
+	public String classifySharded(ShardCoordinator coordinator) throws Exception {
+		int classified = 0;
+		int correct = 0;
+		long start = System.nanoTime();
+		try (ResultSink sink = resultFile != null ? new CsvResultSink(resultFile) : null) {
+			for (File file : DataLoader.listTestFiles(testFiles)) {
+				for (RowData d_img : DataLoader.load(file)) {
+					Classification result = coordinator.classify(d_img, k, getVoting());
+					if (sink != null) {
+						sink.write(result);
+					}
+					classified++;
+					correct += result.isCorrect() ? 1 : 0;
 				}
-			});
-			knnThread.start();
+			}
+		}
+		double millis = (System.nanoTime() - start) / 1e6 / Math.max(1, classified);
+		return String.format("%d shard%s, %d rows: %d images, accuracy %d%%, %.2f ms/query%n",
+				coordinator.getShards(), coordinator.getShards() == 1 ? "" : "s", coordinator.getRows(), classified,
+				classified > 0 ? correct * 100 / classified : 0, millis);
+	}
+
+	/**
+	 * Starts watching the folder: every .png image which arrives there is
+	 * classified against the resident training set, see {@link FolderWatcher}.
+	 * Results are appended to the result file if it is set, otherwise they are
+	 * written to standard output.
+	 *
+	 * @param dir the folder
+	 * @return the running watcher, close it to stop watching
+	 * @throws Exception throws if input file is invalid or the folder cannot be
+	 *                   watched
+	 */
+	public FolderWatcher watch(File dir) throws Exception {
+		syncTrainingSet();
+		ClassificationEngine engine = knn.engine(trainingSet);
+		ResultSink sink = resultFile != null ? new CsvResultSink(resultFile)
+				: new CsvResultSink(new OutputStreamWriter(System.out), true);
+		FolderWatcher watcher;
+		try {
+			watcher = new FolderWatcher(dir, engine, k, sink);
+		} catch (IOException e) {
+			sink.close();
+			throw e;
+		}
+		watcher.start();
+		return watcher;
+	}
+
+	/**
+	 * Gets distances of all pairs of rows of the training set for the current
+	 * feature extractor and distance metric. They are stored in a memory-mapped
+	 * file next to the first source file and reused as long as the training set
+	 * and configuration do not change.
+	 *
+	 * @return the pairwise distances
+	 * @throws Exception throws if input file is invalid or cannot be written
+	 */
+	public PairwiseDistances getPairwiseDistances() throws Exception {
+		syncTrainingSet();
+		long fingerprint = trainingSet.getFingerprint() * 31
+				+ (getExtractor().getId() + "/" + getMetric().name()).hashCode();
+		if (pairwiseDistances != null && pairwiseFingerprint == fingerprint) {
+			return pairwiseDistances;
+		}
+		if (pairwiseDistances != null) {
+			pairwiseDistances.close();
+		}
+		File file = new File(sourceFiles[0].getAbsoluteFile().getParentFile(),
+				String.format("knn-%016x.dist", fingerprint));
+		pairwiseDistances = PairwiseDistances.open(file, trainingSet.size(), fingerprint);
+		if (pairwiseDistances == null) {
+			pairwiseDistances = PairwiseDistances.compute(file, trainingSet.getFeatures(getExtractor()),
+					trainingSet.size(), getMetric(), fingerprint);
+		}
+		pairwiseFingerprint = fingerprint;
+		return pairwiseDistances;
+	}
+
+	/**
+	 * Gets the store of nearest rows of test images for the training set and the
+	 * current feature extractor and distance metric. It is a file next to the
+	 * first source file, reused as long as the training set and configuration do
+	 * not change.
+	 *
+	 * @param firstSource the first source file of the run
+	 * @return the neighbor store, null if it cannot be opened
+	 */
+	private NeighborStore getNeighborStore(File firstSource) {
+		long fingerprint = trainingSet.getFingerprint() * 31
+				+ (getExtractor().getId() + "/" + getMetric().name()).hashCode();
+		if (neighborStore != null && neighborFingerprint == fingerprint) {
+			return neighborStore;
+		}
+		try {
+			if (neighborStore != null) {
+				neighborStore.close();
+				neighborStore = null;
+			}
+			File file = new File(firstSource.getAbsoluteFile().getParentFile(),
+					String.format("knn-%016x.nbr", fingerprint));
+			neighborStore = NeighborStore.open(file, fingerprint);
+			neighborFingerprint = fingerprint;
+		} catch (IOException e) {
+			e.printStackTrace(); // Batches run without stored rows.
+		}
+		return neighborStore;
+	}
+
+	/**
+	 * Helper method to plan the run before the training set is loaded, its size
+	 * is estimated from the source files.
+	 *
+	 * @param source_files the source files of the run
+	 * @param images       the number of training images of the run
+	 * @param testImages   the number of test images
+	 * @return the plan
+	 */
+	private QueryPlan plan(File[] source_files, int images, int testImages) {
+		long rows = images;
+		for (File source : source_files) {
+			rows += DataLoader.countRows(source);
+		}
+		return planner.plan(rows, getExtractor().getDimension(), testImages, k, getMetric(),
+				images == 0 ? source_files.length : 0);
+	}
 
-		} catch (Exception e) {
-			JOptionPane.showMessageDialog(null, "Invalid input file", "Error occurred", 
-					JOptionPane.ERROR_MESSAGE);
-			reset();
+	/**
+	 * Helper method to open the checkpoint of the batch run, next to the first
+	 * source file. A run which was stopped is resumed from it as long as the
+	 * training set, configuration, k and test files do not change.
+	 *
+	 * @param test_files  the test files
+	 * @param firstSource the first source file of the run
+	 * @return the checkpoint, null if it cannot be opened
+	 */
+	private BatchCheckpoint getCheckpoint(List<File> test_files, File firstSource) {
+		long key = BatchCheckpoint.key(trainingSet.getFingerprint(), getExtractor(), getMetric(), getVoting(), k,
+				test_files);
+		File file = new File(firstSource.getAbsoluteFile().getParentFile(),
+				String.format("knn-%016x.ckpt", key));
+		try {
+			return new BatchCheckpoint(file, key);
+		} catch (IOException | RuntimeException e) {
+			e.printStackTrace(); // The batch runs without a checkpoint.
+			return null;
 		}
 	}
 
+	/**
+	 * Helper method to make the resident training set contain the selected source
+	 * files and training images.
+	 *
+	 * @throws Exception throws if input file is invalid
+	 */
+	private void syncTrainingSet() throws Exception {
+		List<File> sources = new ArrayList<>(List.of(sourceFiles));
+		sources.addAll(trainingImages);
+		trainingSet.sync(sources.toArray(new File[0]));
+	}
+
 	/**
 	 * Stops algorithm (user clicks on button 'stop').
 	 */
@@ -185,6 +837,20 @@ public class Model extends Observable implements Observer {
 		started = false;
 		finished = true;
 		knn.setAllowRun(false);
+		metrics.finish();
+		setChanged();
+		notifyObservers();
+	}
+
+	/**
+	 * Ends a failed run without a result, the selected files and options are
+	 * kept so the run can be started again.
+	 */
+	private void abort() {
+		started = false;
+		finished = false;
+		knn.setAllowRun(true);
+		metrics.reset();
 		setChanged();
 		notifyObservers();
 	}
@@ -193,18 +859,43 @@ public class Model extends Observable implements Observer {
 	 * Resets the model to the initial state, clears result.
 	 */
 	public void reset() {
+		awaitTask();
 		started = false;
 		reseted = true;
 		finished = false;
 		knn.setAllowRun(true);
 		sourceFiles = null;
 		testFiles = null;
+		trainingImages.clear();
+		if (!isKeepResident()) {
+			trainingSet.clear(); // Rows of .bin files stay in TrainingSetCache.
+		}
 		k = K_DEFAULT;
 		knn.setProgress(0);
+		metrics.reset();
 		setChanged();
 		notifyObservers();
 	}
 
+	/**
+	 * Helper method to cancel the running task and wait until it ends, so the
+	 * training set is not cleared while it is being loaded. Loading stops after
+	 * the current file, classification after the current chunk of rows.
+	 */
+	private void awaitTask() {
+		if (task == null || task.isDone()) {
+			return;
+		}
+		knn.setAllowRun(false);
+		try {
+			task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		}
+	}
+
 	/**
 	 * Gets the test img filename.
 	 *
@@ -232,6 +923,51 @@ public class Model extends Observable implements Observer {
 		return sourceFiles;
 	}
 
+	/**
+	 * Gets the resident training set.
+	 *
+	 * @return the training set
+	 */
+	public TrainingSet getTrainingSet() {
+		return trainingSet;
+	}
+
+	/**
+	 * Sets the feature extractor used to compare images.
+	 *
+	 * @param extractor the new feature extractor
+	 */
+	public void setExtractor(FeatureExtractor extractor) {
+		knn.setExtractor(extractor);
+	}
+
+	/**
+	 * Gets the feature extractor.
+	 *
+	 * @return the feature extractor
+	 */
+	public FeatureExtractor getExtractor() {
+		return knn.getExtractor();
+	}
+
+	/**
+	 * Sets the distance metric.
+	 *
+	 * @param metric the new distance metric
+	 */
+	public void setMetric(DistanceMetric metric) {
+		knn.setMetric(metric);
+	}
+
+	/**
+	 * Gets the distance metric.
+	 *
+	 * @return the distance metric
+	 */
+	public DistanceMetric getMetric() {
+		return knn.getMetric();
+	}
+
 	/**
 	 * Gets the test files.
 	 *
@@ -251,12 +987,45 @@ public class Model extends Observable implements Observer {
 	}
 
 	/**
-	 * Sets the k.
+	 * Sets the k. A finished batch is voted again with the new k from its stored
+	 * nearest rows, see {@link NeighborStore}.
 	 *
 	 * @param k the new k
 	 */
 	public void setK(int k) {
 		this.k = k;
+		revote();
+	}
+
+	/**
+	 * Helper method to vote the finished batch again with the current k and
+	 * voting strategy, from its stored nearest rows, and notify views.
+	 */
+	private void revote() {
+		if (isRevotable() && knn.revote(k)) {
+			setChanged();
+			notifyObservers();
+		}
+	}
+
+	/**
+	 * Checks if the finished batch can be voted again with another k or voting
+	 * strategy, see {@link Model#setK(int)}.
+	 *
+	 * @return true, if revotable
+	 */
+	public boolean isRevotable() {
+		return finished && !started && !singleTest && knn.canRevote();
+	}
+
+	/**
+	 * Checks if the last batch was resumed from its checkpoint, it cannot be
+	 * voted again then.
+	 *
+	 * @return true, if resumed
+	 */
+	public boolean isResumed() {
+		return knn.isResumed();
 	}
 
 	/**
@@ -277,6 +1046,15 @@ public class Model extends Observable implements Observer {
 		return knn.getProgress();
 	}
 
+	/**
+	 * Gets a snapshot of the live metrics (stage, throughput, ETA).
+	 *
+	 * @return the metrics snapshot
+	 */
+	public MetricsSnapshot getMetrics() {
+		return metrics.snapshot();
+	}
+
 	/**
 	 * Gets the estimated label.
 	 *
@@ -295,6 +1073,35 @@ public class Model extends Observable implements Observer {
 		return knn.getConfidence();
 	}
 
+	/**
+	 * Gets the confidence of every label class.
+	 *
+	 * @return the confidences, indexed by label
+	 */
+	public double[] getConfidences() {
+		return knn.getConfidences();
+	}
+
+	/**
+	 * Sets the voting strategy. A finished batch is voted again like with
+	 * {@link Model#setK(int)}.
+	 *
+	 * @param voting the new voting strategy
+	 */
+	public void setVoting(VotingStrategy voting) {
+		knn.setVoting(voting);
+		revote();
+	}
+
+	/**
+	 * Gets the voting strategy.
+	 *
+	 * @return the voting strategy
+	 */
+	public VotingStrategy getVoting() {
+		return knn.getVoting();
+	}
+
 	/**
 	 * Gets the accuracy.
 	 *
@@ -304,6 +1111,44 @@ public class Model extends Observable implements Observer {
 		return knn.getAccuracy();
 	}
 
+	/**
+	 * Overrides the engine of later runs, see {@link QueryPlanner}.
+	 *
+	 * @param engine      the engine, null to plan automatically
+	 * @param parallelism the number of compute threads or shards, 0 to plan it
+	 *                    automatically
+	 */
+	public void setEngine(QueryEngine engine, int parallelism) {
+		planner.setOverride(engine, parallelism);
+	}
+
+	/**
+	 * Gets the engine chosen by the user.
+	 *
+	 * @return the engine, null if it is planned automatically
+	 */
+	public QueryEngine getEngine() {
+		return planner.getOverride();
+	}
+
+	/**
+	 * Gets the plan of the last run: engine, parallelism and the reason.
+	 *
+	 * @return the plan, null if nothing ran yet
+	 */
+	public QueryPlan getPlan() {
+		return planner.getLastPlan();
+	}
+
+	/**
+	 * Gets the results of every image of the last batch.
+	 *
+	 * @return the results
+	 */
+	public BatchResults getResults() {
+		return knn.getResults();
+	}
+
 	/**
 	 * Updates model. It also notifies all views as well.
 	 *
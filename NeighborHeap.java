@@ -0,0 +1,187 @@
+package model;
+
+/**
+ * Bounded max-heap of the k nearest rows seen so far, stored in primitive
+ * arrays and reused between queries. Rows are ordered by distance and then by
+ * index, so the result equals a stable sort of all rows by distance.
+ */
+public class NeighborHeap {
+
+	/** The distances. */
+	private final double[] distances;
+
+	/** The row indices. */
+	private final int[] indices;
+
+	/** The capacity. */
+	private final int capacity;
+
+	/** The number of rows in the heap. */
+	private int size;
+
+	/**
+	 * Instantiates a new neighbor heap.
+	 *
+	 * @param capacity the capacity (k)
+	 */
+	public NeighborHeap(int capacity) {
+		this.capacity = capacity;
+		distances = new double[capacity];
+		indices = new int[capacity];
+	}
+
+	/**
+	 * Gets the capacity.
+	 *
+	 * @return the capacity (k)
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Removes all rows.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Gets the distance a row must be below to enter the heap. It is the bound for
+	 * early abandon.
+	 *
+	 * @return the bound, infinity until the heap is full
+	 */
+	public double bound() {
+		return size < capacity ? Double.POSITIVE_INFINITY : distances[0];
+	}
+
+	/**
+	 * Offers a row. It enters the heap if it is nearer than the farthest row in
+	 * the full heap (by distance and then by index).
+	 *
+	 * @param distance the distance
+	 * @param index    the row index
+	 * @return true, if the row entered the heap
+	 */
+	public boolean offer(double distance, int index) {
+		if (size < capacity) {
+			int i = size++;
+			while (i > 0) {
+				int parent = (i - 1) >> 1;
+				if (!greater(distance, index, distances[parent], indices[parent])) {
+					break;
+				}
+				distances[i] = distances[parent];
+				indices[i] = indices[parent];
+				i = parent;
+			}
+			distances[i] = distance;
+			indices[i] = index;
+			return true;
+		}
+		if (!greater(distances[0], indices[0], distance, index)) {
+			return false;
+		}
+		siftDown(0, distance, index, size);
+		return true;
+	}
+
+	/**
+	 * Copies rows of this heap to the other heap of the same capacity, e.g. to
+	 * sort and vote the copy while this heap is still offered rows.
+	 *
+	 * @param other the other heap
+	 */
+	public void copyTo(NeighborHeap other) {
+		System.arraycopy(distances, 0, other.distances, 0, size);
+		System.arraycopy(indices, 0, other.indices, 0, size);
+		other.size = size;
+	}
+
+	/**
+	 * Sorts rows in the heap from the nearest to the farthest. The heap must not
+	 * be offered more rows afterwards, until it is cleared.
+	 */
+	public void sort() {
+		for (int end = size - 1; end > 0; end--) {
+			double distance = distances[end];
+			int index = indices[end];
+			distances[end] = distances[0];
+			indices[end] = indices[0];
+			siftDown(0, distance, index, end);
+		}
+	}
+
+	/**
+	 * Gets the number of rows.
+	 *
+	 * @return the size
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the distance of the i-th row.
+	 *
+	 * @param i the position
+	 * @return the distance
+	 */
+	public double getDistance(int i) {
+		return distances[i];
+	}
+
+	/**
+	 * Gets the index of the i-th row.
+	 *
+	 * @param i the position
+	 * @return the row index
+	 */
+	public int getIndex(int i) {
+		return indices[i];
+	}
+
+	/**
+	 * Helper method to move a row down from position i to its place in the heap
+	 * of the given size.
+	 *
+	 * @param i        the position
+	 * @param distance the distance of the row
+	 * @param index    the index of the row
+	 * @param end      the size of the heap
+	 */
+	private void siftDown(int i, double distance, int index, int end) {
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= end) {
+				break;
+			}
+			if (child + 1 < end && greater(distances[child + 1], indices[child + 1], distances[child], indices[child])) {
+				child++;
+			}
+			if (!greater(distances[child], indices[child], distance, index)) {
+				break;
+			}
+			distances[i] = distances[child];
+			indices[i] = indices[child];
+			i = child;
+		}
+		distances[i] = distance;
+		indices[i] = index;
+	}
+
+	/**
+	 * Compares two rows by distance and then by index.
+	 *
+	 * @param d1 the distance of the first row
+	 * @param i1 the index of the first row
+	 * @param d2 the distance of the second row
+	 * @param i2 the index of the second row
+	 * @return true, if the first row is farther
+	 */
+	private static boolean greater(double d1, int i1, double d2, int i2) {
+		return d1 > d2 || (d1 == d2 && i1 > i2);
+	}
+
+}
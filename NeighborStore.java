@@ -0,0 +1,290 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persisted lists of the {@value #NEIGHBORS} nearest training rows of test
+ * images, so a batch can be voted again with another k (up to
+ * {@value #NEIGHBORS}) or voting strategy without computing any distance. The
+ * file belongs to one training set and configuration (the fingerprint) and a
+ * list is keyed by the content hash of the test image; records are read from
+ * a memory mapping of the file.
+ * <p>
+ * File layout: magic, number of neighbors (int) and fingerprint (long), then
+ * records of the hash (long), expected label (int), number of neighbors (int)
+ * and for every neighbor, nearest first, its distance (double), row index,
+ * label and multiplicity (int each).
+ * <p>
+ * The store also remembers the images of the current batch, in the order they
+ * were classified, see {@link NeighborStore#revoteBatch(int, VotingStrategy)}.
+ */
+public class NeighborStore implements AutoCloseable {
+
+	/** The number of stored neighbors, the maximum k of the GUI. */
+	public static final int NEIGHBORS = 10;
+
+	/** The Constant MAGIC at the start of the file. */
+	private static final int MAGIC = 0x4b4e4e4e; // "KNNN"
+
+	/** The Constant HEADER size in bytes. */
+	private static final int HEADER = 16;
+
+	/** The Constant NEIGHBOR size in bytes. */
+	private static final int NEIGHBOR = Double.BYTES + 3 * Integer.BYTES;
+
+	/** The Constant RECORD size in bytes. */
+	private static final int RECORD = Long.BYTES + 2 * Integer.BYTES + NEIGHBORS * NEIGHBOR;
+
+	/** The file channel. */
+	private final FileChannel channel;
+
+	/** The record number of every stored hash. */
+	private final Map<Long, Integer> records = new HashMap<>();
+
+	/** The buffer of one written record. */
+	private final ByteBuffer record = ByteBuffer.allocate(RECORD).order(ByteOrder.nativeOrder());
+
+	/** The mapping of the file, null or too short once records were added. */
+	private MappedByteBuffer mapped;
+
+	/** The hashes of images of the current batch. */
+	private long[] batch = new long[64];
+
+	/** The source files of images of the current batch. */
+	private final List<File> batchSources = new ArrayList<>();
+
+	/**
+	 * Instantiates a new neighbor store over an open file.
+	 *
+	 * @param channel the file channel, positioned after the header
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private NeighborStore(FileChannel channel) throws IOException {
+		this.channel = channel;
+		long count = (channel.size() - HEADER) / RECORD; // A partly written record is overwritten.
+		map();
+		for (int r = 0; r < count; r++) {
+			records.put(mapped.getLong(HEADER + r * RECORD), r);
+		}
+	}
+
+	/**
+	 * Opens the store of the file. The file is (re)created empty if it does not
+	 * exist or was written for another training set or configuration.
+	 *
+	 * @param file        the file
+	 * @param fingerprint the fingerprint of the training set and configuration
+	 * @return the neighbor store
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static NeighborStore open(File file, long fingerprint) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.nativeOrder());
+			channel.read(header, 0);
+			header.flip();
+			if (header.remaining() < HEADER || header.getInt() != MAGIC || header.getInt() != NEIGHBORS
+					|| header.getLong() != fingerprint) {
+				header.clear();
+				header.putInt(MAGIC).putInt(NEIGHBORS).putLong(fingerprint).flip();
+				channel.truncate(0);
+				channel.write(header, 0);
+			}
+			return new NeighborStore(channel);
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Stores the nearest rows of the test image and adds the image to the batch.
+	 * A list stored before for the same hash is replaced.
+	 *
+	 * @param hash           the content hash of the test image
+	 * @param d_img          the test image
+	 * @param heap           the nearest rows, sorted by {@link NeighborHeap#sort()}
+	 * @param labels         the labels of training rows
+	 * @param multiplicities the multiplicities of training rows, null if every
+	 *                       row counts once
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public synchronized void put(long hash, RowData d_img, NeighborHeap heap, int[] labels, int[] multiplicities)
+			throws IOException {
+		int count = Math.min(NEIGHBORS, heap.size());
+		record.clear();
+		record.putLong(hash).putInt(d_img.getLabel()).putInt(count);
+		for (int i = 0; i < count; i++) {
+			int index = heap.getIndex(i);
+			record.putDouble(heap.getDistance(i)).putInt(index).putInt(labels[index])
+					.putInt(multiplicities != null ? multiplicities[index] : 1);
+		}
+		record.position(RECORD).flip();
+		Integer r = records.get(hash);
+		if (r == null) {
+			r = records.size();
+			records.put(hash, r);
+		}
+		channel.write(record, HEADER + (long) r * RECORD);
+		addToBatch(hash, d_img.getSource());
+	}
+
+	/**
+	 * Votes the stored nearest rows of the test image and, if they are stored,
+	 * adds the image to the batch.
+	 *
+	 * @param hash        the content hash of the test image
+	 * @param d_img       the test image
+	 * @param k           the k value, at most {@value #NEIGHBORS}
+	 * @param heap        the heap for stored rows, with capacity at least k
+	 * @param voter       the voter
+	 * @param confidences the output array for the confidence of every class
+	 * @return the estimated label, -1 if the image is not stored
+	 */
+	public synchronized int vote(long hash, RowData d_img, int k, NeighborHeap heap, Voter voter,
+			double[] confidences) {
+		Integer r = records.get(hash);
+		if (r == null) {
+			return -1;
+		}
+		addToBatch(hash, d_img.getSource());
+		return vote(r, k, heap, voter, confidences);
+	}
+
+	/**
+	 * Checks if the nearest rows of the test image are stored.
+	 *
+	 * @param hash the content hash of the test image
+	 * @return true, if stored
+	 */
+	public synchronized boolean contains(long hash) {
+		return records.containsKey(hash);
+	}
+
+	/**
+	 * Starts a new batch.
+	 */
+	public synchronized void startBatch() {
+		batchSources.clear();
+	}
+
+	/**
+	 * Gets the number of images of the current batch.
+	 *
+	 * @return the number of images
+	 */
+	public synchronized int getBatchSize() {
+		return batchSources.size();
+	}
+
+	/**
+	 * Votes all images of the current batch again, from stored rows only.
+	 *
+	 * @param k      the k value, at most {@value #NEIGHBORS}
+	 * @param voting the voting strategy
+	 * @return the results in the order images were classified
+	 */
+	public synchronized List<Classification> revoteBatch(int k, VotingStrategy voting) {
+		NeighborHeap heap = new NeighborHeap(k);
+		Voter voter = new Voter(voting);
+		List<Classification> results = new ArrayList<>(batchSources.size());
+		for (int i = 0; i < batchSources.size(); i++) {
+			int r = records.get(batch[i]);
+			double[] confidences = new double[DataLoader.NUM_LABELS];
+			int label = vote(r, k, heap, voter, confidences);
+			results.add(new Classification(batchSources.get(i), mapped.getInt(HEADER + r * RECORD + Long.BYTES),
+					label, confidences));
+		}
+		return results;
+	}
+
+	/**
+	 * Gets the number of stored images.
+	 *
+	 * @return the number of images
+	 */
+	public synchronized int size() {
+		return records.size();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		channel.close();
+		mapped = null;
+	}
+
+	/**
+	 * Helper method to vote the stored record.
+	 *
+	 * @param r           the record number
+	 * @param k           the k value
+	 * @param heap        the heap for stored rows
+	 * @param voter       the voter
+	 * @param confidences the output array, it may be null
+	 * @return the estimated label
+	 */
+	private int vote(int r, int k, NeighborHeap heap, Voter voter, double[] confidences) {
+		if (k < 1 || k > NEIGHBORS || heap.capacity() < k) {
+			throw new IllegalArgumentException("Invalid k for stored neighbors: " + k);
+		}
+		if (mapped.capacity() < HEADER + (long) (r + 1) * RECORD) {
+			try {
+				map(); // Records were added since the file was mapped.
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		int offset = HEADER + r * RECORD + Long.BYTES + Integer.BYTES;
+		int count = Math.min(k, mapped.getInt(offset));
+		offset += Integer.BYTES;
+		// The heap indexes the local arrays, votes see the stored labels.
+		int[] labels = new int[count];
+		int[] multiplicities = new int[count];
+		heap.clear();
+		for (int i = 0; i < count; i++, offset += NEIGHBOR) {
+			labels[i] = mapped.getInt(offset + Double.BYTES + Integer.BYTES);
+			multiplicities[i] = mapped.getInt(offset + Double.BYTES + 2 * Integer.BYTES);
+			heap.offer(mapped.getDouble(offset), i);
+		}
+		heap.sort();
+		return voter.vote(heap, labels, multiplicities, k, confidences);
+	}
+
+	/**
+	 * Helper method to add the image to the batch.
+	 *
+	 * @param hash   the content hash of the image
+	 * @param source the source file, null if unknown
+	 */
+	private void addToBatch(long hash, File source) {
+		int size = batchSources.size();
+		if (size == batch.length) {
+			batch = Arrays.copyOf(batch, size * 2);
+		}
+		batch[size] = hash;
+		batchSources.add(source);
+	}
+
+	/**
+	 * Helper method to map the whole file.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void map() throws IOException {
+		mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		mapped.order(ByteOrder.nativeOrder());
+	}
+
+}
@@ -8,7 +8,9 @@ import java.util.Observer;
 
 import javax.swing.BorderFactory;
 import javax.swing.Box;
+import javax.swing.DefaultComboBoxModel;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JFileChooser;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -16,7 +18,9 @@ import javax.swing.JSpinner;
 import javax.swing.SpinnerNumberModel;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
+import model.DistanceMetric;
 import model.Model;
+import model.VotingStrategy;
 
 /**
  * The Class OptionsView. Contains buttons, labels, inputs to load the data and
@@ -31,7 +35,12 @@ public class OptionsView extends JPanel implements Observer {
 	private static final int WIDTH = 500;
 
 	/** The Constant HEIGHT. */
-	private static final int HEIGHT = 200;
+	private static final int HEIGHT = 320;
+
+	/**
+	 * Ids of feature extractors offered to the user.
+	 */
+	private static final String[] FEATURES = { "raw", "gray", "hist:4", "hog:8:9" };
 
 	/**
 	 * Open file chooser in the current directory (".").
@@ -48,6 +57,13 @@ public class OptionsView extends JPanel implements Observer {
 	 */
 	private static final FileNameExtensionFilter TEST_FILTER = new FileNameExtensionFilter("PNG files", "png");
 
+	/** The Constant REVOTE_TOOLTIP of the k value and voting strategy. */
+	private static final String REVOTE_TOOLTIP = "Changing K of a finished batch votes it again without computing distances.";
+
+	/** The Constant RESUMED_TOOLTIP, shown once a batch resumed from its checkpoint has finished. */
+	private static final String RESUMED_TOOLTIP = "The batch was resumed from a checkpoint, so K cannot be changed"
+			+ " without classifying it again.";
+
 	/** The label select K. */
 	private JLabel lblSelectK = new JLabel("Select K value");
 
@@ -57,6 +73,24 @@ public class OptionsView extends JPanel implements Observer {
 	/** The label select test. */
 	private JLabel lblSelectTest = new JLabel("Select test (.png) image(s)");
 
+	/** The label select metric. */
+	private JLabel lblSelectMetric = new JLabel("Select distance metric");
+
+	/** The label select voting. */
+	private JLabel lblSelectVoting = new JLabel("Select voting");
+
+	/** The label select features. */
+	private JLabel lblSelectFeatures = new JLabel("Select features");
+
+	/** The input metric. */
+	private JComboBox<DistanceMetric> inputMetric = new JComboBox<>(DistanceMetric.values());
+
+	/** The input voting. */
+	private JComboBox<VotingStrategy> inputVoting = new JComboBox<>(VotingStrategy.values());
+
+	/** The input features. */
+	private JComboBox<String> inputFeatures = new JComboBox<>(FEATURES);
+
 	/** The input K. */
 	private JSpinner inputK = new JSpinner(new SpinnerNumberModel(Model.K_DEFAULT, 1, 10, 1));
 
@@ -84,7 +118,7 @@ public class OptionsView extends JPanel implements Observer {
 	public OptionsView() {
 		setPreferredSize(new Dimension(WIDTH, HEIGHT));
 		setBorder(BorderFactory.createTitledBorder("Options"));
-		setLayout(new GridLayout(4, 3, 10, 25));
+		setLayout(new GridLayout(7, 3, 10, 25));
 		initComponents();
 	}
 
@@ -96,9 +130,20 @@ public class OptionsView extends JPanel implements Observer {
 		btnReset.setEnabled(false); // Reset is enable only after data processing.
 		btnSrc.setToolTipText("Only .bin file(s) is allowed!");
 		btnTest.setToolTipText("Only .png file(s) is allowed! Also you can select folder with only .png files.");
+		inputK.setToolTipText(REVOTE_TOOLTIP);
+		inputVoting.setToolTipText(inputK.getToolTipText().replace("K", "voting"));
 		add(lblSelectK);
 		add(inputK);
 		add(Box.createHorizontalBox());
+		add(lblSelectMetric);
+		add(inputMetric);
+		add(Box.createHorizontalBox());
+		add(lblSelectVoting);
+		add(inputVoting);
+		add(Box.createHorizontalBox());
+		add(lblSelectFeatures);
+		add(inputFeatures);
+		add(Box.createHorizontalBox());
 		add(lblSelectSrc);
 		add(btnSrc);
 		add(lblSrc);
@@ -126,6 +171,24 @@ public class OptionsView extends JPanel implements Observer {
 		return result;
 	}
 
+	/**
+	 * Gets labeled training images, the name of every image starts with its
+	 * label.
+	 *
+	 * @return the training images, null if none was selected
+	 */
+	public File[] getTrainingImages() {
+		File[] result = null;
+		FILE_CHOOSER.setFileSelectionMode(JFileChooser.FILES_ONLY);
+		FILE_CHOOSER.setFileFilter(TEST_FILTER);
+		FILE_CHOOSER.setMultiSelectionEnabled(true);
+		int returnVal = FILE_CHOOSER.showOpenDialog(this);
+		if (returnVal == JFileChooser.APPROVE_OPTION) {
+			result = FILE_CHOOSER.getSelectedFiles();
+		}
+		return result;
+	}
+
 	/**
 	 * Gets the test files.
 	 *
@@ -152,6 +215,33 @@ public class OptionsView extends JPanel implements Observer {
 		return inputK;
 	}
 
+	/**
+	 * Gets the input metric.
+	 *
+	 * @return the input metric
+	 */
+	public JComboBox<DistanceMetric> getInputMetric() {
+		return inputMetric;
+	}
+
+	/**
+	 * Gets the input voting.
+	 *
+	 * @return the input voting
+	 */
+	public JComboBox<VotingStrategy> getInputVoting() {
+		return inputVoting;
+	}
+
+	/**
+	 * Gets the input features.
+	 *
+	 * @return the input features
+	 */
+	public JComboBox<String> getInputFeatures() {
+		return inputFeatures;
+	}
+
 	/**
 	 * Gets the button source.
 	 *
@@ -220,13 +310,26 @@ public class OptionsView extends JPanel implements Observer {
 		btnSrc.setEnabled(!model.isFinished() && !model.isStarted());
 		btnStart.setEnabled(!model.isStarted());
 		btnTest.setEnabled(!model.isFinished() && !model.isStarted());
-		inputK.setEnabled(!model.isFinished() && !model.isStarted());
+		// A finished batch is voted again with another k or voting strategy.
+		inputK.setEnabled(!model.isFinished() && !model.isStarted() || model.isRevotable());
+		inputVoting.setEnabled(!model.isFinished() && !model.isStarted() || model.isRevotable());
+		inputK.setToolTipText(model.isFinished() && model.isResumed() ? RESUMED_TOOLTIP : REVOTE_TOOLTIP);
+		inputVoting.setToolTipText(inputK.getToolTipText().replace("K", "voting"));
+		inputMetric.setEnabled(!model.isFinished() && !model.isStarted());
+		inputFeatures.setEnabled(!model.isFinished() && !model.isStarted());
 		btnReset.setEnabled(model.isFinished());
 		lblSrc.setText(model.getSourceFilesText());
 		lblTest.setText(model.getTestFilesText());
 		btnStart.setEnabled(!model.isFinished() && !model.isStarted() && !lblSrc.getText().isEmpty()
 				&& !lblTest.getText().isEmpty());
 		inputK.setValue(model.getK());
+		inputMetric.setSelectedItem(model.getMetric());
+		inputVoting.setSelectedItem(model.getVoting());
+		String features = model.getExtractor().getId();
+		if (((DefaultComboBoxModel<String>) inputFeatures.getModel()).getIndexOf(features) < 0) {
+			inputFeatures.addItem(features); // Configuration given on the command line.
+		}
+		inputFeatures.setSelectedItem(features);
 	}
 
 	/**
@@ -0,0 +1,242 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+
+/**
+ * Symmetric matrix of distances between all pairs of training rows. Only the
+ * upper triangle (i &lt; j) is stored, as floats in a memory-mapped file, so
+ * the matrix is never on the Java heap and it is persisted for later runs. A
+ * distance is then read in O(1) by {@link PairwiseDistances#get(int, int)}.
+ * <p>
+ * Floats take half the file of doubles, but keep a relative precision of
+ * about 1e-7 of the distance only: distances which differ by less than that
+ * become equal or swap their order. For example, squared L2 distances of the
+ * raw extractor (packed 0xRRGGBB pixels) go up to about 1024 * (2^24)^2 =
+ * 2.9e17, where neighboring floats are about 3e10 apart. So nearest rows of a
+ * near tie, and an evaluation from this matrix, may differ slightly from one
+ * which computes distances directly.
+ * <p>
+ * The file is mapped in segments of {@value PairwiseDistances#SEGMENT} bytes,
+ * because one mapping cannot exceed 2 GB (50,000 rows take 5 GB). The header is
+ * written last, so a file whose computation did not finish is never opened.
+ */
+public class PairwiseDistances implements AutoCloseable {
+
+	/** The Constant MAGIC at the start of the file. */
+	private static final int MAGIC = 0x4b4e4e44; // "KNND"
+
+	/** The Constant HEADER size in bytes. */
+	private static final int HEADER = 64;
+
+	/** The Constant SEGMENT size in bytes (a multiple of float size). */
+	private static final long SEGMENT = 1L << 30;
+
+	/** The number of rows. */
+	private final int rows;
+
+	/** The mapped segments. */
+	private final MappedByteBuffer[] segments;
+
+	/** The file channel. */
+	private final FileChannel channel;
+
+	/**
+	 * Instantiates a new pairwise distances over a mapped file.
+	 *
+	 * @param rows     the number of rows
+	 * @param channel  the file channel
+	 * @param segments the mapped segments
+	 */
+	private PairwiseDistances(int rows, FileChannel channel, MappedByteBuffer[] segments) {
+		this.rows = rows;
+		this.channel = channel;
+		this.segments = segments;
+	}
+
+	/**
+	 * Computes distances of all pairs of rows in parallel and writes them to the
+	 * file. Rows are processed in pairs (i, n - 1 - i), so every task has the same
+	 * amount of work.
+	 *
+	 * @param file        the file
+	 * @param features    the feature vectors of rows
+	 * @param rows        the number of rows
+	 * @param metric      the distance metric, it must be symmetric
+	 * @param fingerprint the fingerprint of the training set and configuration
+	 * @return the pairwise distances
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static PairwiseDistances compute(File file, FeatureMatrix features, int rows, DistanceMetric metric,
+			long fingerprint) throws IOException {
+		long size = HEADER + count(rows) * Float.BYTES;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(0);
+			raf.setLength(size);
+		}
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			PairwiseDistances result = new PairwiseDistances(rows, channel,
+					map(channel, size, FileChannel.MapMode.READ_WRITE));
+			float[] data = features.getData();
+			int dimension = features.getDimension();
+			IntStream.range(0, (rows + 1) / 2).parallel().forEach(p -> {
+				float[] query = new float[dimension];
+				result.computeRow(p, features, data, query, dimension, metric);
+				if (rows - 1 - p != p) {
+					result.computeRow(rows - 1 - p, features, data, query, dimension, metric);
+				}
+			});
+			MappedByteBuffer header = result.segments[0];
+			header.putInt(4, rows);
+			header.putLong(8, fingerprint);
+			for (MappedByteBuffer segment : result.segments) {
+				segment.force();
+			}
+			header.putInt(0, MAGIC); // Marks the file as complete.
+			header.force();
+			return result;
+		} catch (IOException | RuntimeException | Error e) {
+			channel.close();
+			file.delete(); // Incomplete, it would never be opened.
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens distances computed earlier.
+	 *
+	 * @param file        the file
+	 * @param rows        the expected number of rows
+	 * @param fingerprint the expected fingerprint
+	 * @return the pairwise distances, null if the file does not exist or does not
+	 *         match
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static PairwiseDistances open(File file, int rows, long fingerprint) throws IOException {
+		long size = HEADER + count(rows) * Float.BYTES;
+		if (!file.isFile() || file.length() != size) {
+			return null;
+		}
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		MappedByteBuffer[] segments;
+		try {
+			segments = map(channel, size, FileChannel.MapMode.READ_ONLY);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		if (segments[0].getInt(0) != MAGIC || segments[0].getInt(4) != rows
+				|| segments[0].getLong(8) != fingerprint) {
+			channel.close();
+			return null;
+		}
+		return new PairwiseDistances(rows, channel, segments);
+	}
+
+	/**
+	 * Gets the distance between two rows.
+	 *
+	 * @param i the first row
+	 * @param j the second row
+	 * @return the distance, 0 if i equals j
+	 */
+	public float get(int i, int j) {
+		if (i == j) {
+			return 0;
+		}
+		long position = position(Math.min(i, j), Math.max(i, j));
+		return segments[(int) (position / SEGMENT)].getFloat((int) (position % SEGMENT));
+	}
+
+	/**
+	 * Gets the number of rows.
+	 *
+	 * @return the number of rows
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Closes the file. Mapped memory is released when segments are garbage
+	 * collected.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Helper method to compute distances of row i to all rows j &gt; i.
+	 *
+	 * @param i         the row
+	 * @param features  the feature vectors
+	 * @param data      the data of feature vectors
+	 * @param query     the buffer for the vector of row i
+	 * @param dimension the dimension
+	 * @param metric    the metric
+	 */
+	private void computeRow(int i, FeatureMatrix features, float[] data, float[] query, int dimension,
+			DistanceMetric metric) {
+		System.arraycopy(data, features.offset(i), query, 0, dimension);
+		double norm = features.getNorm(i);
+		for (int j = i + 1; j < rows; j++) {
+			long position = position(i, j);
+			float distance = (float) metric.distance(query, norm, data, features.offset(j), features.getNorm(j),
+					dimension, Double.POSITIVE_INFINITY);
+			// Absolute puts do not touch the buffer position, rows write disjoint ranges.
+			segments[(int) (position / SEGMENT)].putFloat((int) (position % SEGMENT), distance);
+		}
+	}
+
+	/**
+	 * Helper method to get the byte position of the pair i &lt; j in the file.
+	 *
+	 * @param i the first row
+	 * @param j the second row
+	 * @return the position
+	 */
+	private long position(int i, int j) {
+		long index = (long) i * rows - (long) i * (i + 1) / 2 + (j - i - 1);
+		return HEADER + index * Float.BYTES;
+	}
+
+	/**
+	 * Gets the number of pairs of rows.
+	 *
+	 * @param rows the number of rows
+	 * @return the number of pairs
+	 */
+	private static long count(int rows) {
+		return (long) rows * (rows - 1) / 2;
+	}
+
+	/**
+	 * Helper method to map the file in segments.
+	 *
+	 * @param channel the channel
+	 * @param size    the size of the file
+	 * @param mode    the map mode
+	 * @return the segments
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static MappedByteBuffer[] map(FileChannel channel, long size, FileChannel.MapMode mode)
+			throws IOException {
+		MappedByteBuffer[] result = new MappedByteBuffer[(int) ((size + SEGMENT - 1) / SEGMENT)];
+		for (int i = 0; i < result.length; i++) {
+			long start = i * SEGMENT;
+			result[i] = channel.map(mode, start, Math.min(SEGMENT, size - start));
+			result[i].order(ByteOrder.LITTLE_ENDIAN);
+		}
+		return result;
+	}
+
+}
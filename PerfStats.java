@@ -0,0 +1,326 @@
+package model;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide timers and counters of loading and classification phases. The
+ * single instance is registered as MBean {@value PerfStats#OBJECT_NAME}, so the
+ * values can be watched in JConsole or VisualVM. Counters are {@link LongAdder}
+ * and the phases are recorded once per file or once per query (never per
+ * distance), so the overhead is negligible.
+ */
+public class PerfStats implements PerfStatsMBean {
+
+	/** The Constant OBJECT_NAME of the registered MBean. */
+	public static final String OBJECT_NAME = "model:type=PerfStats";
+
+	/** Number of latency histogram buckets (the last one is 2^31 us, ~36 min). */
+	private static final int BUCKETS = 32;
+
+	/** Seconds of the sliding window of {@link #getImagesPerSecond()}. */
+	private static final int WINDOW = 10;
+
+	/** The single instance. */
+	private static final PerfStats INSTANCE = new PerfStats();
+
+	static {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/** The bin files loaded. */
+	private final LongAdder binFiles = new LongAdder();
+
+	/** The bin load nanos. */
+	private final LongAdder binLoadNanos = new LongAdder();
+
+	/** The bytes loaded. */
+	private final LongAdder bytes = new LongAdder();
+
+	/** The png images decoded. */
+	private final LongAdder pngImages = new LongAdder();
+
+	/** The png decode nanos. */
+	private final LongAdder pngDecodeNanos = new LongAdder();
+
+	/** The distance nanos. */
+	private final LongAdder distanceNanos = new LongAdder();
+
+	/** The top-k nanos. */
+	private final LongAdder topKNanos = new LongAdder();
+
+	/** The vote nanos. */
+	private final LongAdder voteNanos = new LongAdder();
+
+	/** The queries. */
+	private final LongAdder queries = new LongAdder();
+
+	/** The rows scanned. */
+	private final LongAdder rowsScanned = new LongAdder();
+
+	/** The query latency histogram, see {@link #getQueryLatencyHistogram()}. */
+	private final AtomicLongArray latency = new AtomicLongArray(BUCKETS);
+
+	/** The images classified by the folder watcher. */
+	private final LongAdder watchedImages = new LongAdder();
+
+	/** The nanos from arrival to result of watched images. */
+	private final LongAdder watchLatencyNanos = new LongAdder();
+
+	/** The current backlog of the folder watcher. */
+	private volatile int watchBacklog;
+
+	/** The queries of the last seconds, indexed by second modulo the window. */
+	private final AtomicLongArray windowQueries = new AtomicLongArray(WINDOW);
+
+	/** The second counted by every slot of the window. */
+	private final AtomicLongArray windowSeconds = new AtomicLongArray(WINDOW);
+
+	/** The time of the first query since the last reset or idle window, 0 if none. */
+	private volatile long firstQuery;
+
+	/** The time of the last query. */
+	private volatile long lastQuery;
+
+	/**
+	 * Instantiates the single instance.
+	 */
+	private PerfStats() {
+	}
+
+	/**
+	 * Gets the single instance.
+	 *
+	 * @return the perf stats
+	 */
+	public static PerfStats get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Records a loaded .bin file.
+	 *
+	 * @param nanos time spent reading and decoding
+	 * @param size  size of the file in bytes
+	 */
+	public void recordBinLoad(long nanos, long size) {
+		binFiles.increment();
+		binLoadNanos.add(nanos);
+		bytes.add(size);
+	}
+
+	/**
+	 * Records a decoded .png image.
+	 *
+	 * @param nanos time spent decoding
+	 * @param size  size of the file in bytes
+	 */
+	public void recordPngDecode(long nanos, long size) {
+		pngImages.increment();
+		pngDecodeNanos.add(nanos);
+		bytes.add(size);
+	}
+
+	/**
+	 * Records a classified test image.
+	 *
+	 * @param distance time spent computing distances
+	 * @param topK     time spent selecting the k nearest rows
+	 * @param vote     time spent voting
+	 * @param rows     number of scanned training rows
+	 */
+	public void recordQuery(long distance, long topK, long vote, long rows) {
+		distanceNanos.add(distance);
+		topKNanos.add(topK);
+		voteNanos.add(vote);
+		rowsScanned.add(rows);
+		queries.increment();
+		long micros = (distance + topK + vote) / 1000;
+		int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+		latency.incrementAndGet(bucket);
+		long now = System.nanoTime();
+		if (firstQuery == 0 || now - lastQuery > WINDOW * 1_000_000_000L) {
+			firstQuery = now;
+		}
+		lastQuery = now;
+		long second = now / 1_000_000_000;
+		int slot = (int) Math.floorMod(second, (long) WINDOW);
+		long counted = windowSeconds.get(slot);
+		if (counted != second && windowSeconds.compareAndSet(slot, counted, second)) {
+			windowQueries.set(slot, 0); // The slot starts counting a new second.
+		}
+		windowQueries.incrementAndGet(slot);
+	}
+
+	/**
+	 * Records an image classified by the folder watcher.
+	 *
+	 * @param nanos time from the arrival of the image to its result
+	 */
+	public void recordWatchedImage(long nanos) {
+		watchedImages.increment();
+		watchLatencyNanos.add(nanos);
+	}
+
+	/**
+	 * Sets the backlog of the folder watcher.
+	 *
+	 * @param backlog the number of images waiting for classification
+	 */
+	public void setWatchBacklog(int backlog) {
+		watchBacklog = backlog;
+	}
+
+	@Override
+	public long getBinFilesLoaded() {
+		return binFiles.sum();
+	}
+
+	@Override
+	public long getBinLoadMillis() {
+		return binLoadNanos.sum() / 1_000_000;
+	}
+
+	@Override
+	public long getBytesLoaded() {
+		return bytes.sum();
+	}
+
+	@Override
+	public long getPngImagesDecoded() {
+		return pngImages.sum();
+	}
+
+	@Override
+	public long getPngDecodeMillis() {
+		return pngDecodeNanos.sum() / 1_000_000;
+	}
+
+	@Override
+	public long getDistanceMillis() {
+		return distanceNanos.sum() / 1_000_000;
+	}
+
+	@Override
+	public long getTopKMillis() {
+		return topKNanos.sum() / 1_000_000;
+	}
+
+	@Override
+	public long getVoteMillis() {
+		return voteNanos.sum() / 1_000_000;
+	}
+
+	@Override
+	public long getQueries() {
+		return queries.sum();
+	}
+
+	@Override
+	public long getRowsScanned() {
+		return rowsScanned.sum();
+	}
+
+	@Override
+	public double getImagesPerSecond() {
+		long first = firstQuery;
+		if (first == 0) {
+			return 0;
+		}
+		long now = System.nanoTime();
+		long second = now / 1_000_000_000;
+		long count = 0;
+		for (int i = 0; i < WINDOW; i++) {
+			if (windowSeconds.get(i) > second - WINDOW) {
+				count += windowQueries.get(i);
+			}
+		}
+		long elapsed = now - Math.max(first, (second - WINDOW + 1) * 1_000_000_000);
+		return elapsed > 0 ? count * 1e9 / elapsed : 0;
+	}
+
+	@Override
+	public double getQueryLatencyP50Millis() {
+		return percentile(0.5);
+	}
+
+	@Override
+	public double getQueryLatencyP99Millis() {
+		return percentile(0.99);
+	}
+
+	@Override
+	public long[] getQueryLatencyHistogram() {
+		long[] result = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			result[i] = latency.get(i);
+		}
+		return result;
+	}
+
+	@Override
+	public long getWatchedImages() {
+		return watchedImages.sum();
+	}
+
+	@Override
+	public double getWatchLatencyMillis() {
+		long images = watchedImages.sum();
+		return images > 0 ? watchLatencyNanos.sum() / 1e6 / images : 0;
+	}
+
+	@Override
+	public int getWatchBacklog() {
+		return watchBacklog;
+	}
+
+	@Override
+	public void reset() {
+		for (LongAdder adder : new LongAdder[] { binFiles, binLoadNanos, bytes, pngImages, pngDecodeNanos,
+				distanceNanos, topKNanos, voteNanos, queries, rowsScanned, watchedImages, watchLatencyNanos }) {
+			adder.reset();
+		}
+		for (int i = 0; i < BUCKETS; i++) {
+			latency.set(i, 0);
+		}
+		for (int i = 0; i < WINDOW; i++) {
+			windowQueries.set(i, 0);
+			windowSeconds.set(i, 0);
+		}
+		firstQuery = 0;
+		lastQuery = 0;
+	}
+
+	/**
+	 * Helper method to estimate a latency percentile from the histogram. It
+	 * returns the upper bound of the bucket where the percentile falls.
+	 *
+	 * @param fraction percentile as a fraction (0.5 for median)
+	 * @return the latency in milliseconds
+	 */
+	private double percentile(double fraction) {
+		long[] histogram = getQueryLatencyHistogram();
+		long total = 0;
+		for (long count : histogram) {
+			total += count;
+		}
+		long rank = (long) Math.ceil(total * fraction);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += histogram[i];
+			if (seen >= rank && seen > 0) {
+				return (1L << i) / 1000.0;
+			}
+		}
+		return 0;
+	}
+
+}
@@ -0,0 +1,138 @@
+package model;
+
+/**
+ * Management interface of {@link PerfStats}. All times are cumulative since the
+ * start of the application (or the last {@link PerfStatsMBean#reset()}).
+ */
+public interface PerfStatsMBean {
+
+	/**
+	 * Gets the number of loaded .bin files.
+	 *
+	 * @return the number of .bin files
+	 */
+	long getBinFilesLoaded();
+
+	/**
+	 * Gets the time spent reading and decoding .bin files.
+	 *
+	 * @return the time in milliseconds
+	 */
+	long getBinLoadMillis();
+
+	/**
+	 * Gets the number of bytes read from .bin and .png files.
+	 *
+	 * @return the number of bytes
+	 */
+	long getBytesLoaded();
+
+	/**
+	 * Gets the number of decoded .png images.
+	 *
+	 * @return the number of images
+	 */
+	long getPngImagesDecoded();
+
+	/**
+	 * Gets the time spent decoding .png images.
+	 *
+	 * @return the time in milliseconds
+	 */
+	long getPngDecodeMillis();
+
+	/**
+	 * Gets the time spent computing distances.
+	 *
+	 * @return the time in milliseconds
+	 */
+	long getDistanceMillis();
+
+	/**
+	 * Gets the time spent selecting the k nearest rows.
+	 *
+	 * @return the time in milliseconds
+	 */
+	long getTopKMillis();
+
+	/**
+	 * Gets the time spent voting.
+	 *
+	 * @return the time in milliseconds
+	 */
+	long getVoteMillis();
+
+	/**
+	 * Gets the number of classified test images.
+	 *
+	 * @return the number of queries
+	 */
+	long getQueries();
+
+	/**
+	 * Gets the number of training rows scanned by all queries.
+	 *
+	 * @return the number of rows
+	 */
+	long getRowsScanned();
+
+	/**
+	 * Gets the classified test images per second over the last 10 seconds (or
+	 * since the first query, if later). It drops to 0 when nothing is
+	 * classified.
+	 *
+	 * @return the images per second
+	 */
+	double getImagesPerSecond();
+
+	/**
+	 * Gets the median query latency.
+	 *
+	 * @return the latency in milliseconds
+	 */
+	double getQueryLatencyP50Millis();
+
+	/**
+	 * Gets the 99th percentile of query latency.
+	 *
+	 * @return the latency in milliseconds
+	 */
+	double getQueryLatencyP99Millis();
+
+	/**
+	 * Gets the query latency histogram. Element i counts queries which took less
+	 * than 2^i microseconds (and at least 2^(i-1)).
+	 *
+	 * @return the histogram
+	 */
+	long[] getQueryLatencyHistogram();
+
+	/**
+	 * Gets the number of images classified by the folder watcher.
+	 *
+	 * @return the number of images
+	 */
+	long getWatchedImages();
+
+	/**
+	 * Gets the mean time from the arrival of an image in the watched folder to
+	 * its result.
+	 *
+	 * @return the latency in milliseconds
+	 */
+	double getWatchLatencyMillis();
+
+	/**
+	 * Gets the number of images which arrived in the watched folder and are not
+	 * classified yet.
+	 *
+	 * @return the backlog depth
+	 */
+	int getWatchBacklog();
+
+	/**
+	 * Resets all counters.
+	 */
+	void reset();
+
+}
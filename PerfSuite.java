@@ -0,0 +1,280 @@
+package perf;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import model.ClassificationPipeline;
+import model.DataLoader;
+import model.FeatureCache;
+import model.FeatureMatrix;
+import model.KNN;
+import model.QueryContext;
+import model.RowData;
+import model.TrainingSet;
+import model.TrainingSetCache;
+
+/**
+ * End-to-end performance regression suite. It generates a fixed data set with
+ * {@link DatasetGenerator}, runs the scenarios below and compares the results
+ * with a baseline file; it exits with status 1 if a throughput dropped or the
+ * latency or allocation rose by more than the tolerance. Scenarios:
+ * <ul>
+ * <li>load: parsing of the .bin files and features (extracted once, then read
+ * from the feature cache), rows per second,</li>
+ * <li>single: latency of one image in milliseconds and bytes allocated per
+ * image,</li>
+ * <li>batch: test files classified per second by {@link ClassificationPipeline}
+ * with 1, 2 and 4 compute threads.</li>
+ * </ul>
+ * Run it with ant perf, options:
+ * <ul>
+ * <li>--baseline=FILE the baseline (default perf-baseline.properties),</li>
+ * <li>--data=DIR directory of the generated data (default build/perf-data),</li>
+ * <li>--update writes the results as the new baseline instead of comparing.</li>
+ * </ul>
+ * Baselines depend on the machine, so record them with --update on the machine
+ * which runs the suite.
+ */
+public class PerfSuite {
+
+	/** The number of training rows of the generated data. */
+	private static final int ROWS = 10_000;
+
+	/** The number of generated test images. */
+	private static final int TEST_IMAGES = 100;
+
+	/** The k value of all scenarios. */
+	private static final int K = 5;
+
+	/** The compute threads of batch scenarios. */
+	private static final int[] THREADS = { 1, 2, 4 };
+
+	/** The number of measured repetitions, the median is reported. */
+	private static final int REPEATS = 7;
+
+	/** The default tolerance of time metrics, as a fraction of the baseline. */
+	private static final double TIME_TOLERANCE = 0.30;
+
+	/** The default tolerance of allocation metrics. */
+	private static final double ALLOCATION_TOLERANCE = 0.20;
+
+	/** The metrics of the last run, by name. */
+	private final Map<String, Double> results = new LinkedHashMap<>();
+
+	/** The training files. */
+	private final File[] trainFiles;
+
+	/** The directory of test files. */
+	private final File testDir;
+
+	/** The test files. */
+	private final List<File> testFiles;
+
+	/**
+	 * Instantiates a new perf suite, generating data into the directory unless
+	 * it was generated before.
+	 *
+	 * @param data the data directory
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public PerfSuite(File data) throws IOException {
+		testDir = new File(data, "test");
+		File first = new File(data, "data_batch_1.bin");
+		if (!first.isFile() || DataLoader.listTestFiles(testDir).size() != TEST_IMAGES) {
+			if (!testDir.isDirectory() && !testDir.mkdirs()) {
+				throw new IOException("Cannot create " + testDir);
+			}
+			double[] weights = new double[DataLoader.NUM_LABELS];
+			Arrays.fill(weights, 1);
+			DatasetGenerator generator = new DatasetGenerator(1, weights, 3, 40);
+			generator.writeTrainFiles(data, ROWS, ROWS / 2);
+			generator.writeTestFiles(testDir, TEST_IMAGES);
+		}
+		trainFiles = new File[] { first, new File(data, "data_batch_2.bin") };
+		testFiles = DataLoader.listTestFiles(testDir);
+	}
+
+	/**
+	 * Runs all scenarios.
+	 *
+	 * @return the metrics by name
+	 * @throws Exception throws if data cannot be read
+	 */
+	public Map<String, Double> run() throws Exception {
+		TrainingSet trainingSet = null;
+		double[] load = new double[REPEATS];
+		for (int r = -1; r < REPEATS; r++) { // The first run warms up.
+			TrainingSetCache.get().clear();
+			trainingSet = new TrainingSet();
+			KNN knn = new KNN();
+			long start = System.nanoTime();
+			trainingSet.addFiles(trainFiles);
+			trainingSet.getFeatures(knn.getExtractor());
+			if (r >= 0) {
+				load[r] = trainingSet.size() / seconds(start);
+			}
+		}
+		results.put("load.rowsPerSecond", median(load));
+
+		KNN knn = new KNN();
+		FeatureMatrix features = trainingSet.getFeatures(knn.getExtractor());
+		int[] labels = trainingSet.getLabels();
+		int[] multiplicities = trainingSet.getMultiplicities();
+		List<RowData> images = DataLoader.load(testDir);
+		QueryContext context = new QueryContext(features.getDimension(), K, knn.getVoting());
+		for (RowData image : images) { // Warm-up.
+			knn.classify(image, features, labels, multiplicities, context);
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		double[] latency = new double[REPEATS * images.size()];
+		long allocated = threads.getCurrentThreadAllocatedBytes();
+		for (int i = 0; i < latency.length; i++) {
+			long start = System.nanoTime();
+			knn.classify(images.get(i % images.size()), features, labels, multiplicities, context);
+			latency[i] = seconds(start) * 1000;
+		}
+		allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+		results.put("single.latencyMillis", median(latency));
+		results.put("single.allocatedBytesPerImage", (double) allocated / latency.length);
+
+		for (int count : THREADS) {
+			ClassificationPipeline pipeline = new ClassificationPipeline(knn, K, count);
+			double[] throughput = new double[REPEATS];
+			for (int r = -1; r < REPEATS; r++) {
+				int[] classified = new int[1];
+				long start = System.nanoTime();
+				pipeline.run(testFiles, features, labels, multiplicities, result -> classified[0]++);
+				if (r >= 0) {
+					throughput[r] = classified[0] / seconds(start);
+				}
+			}
+			results.put("batch.threads" + count + ".imagesPerSecond", median(throughput));
+		}
+		return results;
+	}
+
+	/**
+	 * Compares the results with the baseline. Metrics named ...PerSecond are
+	 * throughputs, higher is better; other metrics are costs, lower is better.
+	 * The tolerance of a metric is its name followed by .tolerance, otherwise the
+	 * default of its kind.
+	 *
+	 * @param baseline the baseline
+	 * @return the regressions, empty if there is none
+	 */
+	public List<String> compare(Properties baseline) {
+		List<String> regressions = new ArrayList<>();
+		for (Map.Entry<String, Double> entry : results.entrySet()) {
+			String name = entry.getKey();
+			String expected = baseline.getProperty(name);
+			if (expected == null) {
+				System.out.printf("%-36s %14.1f %14s%n", name, entry.getValue(), "no baseline");
+				continue;
+			}
+			double base = Double.parseDouble(expected);
+			double tolerance = Double.parseDouble(baseline.getProperty(name + ".tolerance",
+					String.valueOf(name.contains("allocated") ? ALLOCATION_TOLERANCE : TIME_TOLERANCE)));
+			double change = (entry.getValue() - base) / base;
+			boolean throughput = name.endsWith("PerSecond");
+			boolean regressed = throughput ? change < -tolerance : change > tolerance;
+			System.out.printf("%-36s %14.1f %14.1f %+7.1f%% %s%n", name, entry.getValue(), base, change * 100,
+					regressed ? "REGRESSION" : "ok");
+			if (regressed) {
+				regressions.add(String.format("%s: %.1f vs baseline %.1f (tolerance %.0f%%)", name,
+						entry.getValue(), base, tolerance * 100));
+			}
+		}
+		return regressions;
+	}
+
+	/**
+	 * Helper method to get seconds since the start.
+	 *
+	 * @param start the start, from {@link System#nanoTime()}
+	 * @return the seconds
+	 */
+	private static double seconds(long start) {
+		return (System.nanoTime() - start) / 1e9;
+	}
+
+	/**
+	 * Helper method to get the median.
+	 *
+	 * @param values the values, they are sorted
+	 * @return the median
+	 */
+	private static double median(double[] values) {
+		Arrays.sort(values);
+		return values[values.length / 2];
+	}
+
+	/**
+	 * The main method.
+	 *
+	 * @param args the options, see {@link PerfSuite}
+	 * @throws Exception throws if an option is invalid or data cannot be read
+	 */
+	public static void main(String[] args) throws Exception {
+		File baselineFile = new File("perf-baseline.properties");
+		File data = new File("build", "perf-data");
+		boolean update = false;
+		for (String arg : args) {
+			if (arg.startsWith("--baseline=")) {
+				baselineFile = new File(arg.substring(11));
+			} else if (arg.startsWith("--data=")) {
+				data = new File(arg.substring(7));
+			} else if (arg.equals("--update")) {
+				update = true;
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			}
+		}
+		// Keeps features of the generated data out of the user's feature cache.
+		System.setProperty(FeatureCache.DIR_PROPERTY, new File(data, "features").getAbsolutePath());
+		PerfSuite suite = new PerfSuite(data);
+		Map<String, Double> results = suite.run();
+		Properties baseline = new Properties();
+		if (baselineFile.isFile()) {
+			try (InputStream in = new FileInputStream(baselineFile)) {
+				baseline.load(in);
+			}
+		}
+		if (update) {
+			try (PrintWriter out = new PrintWriter(baselineFile, StandardCharsets.ISO_8859_1)) {
+				out.println("# Baseline of perf.PerfSuite, record it with ant perf -Dperf.args=--update.");
+				out.println("# NAME.tolerance overrides the allowed change of a metric (fraction).");
+				for (Map.Entry<String, Double> entry : results.entrySet()) {
+					out.printf(Locale.ROOT, "%s=%.1f%n", entry.getKey(), entry.getValue());
+					String tolerance = baseline.getProperty(entry.getKey() + ".tolerance");
+					if (tolerance != null) { // Kept from the previous baseline.
+						out.println(entry.getKey() + ".tolerance=" + tolerance);
+					}
+				}
+			}
+			results.forEach((name, value) -> System.out.printf("%-36s %14.1f%n", name, value));
+			System.out.println("Baseline written to " + baselineFile);
+			return;
+		}
+		System.out.printf("%-36s %14s %14s %8s%n", "metric", "current", "baseline", "change");
+		List<String> regressions = suite.compare(baseline);
+		if (!regressions.isEmpty()) {
+			System.out.println("Performance regressions:");
+			regressions.forEach(regression -> System.out.println("  " + regression));
+			System.exit(1);
+		}
+	}
+
+}
@@ -0,0 +1,19 @@
+package model;
+
+/**
+ * Receives progress of one call of {@link ClassificationEngine}. It is called
+ * by the classifying threads, possibly by many at once.
+ */
+@FunctionalInterface
+public interface ProgressListener {
+
+	/**
+	 * Reports progress.
+	 *
+	 * @param done  the units done so far: training rows scanned for one image,
+	 *              images classified for many images
+	 * @param total the total number of units
+	 */
+	void progress(long done, long total);
+
+}
@@ -6,7 +6,9 @@ import java.util.Observer;
 
 import javax.swing.*;
 
+import model.MetricsSnapshot;
 import model.Model;
+import model.Stage;
 
 /**
  * The Class ProgressView. It contains gui components to stop/reset and progress
@@ -18,11 +20,26 @@ public class ProgressView extends JPanel implements Observer {
 	private final static int WIDTH = 500;
 
 	/** The Constant HEIGHT. */
-	private final static int HEIGHT = 100;
+	private final static int HEIGHT = 130;
+
+	/** The Constant SAMPLE_MILLIS, how often metrics are sampled while running. */
+	private final static int SAMPLE_MILLIS = 250;
 
 	/** The progress bar. */
 	private JProgressBar progressBar = new JProgressBar(1, 100);
 
+	/** The label with the current stage. */
+	private JLabel lblStage = new JLabel(" ");
+
+	/** The label with throughput, elapsed time and ETA. */
+	private JLabel lblMetrics = new JLabel(" ");
+
+	/** The timer which samples metrics of the model while it is running. */
+	private Timer timer = new Timer(SAMPLE_MILLIS, e -> refresh());
+
+	/** The model, it is known after the first update. */
+	private Model model;
+
 	/** The button stop. */
 	private JButton btnStop = new JButton("STOP");
 
@@ -48,7 +65,11 @@ public class ProgressView extends JPanel implements Observer {
 		progressBar.setPreferredSize(new Dimension((int) (WIDTH * 0.9), (int) (HEIGHT * 0.4)));
 		progressBar.setStringPainted(true);
 		btnStop.setEnabled(false);
+		lblStage.setPreferredSize(new Dimension((int) (WIDTH * 0.2), 20));
+		lblMetrics.setPreferredSize(new Dimension((int) (WIDTH * 0.7), 20));
 		add(progressBar);
+		add(lblStage);
+		add(lblMetrics);
 		add(btnStop);
 	}
 
@@ -60,9 +81,76 @@ public class ProgressView extends JPanel implements Observer {
 	 */
 	@Override
 	public void update(Observable o, Object arg) {
-		Model model = (Model) o;
-		progressBar.setValue(model.getProgress());
+		model = (Model) o;
 		btnStop.setEnabled(model.isStarted());
+		if (model.isStarted()) {
+			timer.start();
+		} else {
+			timer.stop();
+		}
+		refresh();
+	}
+
+	/**
+	 * Samples metrics of the model and displays the stage, images/sec, rows/sec,
+	 * elapsed time and ETA. During loading the progress bar shows progress of the
+	 * loading, otherwise progress of the classification.
+	 */
+	private void refresh() {
+		if (model == null) {
+			return;
+		}
+		MetricsSnapshot snapshot = model.getMetrics();
+		Stage stage = snapshot.getStage();
+		if (stage == Stage.LOADING || stage == Stage.INDEXING) {
+			progressBar.setIndeterminate(snapshot.getStageProgress() < 0);
+			progressBar.setValue(Math.max(0, snapshot.getStageProgress()));
+		} else {
+			progressBar.setIndeterminate(false);
+			progressBar.setValue(model.getProgress());
+		}
+		lblStage.setText(stage.toString());
+		lblStage.setToolTipText(model.getPlan() != null ? "Engine: " + model.getPlan() : null);
+		lblMetrics.setToolTipText(model.getDedupReport());
+		if (stage == Stage.IDLE) {
+			lblMetrics.setText(" ");
+			return;
+		}
+		String text = String.format("%.1f img/s, %s rows/s, elapsed %s", snapshot.getImagesPerSecond(),
+				compact(snapshot.getRowsPerSecond()), time(snapshot.getElapsedNanos()));
+		if (snapshot.getEtaNanos() >= 0) {
+			text += ", ETA " + time(snapshot.getEtaNanos());
+		}
+		lblMetrics.setText(text);
+	}
+
+	/**
+	 * Formats nanoseconds as mm:ss (or h:mm:ss).
+	 *
+	 * @param nanos the nanoseconds
+	 * @return the formatted time
+	 */
+	private static String time(long nanos) {
+		long seconds = nanos / 1_000_000_000L;
+		if (seconds >= 3600) {
+			return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+		}
+		return String.format("%02d:%02d", seconds / 60, seconds % 60);
+	}
+
+	/**
+	 * Formats a large number with k/M suffix.
+	 *
+	 * @param value the value
+	 * @return the formatted value
+	 */
+	private static String compact(double value) {
+		if (value >= 1e6) {
+			return String.format("%.1fM", value / 1e6);
+		} else if (value >= 1e3) {
+			return String.format("%.1fk", value / 1e3);
+		}
+		return String.format("%.0f", value);
 	}
 
 	/**
@@ -0,0 +1,163 @@
+package model;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Offline reduction of the training set to a smaller set of prototypes which
+ * classifies (almost) the same way:
+ * <ul>
+ * <li>Wilson editing removes every row which is misclassified by its k nearest
+ * other rows, i.e. noise and overlapping class borders,</li>
+ * <li>Hart's condensed nearest neighbor keeps only rows needed to classify all
+ * other rows correctly with 1-NN, i.e. rows near class borders.</li>
+ * </ul>
+ * Editing first and condensing the edited rows gives the smallest set. Inner
+ * nearest neighbor searches run in parallel.
+ */
+public class PrototypeReducer {
+
+	/** Rows of one parallel batch of the condensing, per core. */
+	private static final int BATCH_PER_CORE = 64;
+
+	/** The distance metric. */
+	private final DistanceMetric metric;
+
+	/** The voting strategy of the editing. */
+	private final VotingStrategy voting;
+
+	/**
+	 * Instantiates a new prototype reducer.
+	 *
+	 * @param metric the distance metric, it must be symmetric
+	 * @param voting the voting strategy of the editing
+	 */
+	public PrototypeReducer(DistanceMetric metric, VotingStrategy voting) {
+		this.metric = metric;
+		this.voting = voting;
+	}
+
+	/**
+	 * Runs Wilson editing: keeps rows whose label equals the label voted by their
+	 * k nearest other rows. Rows vote with their multiplicities, the other copies
+	 * of a row are its nearest rows.
+	 *
+	 * @param features       the feature vectors of rows
+	 * @param labels         the labels of rows
+	 * @param multiplicities the multiplicities of rows, null if every row counts
+	 *                       once
+	 * @param rows           the number of rows
+	 * @param k              the number of voting neighbors
+	 * @return the indexes of kept rows, ascending
+	 */
+	public int[] edit(FeatureMatrix features, int[] labels, int[] multiplicities, int rows, int k) {
+		int[] predicted = new CrossValidator(metric, voting, k).predictLeaveOneOut(features, labels,
+				multiplicities, rows);
+		return IntStream.range(0, rows).filter(i -> predicted[i] == labels[i]).toArray();
+	}
+
+	/**
+	 * Runs Hart's condensed nearest neighbor on the candidate rows. The store
+	 * starts with the first candidate of every label; candidates misclassified by
+	 * their nearest stored row are added, in passes until a pass adds nothing.
+	 * <p>
+	 * Candidates are processed in batches: their nearest stored rows are searched
+	 * in parallel, then every candidate of the batch is checked in order against
+	 * the rows stored since the batch started. The result is the same as of the
+	 * sequential algorithm. Multiplicities of rows do not change 1-NN, so they are
+	 * not needed.
+	 *
+	 * @param features   the feature vectors of rows
+	 * @param labels     the labels of rows
+	 * @param candidates the indexes of candidate rows
+	 * @return the indexes of stored rows, ascending
+	 */
+	public int[] condense(FeatureMatrix features, int[] labels, int[] candidates) {
+		int[] store = new int[Math.max(1, candidates.length)];
+		int size = 0;
+		boolean[] stored = new boolean[features.getRows()];
+		boolean[] seen = new boolean[DataLoader.NUM_LABELS];
+		for (int candidate : candidates) {
+			if (!seen[labels[candidate]]) {
+				seen[labels[candidate]] = true;
+				stored[candidate] = true;
+				store[size++] = candidate;
+			}
+		}
+		int batch = BATCH_PER_CORE * Runtime.getRuntime().availableProcessors();
+		int[] nearest = new int[batch];
+		double[] nearestDistance = new double[batch];
+		ThreadLocal<float[]> queries = ThreadLocal.withInitial(() -> new float[features.getDimension()]);
+		boolean added = true;
+		while (added) {
+			added = false;
+			for (int from = 0; from < candidates.length; from += batch) {
+				int to = Math.min(candidates.length, from + batch);
+				int before = size;
+				int[] snapshot = store;
+				int start = from;
+				IntStream.range(from, to).parallel().forEach(c -> {
+					if (!stored[candidates[c]]) {
+						nearest(features, candidates[c], snapshot, 0, before, queries.get(), nearest,
+								nearestDistance, c - start);
+					}
+				});
+				for (int c = from; c < to; c++) {
+					int row = candidates[c];
+					if (stored[row]) {
+						continue;
+					}
+					if (size > before) { // Rows stored since the batch started.
+						nearest(features, row, store, before, size, queries.get(), nearest, nearestDistance,
+								c - start);
+					}
+					if (labels[nearest[c - start]] != labels[row]) {
+						stored[row] = true;
+						store[size++] = row;
+						added = true;
+					}
+				}
+			}
+		}
+		int[] result = Arrays.copyOf(store, size);
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * Helper method to find the nearest of the stored rows and keep it in the
+	 * output arrays if it is nearer than the row already there (or if the range
+	 * starts at 0).
+	 *
+	 * @param features the feature vectors of rows
+	 * @param row      the query row
+	 * @param store    the stored rows
+	 * @param from     the first searched element of the store
+	 * @param to       the end (exclusive) of searched elements
+	 * @param query    the buffer for the query vector
+	 * @param nearest  the output nearest rows
+	 * @param distance the output distances of nearest rows
+	 * @param slot     the index to the output arrays
+	 */
+	private void nearest(FeatureMatrix features, int row, int[] store, int from, int to, float[] query,
+			int[] nearest, double[] distance, int slot) {
+		float[] data = features.getData();
+		int dimension = features.getDimension();
+		System.arraycopy(data, features.offset(row), query, 0, dimension);
+		double norm = features.getNorm(row);
+		int best = from == 0 ? -1 : nearest[slot];
+		double bound = from == 0 ? Double.POSITIVE_INFINITY : distance[slot];
+		for (int s = from; s < to; s++) {
+			int other = store[s];
+			double d = metric.distance(query, norm, data, features.offset(other), features.getNorm(other),
+					dimension, bound);
+			if (d < bound) {
+				bound = d;
+				best = other;
+			}
+		}
+		nearest[slot] = best;
+		distance[slot] = bound;
+	}
+
+}
@@ -0,0 +1,126 @@
+package model;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Scratch buffers of one thread which classifies test images: the feature
+ * vector of the query, the neighbor heaps, the voter and the order of chunks
+ * scanned by anytime classification. They are reused for
+ * every query of the thread, so the scan does not allocate.
+ */
+public class QueryContext {
+
+	/** The feature vector of the query. */
+	private final float[] features;
+
+	/** The neighbor heap. */
+	private final NeighborHeap heap;
+
+	/** The copy of the neighbor heap voted by provisional answers. */
+	private final NeighborHeap scratch;
+
+	/** The voter. */
+	private final Voter voter;
+
+	/** The number of nearest rows which vote. */
+	private final int k;
+
+	/** The random order of chunks of rows scanned by anytime classification. */
+	private int[] chunkOrder = new int[0];
+
+	/**
+	 * Instantiates a new query context.
+	 *
+	 * @param dimension the dimension of feature vectors
+	 * @param k         the k value
+	 * @param voting    the voting strategy
+	 */
+	public QueryContext(int dimension, int k, VotingStrategy voting) {
+		this(dimension, k, k, voting);
+	}
+
+	/**
+	 * Instantiates a new query context which keeps more nearest rows than vote,
+	 * e.g. to store them in {@link NeighborStore}.
+	 *
+	 * @param dimension the dimension of feature vectors
+	 * @param k         the k value
+	 * @param capacity  the number of kept nearest rows, at least k
+	 * @param voting    the voting strategy
+	 */
+	public QueryContext(int dimension, int k, int capacity, VotingStrategy voting) {
+		features = new float[dimension];
+		heap = new NeighborHeap(Math.max(k, capacity));
+		scratch = new NeighborHeap(Math.max(k, capacity));
+		voter = new Voter(voting);
+		this.k = k;
+	}
+
+	/**
+	 * Gets the feature vector of the query.
+	 *
+	 * @return the features
+	 */
+	public float[] getFeatures() {
+		return features;
+	}
+
+	/**
+	 * Gets the neighbor heap.
+	 *
+	 * @return the heap
+	 */
+	public NeighborHeap getHeap() {
+		return heap;
+	}
+
+	/**
+	 * Gets the copy of the neighbor heap for provisional answers.
+	 *
+	 * @return the scratch heap
+	 */
+	public NeighborHeap getScratch() {
+		return scratch;
+	}
+
+	/**
+	 * Gets the k value.
+	 *
+	 * @return the number of nearest rows which vote
+	 */
+	public int getK() {
+		return k;
+	}
+
+	/**
+	 * Gets the voter.
+	 *
+	 * @return the voter
+	 */
+	public Voter getVoter() {
+		return voter;
+	}
+
+	/**
+	 * Gets a random (but repeatable) order of chunks of rows. It is built once
+	 * per number of chunks and kept for later queries of the thread.
+	 *
+	 * @param chunks the number of chunks
+	 * @return the chunk indexes in random order
+	 */
+	public int[] getChunkOrder(int chunks) {
+		if (chunkOrder.length != chunks) {
+			chunkOrder = IntStream.range(0, chunks).toArray();
+			Random random = new Random(chunks);
+			for (int i = chunks - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				int swap = chunkOrder[i];
+				chunkOrder[i] = chunkOrder[j];
+				chunkOrder[j] = swap;
+			}
+		}
+		return chunkOrder;
+	}
+
+}
@@ -0,0 +1,58 @@
+package model;
+
+/**
+ * Engines which classify a batch of test images, see {@link QueryPlanner}.
+ */
+public enum QueryEngine {
+
+	/** One compute thread scans the resident training set for every image. */
+	SEQUENTIAL("Sequential"),
+
+	/** Compute threads of {@link ClassificationPipeline} classify images at once. */
+	PARALLEL("Parallel"),
+
+	/**
+	 * Local {@link ShardWorker} processes, every one with a slice of the source
+	 * files, so the training set does not have to fit into this process.
+	 */
+	SHARDED("Sharded");
+
+	/** The text displayed to the user. */
+	private final String text;
+
+	/**
+	 * Instantiates a new query engine.
+	 *
+	 * @param text the text displayed to the user
+	 */
+	QueryEngine(String text) {
+		this.text = text;
+	}
+
+	/**
+	 * Parses the engine from its name (case insensitive): sequential, parallel
+	 * or shards.
+	 *
+	 * @param name the name
+	 * @return the query engine
+	 * @throws IllegalArgumentException throws if name is unknown
+	 */
+	public static QueryEngine parse(String name) {
+		switch (name.trim().toLowerCase()) {
+		case "sequential":
+			return SEQUENTIAL;
+		case "parallel":
+			return PARALLEL;
+		case "shards":
+			return SHARDED;
+		default:
+			throw new IllegalArgumentException("Unknown engine: " + name);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return text;
+	}
+
+}
@@ -0,0 +1,35 @@
+package model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for classification of one test image. The duration of
+ * the event is the query latency.
+ */
+@Name("model.Query")
+@Label("Query")
+@Category({ "Image Classification" })
+@Description("Classification of one test image")
+public class QueryEvent extends Event {
+
+	/** The number of scanned training rows. */
+	@Label("Rows Scanned")
+	int rowsScanned;
+
+	/** The number of training rows rejected by the distance of the k-th nearest row. */
+	@Label("Rows Pruned")
+	int rowsPruned;
+
+	/** The expected label. */
+	@Label("Expected Label")
+	int expectedLabel;
+
+	/** The estimated label. */
+	@Label("Estimated Label")
+	int estimatedLabel;
+
+}
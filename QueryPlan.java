@@ -0,0 +1,81 @@
+package model;
+
+/**
+ * Decision of {@link QueryPlanner}: the engine and parallelism of a batch and
+ * the reason they were chosen.
+ */
+public class QueryPlan {
+
+	/** The engine. */
+	private final QueryEngine engine;
+
+	/** The number of compute threads or shards. */
+	private final int parallelism;
+
+	/** The estimated time of distance computations in milliseconds. */
+	private final double estimatedMillis;
+
+	/** The reason of the decision. */
+	private final String reason;
+
+	/**
+	 * Instantiates a new query plan.
+	 *
+	 * @param engine          the engine
+	 * @param parallelism     the number of compute threads or shards
+	 * @param estimatedMillis the estimated time of distance computations
+	 * @param reason          the reason of the decision
+	 */
+	public QueryPlan(QueryEngine engine, int parallelism, double estimatedMillis, String reason) {
+		this.engine = engine;
+		this.parallelism = parallelism;
+		this.estimatedMillis = estimatedMillis;
+		this.reason = reason;
+	}
+
+	/**
+	 * Gets the engine.
+	 *
+	 * @return the engine
+	 */
+	public QueryEngine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * Gets the number of compute threads ({@link QueryEngine#SEQUENTIAL} and
+	 * {@link QueryEngine#PARALLEL}) or shards ({@link QueryEngine#SHARDED}).
+	 *
+	 * @return the parallelism
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Gets the estimated time of distance computations on one core.
+	 *
+	 * @return the time in milliseconds
+	 */
+	public double getEstimatedMillis() {
+		return estimatedMillis;
+	}
+
+	/**
+	 * Gets the reason of the decision.
+	 *
+	 * @return the reason
+	 */
+	public String getReason() {
+		return reason;
+	}
+
+	/**
+	 * Returns the decision, e.g. "Parallel x4: ...".
+	 */
+	@Override
+	public String toString() {
+		return engine + " x" + parallelism + ": " + reason;
+	}
+
+}
@@ -0,0 +1,42 @@
+package model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one decision of {@link QueryPlanner}.
+ */
+@Name("model.QueryPlan")
+@Label("Query Plan")
+@Category({ "Image Classification" })
+@Description("Engine and parallelism chosen for a batch of test images")
+public class QueryPlanEvent extends Event {
+
+	/** The chosen engine. */
+	@Label("Engine")
+	String engine;
+
+	/** The number of compute threads or shards. */
+	@Label("Parallelism")
+	int parallelism;
+
+	/** The number of training rows. */
+	@Label("Training Rows")
+	long trainingRows;
+
+	/** The number of test images. */
+	@Label("Test Images")
+	int testImages;
+
+	/** The estimated time of distance computations on one core. */
+	@Label("Estimated Millis")
+	double estimatedMillis;
+
+	/** The reason of the decision. */
+	@Label("Reason")
+	String reason;
+
+}
@@ -0,0 +1,257 @@
+package model;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Chooses the engine and parallelism of a batch of test images from the size
+ * of the training set, the number of test images, k, the cores and the heap of
+ * this process:
+ * <ul>
+ * <li>a single test image is scanned by one thread (the anytime scan, if on,
+ * works on one thread too),</li>
+ * <li>if the decoded training set and its features would take more than
+ * {@value #MEMORY_FRACTION} of the maximum heap, the source files are split
+ * across local shard workers,</li>
+ * <li>if the estimated distance computations take less than
+ * {@value #PARALLEL_MILLIS} ms, or there is one core, one compute thread
+ * classifies the batch: starting threads would cost more than they save,</li>
+ * <li>otherwise one compute thread per core (at most one per image).</li>
+ * </ul>
+ * The time per scanned row is measured by a short calibration on random
+ * vectors the first time a metric, dimension and k are planned. Random rows
+ * are hardly abandoned early, so estimates are upper bounds. The user can
+ * override the engine and parallelism; every decision is kept with its reason
+ * and committed as a {@link QueryPlanEvent}.
+ */
+public class QueryPlanner {
+
+	/** The fraction of the maximum heap the resident training set may use. */
+	public static final double MEMORY_FRACTION = 0.5;
+
+	/** The estimated time of distance computations below which one thread is used. */
+	public static final long PARALLEL_MILLIS = 100;
+
+	/** The Constant SHARDED_LIMITS, what a sharded run goes without. */
+	private static final String SHARDED_LIMITS = "; shards keep no checkpoint and no nearest rows, so the batch"
+			+ " cannot be resumed or voted again";
+
+	/** The approximate size of the decoded image of a row, int[32][32]. */
+	private static final int IMAGE_BYTES = 32 * (16 + 32 * Integer.BYTES) + 16;
+
+	/** The number of random rows of the calibration. */
+	private static final int CALIBRATION_ROWS = 256;
+
+	/** The duration of the warm-up and of the measurement in milliseconds. */
+	private static final long CALIBRATION_MILLIS = 20;
+
+	/** The number of cores. */
+	private final int cores;
+
+	/** The maximum heap in bytes. */
+	private final long maxMemory;
+
+	/** The calibrated nanoseconds per scanned row, by metric, dimension and k. */
+	private final Map<String, Double> nanosPerRow = new HashMap<>();
+
+	/** The engine chosen by the user, null to plan automatically. */
+	private QueryEngine override;
+
+	/** The parallelism chosen by the user, 0 to plan it automatically. */
+	private int overrideParallelism;
+
+	/** The last plan, null if nothing was planned yet. */
+	private volatile QueryPlan lastPlan;
+
+	/**
+	 * Instantiates a new query planner for the cores and heap of this process.
+	 */
+	public QueryPlanner() {
+		this(Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().maxMemory());
+	}
+
+	/**
+	 * Instantiates a new query planner.
+	 *
+	 * @param cores     the number of cores
+	 * @param maxMemory the maximum heap in bytes
+	 */
+	public QueryPlanner(int cores, long maxMemory) {
+		this.cores = Math.max(1, cores);
+		this.maxMemory = maxMemory;
+	}
+
+	/**
+	 * Plans a batch.
+	 *
+	 * @param trainingRows the number of training rows
+	 * @param dimension    the number of features per row
+	 * @param testImages   the number of test images
+	 * @param k            the k value
+	 * @param metric       the distance metric
+	 * @param maxShards    the maximum number of shards, i.e. source files, 0 if
+	 *                     the training set cannot be split (e.g. training images
+	 *                     were added)
+	 * @return the plan
+	 */
+	public synchronized QueryPlan plan(long trainingRows, int dimension, int testImages, int k,
+			DistanceMetric metric, int maxShards) {
+		double nanos = calibrate(metric, dimension, k);
+		double millis = nanos * trainingRows * testImages / 1e6;
+		long residentBytes = trainingRows * (IMAGE_BYTES + (long) dimension * Float.BYTES + Double.BYTES);
+		String estimate = String.format(Locale.ROOT, "%d images x %d rows at %.1f ns/row = %s on one core",
+				testImages, trainingRows, nanos, duration(millis));
+		QueryPlan plan;
+		if (override != null) {
+			plan = overridden(millis, maxShards, estimate);
+		} else if (testImages <= 1) {
+			plan = new QueryPlan(QueryEngine.SEQUENTIAL, 1, millis, "one test image is scanned by one thread");
+		} else if (residentBytes > MEMORY_FRACTION * maxMemory && maxShards > 1) {
+			// Every worker gets the maximum heap of this process, see ShardCoordinator#launchLocal.
+			int shards = (int) Math.min(maxShards,
+					Math.max(2, Math.ceil(residentBytes / (MEMORY_FRACTION * maxMemory))));
+			plan = new QueryPlan(QueryEngine.SHARDED, shards, millis, String.format(Locale.ROOT,
+					"the training set needs %d MB, more than %.0f%% of the %d MB heap", residentBytes >> 20,
+					MEMORY_FRACTION * 100, maxMemory >> 20) + SHARDED_LIMITS);
+		} else if (cores == 1 || millis < PARALLEL_MILLIS) {
+			plan = new QueryPlan(QueryEngine.SEQUENTIAL, 1, millis,
+					cores == 1 ? "one core, " + estimate : estimate + ", threads would not pay off");
+		} else {
+			plan = new QueryPlan(QueryEngine.PARALLEL, Math.min(cores, testImages), millis,
+					estimate + ", spread over " + cores + " cores");
+		}
+		lastPlan = plan;
+		QueryPlanEvent event = new QueryPlanEvent();
+		if (event.shouldCommit()) {
+			event.engine = plan.getEngine().name();
+			event.parallelism = plan.getParallelism();
+			event.trainingRows = trainingRows;
+			event.testImages = testImages;
+			event.estimatedMillis = millis;
+			event.reason = plan.getReason();
+			event.commit();
+		}
+		return plan;
+	}
+
+	/**
+	 * Measures the time of scanning one training row with the metric and k, on
+	 * random vectors. The result is cached, later calls return at once.
+	 *
+	 * @param metric    the distance metric
+	 * @param dimension the number of features per row
+	 * @param k         the k value
+	 * @return the nanoseconds per scanned row
+	 */
+	public synchronized double calibrate(DistanceMetric metric, int dimension, int k) {
+		String key = metric.name() + "/" + dimension + "/" + k;
+		Double cached = nanosPerRow.get(key);
+		if (cached != null) {
+			return cached;
+		}
+		Random random = new Random(dimension);
+		FeatureMatrix features = new FeatureMatrix(dimension, CALIBRATION_ROWS);
+		float[] data = features.getData();
+		for (int i = 0; i < CALIBRATION_ROWS * dimension; i++) {
+			data[i] = random.nextInt(256);
+		}
+		features.commit(CALIBRATION_ROWS);
+		float[] query = new float[dimension];
+		for (int i = 0; i < dimension; i++) {
+			query[i] = random.nextInt(256);
+		}
+		double norm = FeatureMatrix.squaredNorm(query, 0, dimension);
+		NeighborHeap heap = new NeighborHeap(Math.max(1, k));
+		double result = 0;
+		for (int pass = 0; pass < 2; pass++) { // The first pass warms up the compiler.
+			long rows = 0;
+			long start = System.nanoTime();
+			long elapsed;
+			do {
+				heap.clear();
+				ClassificationEngine.scan(query, norm, features, metric, heap, 0, CALIBRATION_ROWS);
+				rows += CALIBRATION_ROWS;
+				elapsed = System.nanoTime() - start;
+			} while (elapsed < CALIBRATION_MILLIS * 1_000_000);
+			result = (double) elapsed / rows;
+		}
+		nanosPerRow.put(key, result);
+		return result;
+	}
+
+	/**
+	 * Overrides the engine and parallelism of later plans.
+	 *
+	 * @param engine      the engine, null to plan automatically
+	 * @param parallelism the number of compute threads or shards, 0 to plan it
+	 *                    automatically
+	 */
+	public synchronized void setOverride(QueryEngine engine, int parallelism) {
+		this.override = engine;
+		this.overrideParallelism = Math.max(0, parallelism);
+	}
+
+	/**
+	 * Gets the engine chosen by the user.
+	 *
+	 * @return the engine, null if it is planned automatically
+	 */
+	public synchronized QueryEngine getOverride() {
+		return override;
+	}
+
+	/**
+	 * Gets the last plan.
+	 *
+	 * @return the last plan, null if nothing was planned yet
+	 */
+	public QueryPlan getLastPlan() {
+		return lastPlan;
+	}
+
+	/**
+	 * Helper method to plan the engine chosen by the user. Sharding falls back to
+	 * parallel threads if the training set cannot be split.
+	 *
+	 * @param millis    the estimated time of distance computations
+	 * @param maxShards the maximum number of shards
+	 * @param estimate  the text of the estimate
+	 * @return the plan
+	 */
+	private QueryPlan overridden(double millis, int maxShards, String estimate) {
+		int parallelism = overrideParallelism;
+		switch (override) {
+		case SEQUENTIAL:
+			return new QueryPlan(QueryEngine.SEQUENTIAL, 1, millis, "set by the user, " + estimate);
+		case SHARDED:
+			if (maxShards > 1) {
+				int shards = Math.min(maxShards, parallelism > 0 ? parallelism : Math.max(2, cores));
+				String capped = parallelism > maxShards
+						? String.format(Locale.ROOT, " (%d shards, one per source file, not %d)", shards, parallelism)
+						: "";
+				return new QueryPlan(QueryEngine.SHARDED, shards, millis,
+						"set by the user" + capped + ", " + estimate + SHARDED_LIMITS);
+			}
+			return new QueryPlan(QueryEngine.PARALLEL, parallelism > 0 ? parallelism : cores, millis,
+					"shards were set by the user, but the training set cannot be split (one source file or added"
+							+ " training images)");
+		default:
+			return new QueryPlan(QueryEngine.PARALLEL, parallelism > 0 ? parallelism : cores, millis,
+					"set by the user, " + estimate);
+		}
+	}
+
+	/**
+	 * Helper method to format a duration.
+	 *
+	 * @param millis the duration in milliseconds
+	 * @return the formatted duration, e.g. 12 ms or 3.4 s
+	 */
+	private static String duration(double millis) {
+		return millis < 1000 ? String.format(Locale.ROOT, "%.0f ms", millis)
+				: String.format(Locale.ROOT, "%.1f s", millis / 1000);
+	}
+
+}
@@ -0,0 +1,37 @@
+package model;
+
+/**
+ * Uses packed RGB values of pixels as features, exactly what KNN compared
+ * before features were introduced. Values fit into float mantissa, so they are
+ * exact.
+ */
+public class RawPixelExtractor implements FeatureExtractor {
+
+	@Override
+	public String getId() {
+		return "raw";
+	}
+
+	@Override
+	public int getDimension() {
+		return DataLoader.IMG_SIZE * DataLoader.IMG_SIZE;
+	}
+
+	@Override
+	public void extract(int[][] image, float[] out, int offset) {
+		for (int i = 0; i < DataLoader.IMG_SIZE; i++) {
+			for (int j = 0; j < DataLoader.IMG_SIZE; j++) {
+				out[offset++] = image[i][j];
+			}
+		}
+	}
+
+	/**
+	 * Raw pixels are cheaper to convert than to read from disk.
+	 */
+	@Override
+	public boolean isCached() {
+		return false;
+	}
+
+}
@@ -0,0 +1,31 @@
+package model;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * Destination of classification results, written by the result stage of
+ * {@link ClassificationPipeline} or by {@link FolderWatcher}. It is called
+ * from a single thread.
+ */
+public interface ResultSink extends Closeable, Flushable {
+
+	/**
+	 * Writes the result.
+	 *
+	 * @param result the result
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	void write(Classification result) throws IOException;
+
+	/**
+	 * Flushes written results, the folder watcher calls it after every batch.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	default void flush() throws IOException {
+	}
+
+}
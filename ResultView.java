@@ -27,7 +27,7 @@ public class ResultView extends JPanel implements Observer {
 	private final static int WIDTH = 500;
 
 	/** The Constant HEIGHT. */
-	private final static int HEIGHT = 100;
+	private final static int HEIGHT = 120;
 
 	/** The label correct. */
 	private JLabel lblCorrect = new JLabel();
@@ -41,6 +41,12 @@ public class ResultView extends JPanel implements Observer {
 	/** The label confidence. */
 	private JLabel lblConfidence = new JLabel();
 
+	/** The button to scan all rows after a provisional answer. */
+	private JButton btnExact = new JButton("Exact answer");
+
+	/** The button to browse results of every image of a batch. */
+	private JButton btnBrowse = new JButton("Browse results");
+
 	/** The gui. */
 	private GUI gui;
 
@@ -68,6 +74,8 @@ public class ResultView extends JPanel implements Observer {
 		add(lblConfidence);
 		add(lblTestImg);
 		add(lblAccuracy);
+		add(btnExact);
+		add(btnBrowse);
 	}
 
 	/**
@@ -79,18 +87,59 @@ public class ResultView extends JPanel implements Observer {
 	@Override
 	public void update(Observable o, Object arg) {
 		Model model = (Model) o;
-		setVisible(model.isFinished());
-		if (model.isFinished() || model.isReseted()) {
+		boolean live = model.isStarted() && model.isProvisional(); // Anytime answer firming up.
+		setVisible(model.isFinished() || live);
+		if (model.isFinished() || model.isReseted() || live) {
 			lblCorrect.setVisible(model.isSingleTest());
 			lblConfidence.setVisible(model.isSingleTest());
 			lblTestImg.setVisible(model.isSingleTest());
 			lblAccuracy.setVisible(!model.isSingleTest());
-			lblCorrect.setText("Correct label: " + model.getEstimatedLabel());
+			btnExact.setVisible(model.isSingleTest() && model.isFinished() && model.isProvisional());
+			btnBrowse.setVisible(!model.isSingleTest() && model.isFinished());
+			lblCorrect.setText("Correct label: " + model.getEstimatedLabel() + (model.isProvisional()
+					? String.format(" (provisional, %.0f%% stable)", model.getStability() * 100) : ""));
 			lblConfidence.setText("Confidence: " + String.format("%.1f", model.getConfidence()));
+			lblConfidence.setToolTipText(confidences(model.getConfidences()));
 			lblTestImg.setIcon(new ImageIcon(model.getTestImgFilename()));
 			lblAccuracy.setText("Accuracy for K = " + model.getK() + " is " + model.getAccuracy() + "%");
 			gui.pack();
 		}
 	}
 
+	/**
+	 * Gets the button exact.
+	 *
+	 * @return the button exact
+	 */
+	public JButton getBtnExact() {
+		return btnExact;
+	}
+
+	/**
+	 * Gets the button browse.
+	 *
+	 * @return the button browse
+	 */
+	public JButton getBtnBrowse() {
+		return btnBrowse;
+	}
+
+	/**
+	 * Formats confidence of every label class, e.g. "0: 0.6, 3: 0.4", classes
+	 * without votes are omitted.
+	 *
+	 * @param confidences the confidences indexed by label
+	 * @return the formatted text
+	 */
+	private static String confidences(double[] confidences) {
+		StringBuilder result = new StringBuilder();
+		for (int label = 0; label < confidences.length; label++) {
+			if (confidences[label] > 0) {
+				result.append(result.length() > 0 ? ", " : "").append(label).append(": ")
+						.append(String.format("%.2f", confidences[label]));
+			}
+		}
+		return result.toString();
+	}
+
 }
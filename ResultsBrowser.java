@@ -0,0 +1,224 @@
+package view;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.io.File;
+import java.util.Observable;
+import java.util.Observer;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+
+import model.BatchResults;
+import model.DataLoader;
+import model.Model;
+
+/**
+ * The Class ResultsBrowser. A dialog with the result of every image of a batch
+ * run and the confusion matrix. The table is virtual: it reads results of the
+ * visible rows only and their thumbnails are decoded lazily, see
+ * {@link ThumbnailCache}, so it stays responsive with hundreds of thousands of
+ * results. Results can be filtered to misclassified images and to one expected
+ * class.
+ */
+public class ResultsBrowser extends JDialog implements Observer {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
+	/** The Constant WIDTH. */
+	private final static int WIDTH = 640;
+
+	/** The Constant HEIGHT. */
+	private final static int HEIGHT = 600;
+
+	/** The Constant ALL_CLASSES, the first item of the class filter. */
+	private final static String ALL_CLASSES = "All classes";
+
+	/** The checkbox to show misclassified images only. */
+	private JCheckBox chkMisclassified = new JCheckBox("Misclassified only");
+
+	/** The combo box to filter by expected class. */
+	private JComboBox<String> inputClass = new JComboBox<>();
+
+	/** The label with the number of shown results. */
+	private JLabel lblCount = new JLabel();
+
+	/** The model of the results table. */
+	private ResultsTableModel resultsModel = new ResultsTableModel();
+
+	/** The table of results. */
+	private JTable tblResults = new JTable(resultsModel);
+
+	/** The table of the confusion matrix. */
+	private JTable tblConfusion = new JTable(DataLoader.NUM_LABELS, DataLoader.NUM_LABELS + 1);
+
+	/** The thumbnails of test images. */
+	private ThumbnailCache thumbnails = new ThumbnailCache(tblResults::repaint);
+
+	/** The shown results, null until the dialog is opened. */
+	private BatchResults results;
+
+	/**
+	 * Instantiates a new results browser.
+	 *
+	 * @param owner the owner frame
+	 */
+	public ResultsBrowser(JFrame owner) {
+		super(owner, "Results");
+		setPreferredSize(new Dimension(WIDTH, HEIGHT));
+		initComponents();
+		pack();
+		setLocationRelativeTo(owner);
+	}
+
+	/**
+	 * Initializes the components.
+	 */
+	private void initComponents() {
+		inputClass.addItem(ALL_CLASSES);
+		for (int label = 0; label < DataLoader.NUM_LABELS; label++) {
+			inputClass.addItem(String.valueOf(label));
+		}
+		chkMisclassified.addActionListener(e -> refresh());
+		inputClass.addActionListener(e -> refresh());
+		JPanel filters = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		filters.add(chkMisclassified);
+		filters.add(new JLabel("Expected:"));
+		filters.add(inputClass);
+		filters.add(lblCount);
+
+		tblResults.setRowHeight(ThumbnailCache.SIZE + 4);
+		tblResults.getColumnModel().getColumn(0).setMaxWidth(ThumbnailCache.SIZE + 8);
+		tblResults.getColumnModel().getColumn(1).setPreferredWidth(WIDTH / 2);
+		tblResults.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+
+		tblConfusion.setEnabled(false);
+		tblConfusion.getColumnModel().getColumn(0).setHeaderValue("exp \\ est");
+		for (int label = 0; label < DataLoader.NUM_LABELS; label++) {
+			tblConfusion.getColumnModel().getColumn(label + 1).setHeaderValue(String.valueOf(label));
+			tblConfusion.setValueAt(label, label, 0);
+		}
+		JScrollPane confusion = new JScrollPane(tblConfusion);
+		confusion.setBorder(BorderFactory.createTitledBorder("Confusion matrix (rows: expected, columns: estimated)"));
+		confusion.setPreferredSize(new Dimension(WIDTH, (DataLoader.NUM_LABELS + 3) * tblConfusion.getRowHeight()));
+
+		add(filters, BorderLayout.NORTH);
+		add(new JScrollPane(tblResults), BorderLayout.CENTER);
+		add(confusion, BorderLayout.SOUTH);
+	}
+
+	/**
+	 * Shows the results of the last batch.
+	 *
+	 * @param results the results
+	 */
+	public void open(BatchResults results) {
+		this.results = results;
+		refresh();
+		setVisible(true);
+	}
+
+	/**
+	 * Updates the view once a run has finished or the batch was voted again.
+	 *
+	 * @param o   the observable object (Model)
+	 * @param arg the passed argument (not used here)
+	 */
+	@Override
+	public void update(Observable o, Object arg) {
+		Model model = (Model) o;
+		if (isVisible() && model.isFinished() && !model.isSingleTest()) {
+			SwingUtilities.invokeLater(this::refresh);
+		}
+	}
+
+	/**
+	 * Applies the filters and updates the table and the confusion matrix.
+	 */
+	private void refresh() {
+		if (results == null) {
+			return;
+		}
+		int label = inputClass.getSelectedIndex() - 1; // -1 for all classes.
+		resultsModel.setRows(results.filter(chkMisclassified.isSelected(), label));
+		lblCount.setText(String.format("%d of %d images", resultsModel.getRowCount(), results.size()));
+		int[][] matrix = results.getConfusion();
+		for (int expected = 0; expected < matrix.length; expected++) {
+			for (int estimated = 0; estimated < matrix[expected].length; estimated++) {
+				tblConfusion.setValueAt(matrix[expected][estimated], expected, estimated + 1);
+			}
+		}
+	}
+
+	/**
+	 * The table model over the filtered results. It keeps the indexes of
+	 * matching results only, cells are read from {@link BatchResults} when they
+	 * are painted.
+	 */
+	private class ResultsTableModel extends AbstractTableModel {
+
+		/** The Constant serialVersionUID. */
+		private static final long serialVersionUID = 1L;
+
+		/** The column names. */
+		private final String[] columns = { "", "File", "Expected", "Estimated", "Confidence" };
+
+		/** The indexes of shown results. */
+		private int[] rows = new int[0];
+
+		/**
+		 * Sets the indexes of shown results.
+		 *
+		 * @param rows the indexes
+		 */
+		void setRows(int[] rows) {
+			this.rows = rows;
+			fireTableDataChanged();
+		}
+
+		@Override
+		public int getRowCount() {
+			return rows.length;
+		}
+
+		@Override
+		public int getColumnCount() {
+			return columns.length;
+		}
+
+		@Override
+		public String getColumnName(int column) {
+			return columns[column];
+		}
+
+		@Override
+		public Class<?> getColumnClass(int column) {
+			return column == 0 ? Icon.class : column == 4 ? Double.class : column == 1 ? String.class : Integer.class;
+		}
+
+		@Override
+		public Object getValueAt(int row, int column) {
+			int index = rows[row];
+			if (index >= results.size()) {
+				return null; // A new run started, it is shown once it has finished.
+			}
+			switch (column) {
+			case 0:
+				File source = results.getSource(index);
+				return source != null ? thumbnails.get(source) : null;
+			case 1:
+				source = results.getSource(index);
+				return source != null ? source.getName() : "";
+			case 2:
+				return results.getExpectedLabel(index);
+			case 3:
+				return results.getLabel(index);
+			default:
+				return Math.round(results.getConfidence(index) * 1000) / 1000.0;
+			}
+		}
+	}
+
+}
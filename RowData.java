@@ -1,5 +1,7 @@
 package model;
 
+import java.io.File;
+
 /**
  * 
  * Useful class to encapsulate 2D array of pixels (image) and corresponding
@@ -19,6 +21,11 @@ public class RowData {
 	 */
 	private int label;
 
+	/**
+	 * File the image was decoded from (test images only), null if unknown.
+	 */
+	private final File source;
+
 	/**
 	 * Constructor to initialize both of image and label for train data.
 	 * 
@@ -26,8 +33,21 @@ public class RowData {
 	 * @param label 0-9 label to identify image class
 	 */
 	public RowData(int[][] image, int label) {
+		this(image, label, null);
+	}
+
+	/**
+	 * Constructor to initialize image, label and the file the image was decoded
+	 * from.
+	 * 
+	 * @param image  2d array of pixels
+	 * @param label  0-9 label to identify image class
+	 * @param source source file
+	 */
+	public RowData(int[][] image, int label, File source) {
 		this.image = image;
 		this.label = label;
+		this.source = source;
 	}
 
 	/**
@@ -48,4 +68,13 @@ public class RowData {
 		return label;
 	}
 
+	/**
+	 * Gets the source file.
+	 *
+	 * @return the source file, null if unknown
+	 */
+	public File getSource() {
+		return source;
+	}
+
 }
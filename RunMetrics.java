@@ -0,0 +1,167 @@
+package model;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters of the current run. Workers only add to counters (once per
+ * chunk of rows, not per distance) and views sample them periodically via
+ * {@link RunMetrics#snapshot()}, so the hot loop never calls back into the GUI.
+ */
+public class RunMetrics {
+
+	/** The current stage. */
+	private volatile Stage stage = Stage.IDLE;
+
+	/** The start of the run. */
+	private volatile long runStart;
+
+	/** The start of the current stage. */
+	private volatile long stageStart;
+
+	/** The end of the run, 0 while running. */
+	private volatile long runEnd;
+
+	/** The units of work (files, rows) of the current stage. */
+	private volatile long stageTotal;
+
+	/** The units of work done in the current stage. */
+	private final LongAdder stageDone = new LongAdder();
+
+	/** The number of test images to classify. */
+	private volatile long imagesTotal;
+
+	/** The number of classified test images. */
+	private final LongAdder imagesDone = new LongAdder();
+
+	/** The number of training rows to scan. */
+	private volatile long rowsTotal;
+
+	/** The number of scanned training rows. */
+	private final LongAdder rowsDone = new LongAdder();
+
+	/**
+	 * Starts a new run, all counters are cleared.
+	 */
+	public void start() {
+		imagesTotal = 0;
+		rowsTotal = 0;
+		imagesDone.reset();
+		rowsDone.reset();
+		runEnd = 0;
+		runStart = System.nanoTime();
+		enter(Stage.LOADING, 0);
+	}
+
+	/**
+	 * Enters the stage.
+	 *
+	 * @param stage the stage
+	 * @param total the units of work of the stage, 0 if unknown
+	 */
+	public void enter(Stage stage, long total) {
+		stageDone.reset();
+		stageTotal = total;
+		stageStart = System.nanoTime();
+		this.stage = stage;
+	}
+
+	/**
+	 * Enters the classifying stage, counters of classified images and scanned
+	 * rows start from zero.
+	 *
+	 * @param images the number of test images
+	 * @param rows   the number of training rows
+	 */
+	public void classifying(long images, long rows) {
+		imagesTotal = images;
+		rowsTotal = images * rows;
+		imagesDone.reset();
+		rowsDone.reset();
+		enter(Stage.CLASSIFYING, rowsTotal);
+	}
+
+	/**
+	 * Adds done units of work of the current stage.
+	 *
+	 * @param units the units
+	 */
+	public void advance(long units) {
+		stageDone.add(units);
+	}
+
+	/**
+	 * Adds scanned training rows, it also advances the classifying stage.
+	 *
+	 * @param rows the rows
+	 */
+	public void rowsScanned(long rows) {
+		rowsDone.add(rows);
+		stageDone.add(rows);
+	}
+
+	/**
+	 * Gets the progress of classification.
+	 *
+	 * @return the progress in %
+	 */
+	public int getProgress() {
+		long total = rowsTotal;
+		return total > 0 ? (int) (rowsDone.sum() * 100 / total) : 0;
+	}
+
+	/**
+	 * Adds test images which an earlier, stopped run classified, when the run is
+	 * resumed. Their rows count as scanned.
+	 *
+	 * @param images the number of test images
+	 * @param rows   the number of training rows
+	 */
+	public void resumed(long images, long rows) {
+		imagesDone.add(images);
+		rowsScanned(images * rows);
+	}
+
+	/**
+	 * Adds a classified test image.
+	 */
+	public void imageClassified() {
+		imagesDone.increment();
+	}
+
+	/**
+	 * Finishes the run.
+	 */
+	public void finish() {
+		runEnd = System.nanoTime();
+		stage = Stage.FINISHED;
+	}
+
+	/**
+	 * Resets to the idle stage.
+	 */
+	public void reset() {
+		start();
+		runStart = 0;
+		stage = Stage.IDLE;
+	}
+
+	/**
+	 * Takes a consistent enough snapshot of the counters.
+	 *
+	 * @return the snapshot
+	 */
+	public MetricsSnapshot snapshot() {
+		long now = runEnd != 0 ? runEnd : System.nanoTime();
+		long elapsed = runStart != 0 ? now - runStart : 0;
+		long stageElapsed = now - stageStart;
+		long done = stageDone.sum();
+		long total = stageTotal;
+		long eta = -1;
+		if (stage != Stage.FINISHED && total > 0 && done > 0) {
+			eta = (long) ((double) stageElapsed * (total - done) / done);
+		}
+		return new MetricsSnapshot(stage, elapsed, done, total, imagesDone.sum(), imagesTotal, rowsDone.sum(),
+				rowsTotal, stage == Stage.CLASSIFYING || stage == Stage.FINISHED ? stageElapsed : 0, eta);
+	}
+
+}
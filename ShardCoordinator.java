@@ -0,0 +1,415 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Coordinator of the sharded mode. Every {@link ShardWorker} holds a slice of
+ * the training set; a query is sent to all shards at once (scatter), their top-k
+ * lists are merged into the global k nearest rows (gather) and those vote.
+ * The result equals classification over the whole set, except that ties of
+ * equal distances across shards may resolve differently.
+ * <p>
+ * Every request waits at most the timeout. A shard which times out or fails is
+ * closed and every later query fails with a message naming it, so a broken
+ * shard never silently changes results.
+ */
+public class ShardCoordinator implements Closeable {
+
+	/** Time a launched worker may take to load its shard and start listening. */
+	private static final long STARTUP_TIMEOUT_MILLIS = 300_000;
+
+	/** The shards. */
+	private final List<Shard> shards = new ArrayList<>();
+
+	/** Worker processes launched by this coordinator. */
+	private final List<Process> processes = new ArrayList<>();
+
+	/** Sends requests to shards in parallel. */
+	private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+		Thread thread = new Thread(r, "shard-request");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/** The timeout of a request in milliseconds. */
+	private final long timeoutMillis;
+
+	/** The total number of training rows of all shards. */
+	private long rows;
+
+	/**
+	 * Instantiates a new shard coordinator without shards.
+	 *
+	 * @param timeoutMillis the timeout of a request in milliseconds
+	 */
+	private ShardCoordinator(long timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * Connects to running workers and checks they use the expected configuration.
+	 *
+	 * @param addresses     the addresses of workers
+	 * @param extractor     the expected feature extractor
+	 * @param metric        the expected distance metric
+	 * @param timeoutMillis the timeout of connecting and of every request
+	 * @return the coordinator
+	 * @throws IOException if a worker cannot be reached or is configured
+	 *                     differently
+	 */
+	public static ShardCoordinator connect(List<InetSocketAddress> addresses, FeatureExtractor extractor,
+			DistanceMetric metric, long timeoutMillis) throws IOException {
+		ShardCoordinator coordinator = new ShardCoordinator(timeoutMillis);
+		try {
+			for (InetSocketAddress address : addresses) {
+				coordinator.add(address, extractor, metric);
+			}
+		} catch (IOException e) {
+			coordinator.close();
+			throw e;
+		}
+		return coordinator;
+	}
+
+	/**
+	 * Launches workers on this machine, every one with a slice of the source files
+	 * (assigned round-robin) and the maximum heap of this process, and connects
+	 * to them. Workers are killed on {@link ShardCoordinator#close()}.
+	 *
+	 * @param sources       the .bin files
+	 * @param count         the number of workers, at most one per file
+	 * @param extractor     the feature extractor
+	 * @param metric        the distance metric
+	 * @param timeoutMillis the timeout of every request
+	 * @return the coordinator
+	 * @throws IOException if a worker fails to start
+	 */
+	public static ShardCoordinator launchLocal(List<File> sources, int count, FeatureExtractor extractor,
+			DistanceMetric metric, long timeoutMillis) throws IOException {
+		count = Math.max(1, Math.min(count, sources.size()));
+		ShardCoordinator coordinator = new ShardCoordinator(timeoutMillis);
+		try {
+			String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+			long maxMemory = Runtime.getRuntime().maxMemory();
+			for (int i = 0; i < count; i++) {
+				StringBuilder slice = new StringBuilder();
+				for (int j = i; j < sources.size(); j += count) {
+					slice.append(slice.length() > 0 ? "," : "").append(sources.get(j).getAbsolutePath());
+				}
+				List<String> command = new ArrayList<>(List.of(java, "-cp", System.getProperty("java.class.path")));
+				if (maxMemory != Long.MAX_VALUE) { // Otherwise this process has no limit either.
+					command.add("-Xmx" + (maxMemory >> 20) + "m");
+				}
+				command.addAll(List.of(ShardWorker.class.getName(), "--source=" + slice,
+						"--features=" + extractor.getId(), "--metric=" + metric.name()));
+				Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+				coordinator.processes.add(process);
+				int port = awaitReady(process, i);
+				coordinator.add(new InetSocketAddress("localhost", port), extractor, metric);
+			}
+		} catch (IOException e) {
+			coordinator.close();
+			throw e;
+		}
+		return coordinator;
+	}
+
+	/**
+	 * Classifies the test image: sends it to all shards, merges their nearest rows
+	 * and lets the k nearest of them vote.
+	 *
+	 * @param d_img  the test image
+	 * @param k      the k value
+	 * @param voting the voting strategy
+	 * @return the result
+	 * @throws IOException if a shard fails or does not answer in time
+	 */
+	public Classification classify(RowData d_img, int k, VotingStrategy voting) throws IOException {
+		List<Future<Neighbors>> answers = new ArrayList<>();
+		for (Shard shard : shards) {
+			answers.add(executor.submit(() -> shard.query(d_img, k)));
+		}
+		NeighborHeap heap = new NeighborHeap(k);
+		int[] labels = new int[shards.size() * k];
+		int[] multiplicities = new int[labels.length];
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		for (int s = 0; s < shards.size(); s++) {
+			Neighbors neighbors = await(shards.get(s), answers.get(s), deadline);
+			for (int i = 0; i < neighbors.size; i++) {
+				int index = s * k + i;
+				labels[index] = neighbors.labels[i];
+				multiplicities[index] = neighbors.multiplicities[i];
+				heap.offer(neighbors.distances[i], index);
+			}
+		}
+		heap.sort();
+		double[] confidences = new double[DataLoader.NUM_LABELS];
+		int label = new Voter(voting).vote(heap, labels, multiplicities, k, confidences);
+		return new Classification(d_img.getSource(), d_img.getLabel(), label, confidences);
+	}
+
+	/**
+	 * Gets the number of shards.
+	 *
+	 * @return the number of shards
+	 */
+	public int getShards() {
+		return shards.size();
+	}
+
+	/**
+	 * Gets the total number of training rows of all shards.
+	 *
+	 * @return the rows
+	 */
+	public long getRows() {
+		return rows;
+	}
+
+	/**
+	 * Closes connections and kills launched workers.
+	 */
+	@Override
+	public void close() {
+		for (Shard shard : shards) {
+			shard.close();
+		}
+		for (Process process : processes) {
+			process.destroy();
+		}
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Helper method to connect to the worker and check its configuration.
+	 *
+	 * @param address   the address
+	 * @param extractor the expected feature extractor
+	 * @param metric    the expected distance metric
+	 * @throws IOException if the worker cannot be reached or is configured
+	 *                     differently
+	 */
+	private void add(InetSocketAddress address, FeatureExtractor extractor, DistanceMetric metric)
+			throws IOException {
+		Shard shard = new Shard(address, (int) timeoutMillis);
+		shards.add(shard);
+		shard.out.writeByte(ShardWorker.OP_INFO);
+		shard.out.flush();
+		shard.readStatus();
+		int shardRows = shard.in.readInt();
+		shard.in.readLong(); // The fingerprint is not checked, shards differ.
+		String id = shard.in.readUTF();
+		String name = shard.in.readUTF();
+		if (!id.equals(extractor.getId()) || !name.equals(metric.name())) {
+			throw new IOException(String.format("Shard %s uses features %s and metric %s, expected %s and %s",
+					shard.name, id, name, extractor.getId(), metric.name()));
+		}
+		rows += shardRows;
+	}
+
+	/**
+	 * Helper method to wait for the answer of the shard until the deadline. A
+	 * shard which fails or times out is closed.
+	 *
+	 * @param shard    the shard
+	 * @param answer   the future answer
+	 * @param deadline the deadline in {@link System#nanoTime()} units
+	 * @return the neighbors
+	 * @throws IOException if the shard failed or did not answer in time
+	 */
+	private Neighbors await(Shard shard, Future<Neighbors> answer, long deadline) throws IOException {
+		try {
+			return answer.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			shard.close();
+			throw new IOException("Shard " + shard.name + " did not answer within " + timeoutMillis + " ms");
+		} catch (ExecutionException e) {
+			shard.close();
+			throw new IOException("Shard " + shard.name + " failed: " + e.getCause().getMessage(), e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for shard " + shard.name, e);
+		}
+	}
+
+	/**
+	 * Helper method to wait until the launched worker prints its port.
+	 *
+	 * @param process the worker process
+	 * @param number  the number of the worker
+	 * @return the port
+	 * @throws IOException if the worker exits or does not start in time
+	 */
+	private static int awaitReady(Process process, int number) throws IOException {
+		CompletableFuture<String> ready = CompletableFuture.supplyAsync(() -> {
+			try {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+				for (String line; (line = reader.readLine()) != null;) {
+					if (line.startsWith(ShardWorker.READY)) {
+						return line;
+					}
+				}
+				return null;
+			} catch (IOException e) {
+				return null;
+			}
+		});
+		try {
+			String line = ready.get(STARTUP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			if (line == null) {
+				throw new IOException("Shard worker " + number + " exited with code " + process.waitFor()
+						+ " before it was ready");
+			}
+			return Integer.parseInt(line.substring(ShardWorker.READY.length()).trim());
+		} catch (TimeoutException e) {
+			throw new IOException("Shard worker " + number + " did not start within " + STARTUP_TIMEOUT_MILLIS
+					+ " ms");
+		} catch (ExecutionException e) {
+			throw new IOException("Shard worker " + number + " failed to start", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while starting shard worker " + number, e);
+		}
+	}
+
+	/**
+	 * Nearest rows answered by one shard, nearest first.
+	 */
+	private static class Neighbors {
+
+		/** The number of neighbors. */
+		private int size;
+
+		/** The distances. */
+		private double[] distances;
+
+		/** The labels. */
+		private int[] labels;
+
+		/** The multiplicities. */
+		private int[] multiplicities;
+
+	}
+
+	/**
+	 * Connection to one worker. Requests on one connection are sent one at a
+	 * time.
+	 */
+	private static class Shard {
+
+		/** The name for error messages. */
+		private final String name;
+
+		/** The socket. */
+		private final Socket socket;
+
+		/** The input. */
+		private final DataInputStream in;
+
+		/** The output. */
+		private final DataOutputStream out;
+
+		/** True once the connection is closed after a failure. */
+		private volatile boolean closed;
+
+		/**
+		 * Instantiates a new shard and connects to it.
+		 *
+		 * @param address       the address
+		 * @param timeoutMillis the timeout of connecting and reading
+		 * @throws IOException if the worker cannot be reached
+		 */
+		private Shard(InetSocketAddress address, int timeoutMillis) throws IOException {
+			name = address.getHostString() + ":" + address.getPort();
+			socket = new Socket();
+			try {
+				socket.connect(address, timeoutMillis);
+				socket.setSoTimeout(timeoutMillis);
+				socket.setTcpNoDelay(true);
+			} catch (IOException e) {
+				socket.close();
+				throw new IOException("Cannot connect to shard " + name + ": " + e.getMessage(), e);
+			}
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		}
+
+		/**
+		 * Sends the query and reads the nearest rows.
+		 *
+		 * @param d_img the test image
+		 * @param k     the k value
+		 * @return the neighbors
+		 * @throws IOException if the request fails
+		 */
+		private synchronized Neighbors query(RowData d_img, int k) throws IOException {
+			if (closed) {
+				throw new IOException("the connection was closed after an earlier failure");
+			}
+			out.writeByte(ShardWorker.OP_QUERY);
+			out.writeInt(k);
+			for (int[] column : d_img.getImage()) {
+				for (int pixel : column) {
+					out.writeInt(pixel);
+				}
+			}
+			out.flush();
+			readStatus();
+			Neighbors neighbors = new Neighbors();
+			neighbors.size = in.readInt();
+			neighbors.distances = new double[neighbors.size];
+			neighbors.labels = new int[neighbors.size];
+			neighbors.multiplicities = new int[neighbors.size];
+			for (int i = 0; i < neighbors.size; i++) {
+				neighbors.distances[i] = in.readDouble();
+				neighbors.labels[i] = in.readInt();
+				neighbors.multiplicities[i] = in.readInt();
+			}
+			return neighbors;
+		}
+
+		/**
+		 * Reads the status of the answer.
+		 *
+		 * @throws IOException if the worker answered an error
+		 */
+		private void readStatus() throws IOException {
+			if (in.readByte() != ShardWorker.STATUS_OK) {
+				throw new IOException("Shard " + name + " answered: " + in.readUTF());
+			}
+		}
+
+		/**
+		 * Closes the connection, a pending request fails.
+		 */
+		private void close() {
+			closed = true;
+			try {
+				socket.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+	}
+
+}
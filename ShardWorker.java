@@ -0,0 +1,206 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Worker process of the sharded mode. It loads a slice of the training .bin
+ * files and answers top-k queries for its shard, see {@link ShardCoordinator}.
+ * Every connection is served by its own thread with its own
+ * {@link QueryContext}.
+ * <p>
+ * Protocol (big-endian, {@link DataOutputStream} encoding), every request
+ * starts with an operation byte:
+ * <ul>
+ * <li>{@link #OP_INFO}: answers rows (int), fingerprint (long), feature
+ * extractor id (UTF) and metric name (UTF),</li>
+ * <li>{@link #OP_QUERY} k (int, from 1 to {@value NeighborStore#NEIGHBORS})
+ * and 32x32 pixels (int each, column by column): answers the number of
+ * neighbors (int) and for every neighbor its distance (double), label (int)
+ * and multiplicity (int), nearest first,</li>
+ * <li>{@link #OP_CLOSE}: closes the connection.</li>
+ * </ul>
+ * Every answer starts with {@link #STATUS_OK} or {@link #STATUS_ERROR}
+ * followed by the error message (UTF).
+ */
+public class ShardWorker {
+
+	/** The Constant OP_INFO. */
+	public static final byte OP_INFO = 'I';
+
+	/** The Constant OP_QUERY. */
+	public static final byte OP_QUERY = 'Q';
+
+	/** The Constant OP_CLOSE. */
+	public static final byte OP_CLOSE = 'C';
+
+	/** The Constant STATUS_OK. */
+	public static final byte STATUS_OK = 0;
+
+	/** The Constant STATUS_ERROR. */
+	public static final byte STATUS_ERROR = 1;
+
+	/** The line printed to stdout once the worker accepts connections. */
+	public static final String READY = "LISTENING";
+
+	/** The training set of the shard. */
+	private final TrainingSet trainingSet = new TrainingSet();
+
+	/** Searches the nearest rows. */
+	private final KNN knn = new KNN();
+
+	/**
+	 * Instantiates a new shard worker.
+	 *
+	 * @param sources   the .bin files of the shard
+	 * @param extractor the feature extractor
+	 * @param metric    the distance metric
+	 * @throws Exception throws if input file is invalid or does not exist
+	 */
+	public ShardWorker(File[] sources, FeatureExtractor extractor, DistanceMetric metric) throws Exception {
+		knn.setExtractor(extractor);
+		knn.setMetric(metric);
+		trainingSet.addFiles(sources);
+		trainingSet.getFeatures(extractor);
+	}
+
+	/**
+	 * Accepts connections until the process is killed.
+	 *
+	 * @param server the server socket
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void serve(ServerSocket server) throws IOException {
+		while (true) {
+			Socket socket = server.accept();
+			Thread thread = new Thread(() -> handle(socket), "shard-connection");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Helper method to answer requests of one connection until it is closed.
+	 *
+	 * @param socket the socket
+	 */
+	private void handle(Socket socket) {
+		FeatureMatrix features = trainingSet.getFeatures(knn.getExtractor());
+		int[] labels = trainingSet.getLabels();
+		int[] multiplicities = trainingSet.getMultiplicities();
+		QueryContext context = null;
+		try (socket;
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+			socket.setTcpNoDelay(true);
+			while (true) {
+				byte op = in.readByte();
+				if (op == OP_CLOSE) {
+					return;
+				}
+				if (op == OP_INFO) {
+					out.writeByte(STATUS_OK);
+					out.writeInt(trainingSet.size());
+					out.writeLong(trainingSet.getFingerprint());
+					out.writeUTF(knn.getExtractor().getId());
+					out.writeUTF(knn.getMetric().name());
+				} else if (op == OP_QUERY) {
+					int k = in.readInt();
+					int[][] d_img = new int[DataLoader.IMG_SIZE][DataLoader.IMG_SIZE];
+					for (int[] column : d_img) {
+						for (int y = 0; y < column.length; y++) {
+							column[y] = in.readInt();
+						}
+					}
+					if (k < 1 || k > NeighborStore.NEIGHBORS) { // The heap of a huge k would not fit.
+						error(out, "Invalid k: " + k);
+						continue;
+					}
+					if (context == null || context.getHeap().capacity() != k) {
+						context = new QueryContext(features.getDimension(), k, knn.getVoting());
+					}
+					knn.search(new RowData(d_img, 0), features, context);
+					NeighborHeap heap = context.getHeap();
+					heap.sort();
+					out.writeByte(STATUS_OK);
+					out.writeInt(heap.size());
+					for (int i = 0; i < heap.size(); i++) {
+						out.writeDouble(heap.getDistance(i));
+						out.writeInt(labels[heap.getIndex(i)]);
+						out.writeInt(multiplicities[heap.getIndex(i)]);
+					}
+				} else {
+					error(out, "Unknown operation: " + op);
+					return;
+				}
+				out.flush();
+			}
+		} catch (EOFException e) {
+			// The coordinator closed the connection.
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Helper method to answer an error.
+	 *
+	 * @param out     the output
+	 * @param message the error message
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static void error(DataOutputStream out, String message) throws IOException {
+		out.writeByte(STATUS_ERROR);
+		out.writeUTF(message);
+		out.flush();
+	}
+
+	/**
+	 * Starts a worker. Options: --source=FILE[,FILE], --port=N (0 for any free
+	 * port, the default), --features=ID and --metric=NAME. Once the worker
+	 * accepts connections on the loopback interface, it prints
+	 * {@value #READY} and the port to stdout.
+	 *
+	 * @param args the arguments
+	 * @throws Exception throws if an option is invalid or input file is invalid
+	 */
+	public static void main(String[] args) throws Exception {
+		List<File> sources = new ArrayList<>();
+		int port = 0;
+		FeatureExtractor extractor = new RawPixelExtractor();
+		DistanceMetric metric = DistanceMetric.DEFAULT;
+		for (String arg : args) {
+			String value = arg.substring(arg.indexOf('=') + 1);
+			if (arg.startsWith("--source=")) {
+				for (String name : value.split(",")) {
+					sources.add(new File(name));
+				}
+			} else if (arg.startsWith("--port=")) {
+				port = Integer.parseInt(value);
+			} else if (arg.startsWith("--features=")) {
+				extractor = FeatureExtractor.forId(value);
+			} else if (arg.startsWith("--metric=")) {
+				metric = DistanceMetric.parse(value);
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			}
+		}
+		ShardWorker worker = new ShardWorker(sources.toArray(new File[0]), extractor, metric);
+		try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+			System.out.println(READY + " " + server.getLocalPort());
+			System.out.flush();
+			worker.serve(server);
+		}
+	}
+
+}
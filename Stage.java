@@ -0,0 +1,40 @@
+package model;
+
+/**
+ * Stages of a run, in the order they are performed.
+ */
+public enum Stage {
+
+	/** Nothing is running. */
+	IDLE("Idle"),
+
+	/** Test images and training files are read and decoded. */
+	LOADING("Loading"),
+
+	/** Derived structures of the training set are built. */
+	INDEXING("Indexing"),
+
+	/** Test images are classified. */
+	CLASSIFYING("Classifying"),
+
+	/** The run has finished or was stopped. */
+	FINISHED("Finished");
+
+	/** The text displayed to the user. */
+	private final String text;
+
+	/**
+	 * Instantiates a new stage.
+	 *
+	 * @param text the text displayed to the user
+	 */
+	Stage(String text) {
+		this.text = text;
+	}
+
+	@Override
+	public String toString() {
+		return text;
+	}
+
+}
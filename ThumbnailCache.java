@@ -0,0 +1,149 @@
+package view;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+import javax.swing.SwingUtilities;
+
+/**
+ * Thumbnails of test images, decoded lazily in the background and kept in an
+ * LRU cache of at most {@value #CAPACITY} images. It is used from the event
+ * dispatch thread only: {@link ThumbnailCache#get(File)} returns null for an
+ * image which is not decoded yet and asks the decoding thread for it, the
+ * listener is called once it is in the cache. The most recently requested image
+ * is decoded first and at most {@value #MAX_PENDING} requests wait, so scrolling
+ * quickly through many results never builds a long queue of images which are
+ * not visible anymore.
+ */
+public class ThumbnailCache {
+
+	/** The Constant SIZE of thumbnails in pixels. */
+	public final static int SIZE = 32;
+
+	/** The Constant CAPACITY, the maximum number of cached thumbnails. */
+	private final static int CAPACITY = 512;
+
+	/** The Constant MAX_PENDING, the maximum number of waiting requests. */
+	private final static int MAX_PENDING = 64;
+
+	/** The Constant FAILED, shown for images which cannot be decoded. */
+	private final static ImageIcon FAILED = new ImageIcon(new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB));
+
+	/** The cached thumbnails, in access order. */
+	private final Map<File, ImageIcon> cache = new LinkedHashMap<File, ImageIcon>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<File, ImageIcon> eldest) {
+			return size() > CAPACITY;
+		}
+	};
+
+	/** The requested images, they are waiting or being decoded. */
+	private final Set<File> pending = new HashSet<>();
+
+	/** The waiting requests, the most recent first. */
+	private final BlockingDeque<File> requests = new LinkedBlockingDeque<>();
+
+	/** Called on the event dispatch thread once a thumbnail is decoded. */
+	private final Runnable listener;
+
+	/**
+	 * Instantiates a new thumbnail cache and starts its decoding thread.
+	 *
+	 * @param listener called once a thumbnail is decoded, e.g. to repaint
+	 */
+	public ThumbnailCache(Runnable listener) {
+		this.listener = listener;
+		Thread thread = new Thread(this::decode, "thumbnail-decode");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Gets the thumbnail of the image, its decoding is requested if it is not
+	 * cached.
+	 *
+	 * @param file the image file
+	 * @return the thumbnail, null if it is not decoded yet
+	 */
+	public ImageIcon get(File file) {
+		ImageIcon icon = cache.get(file);
+		if (icon == null && pending.add(file)) {
+			requests.offerFirst(file);
+			if (requests.size() > MAX_PENDING) {
+				File dropped = requests.pollLast(); // Requested long ago, likely not visible.
+				if (dropped != null) {
+					pending.remove(dropped);
+				}
+			}
+		}
+		return icon;
+	}
+
+	/**
+	 * Removes all thumbnails and waiting requests.
+	 */
+	public void clear() {
+		requests.clear();
+		pending.clear();
+		cache.clear();
+	}
+
+	/**
+	 * Helper method to decode requested images until the application exits.
+	 */
+	private void decode() {
+		while (true) {
+			File file;
+			try {
+				file = requests.takeFirst();
+			} catch (InterruptedException e) {
+				return;
+			}
+			ImageIcon icon = thumbnail(file);
+			SwingUtilities.invokeLater(() -> {
+				if (pending.remove(file)) { // Not cleared meanwhile.
+					cache.put(file, icon);
+					listener.run();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Helper method to decode the image scaled to a thumbnail.
+	 *
+	 * @param file the image file
+	 * @return the thumbnail
+	 */
+	private static ImageIcon thumbnail(File file) {
+		try {
+			BufferedImage image = ImageIO.read(file);
+			if (image == null) {
+				return FAILED;
+			}
+			BufferedImage thumbnail = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+			Graphics2D g = thumbnail.createGraphics();
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.drawImage(image, 0, 0, SIZE, SIZE, null);
+			g.dispose();
+			return new ImageIcon(thumbnail);
+		} catch (IOException e) {
+			return FAILED;
+		}
+	}
+
+}
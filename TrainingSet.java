@@ -0,0 +1,491 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ *
+ * Resident training data set. It keeps the decoded {@link RowData} rows in
+ * memory between runs, so new .bin files or single labeled images can be
+ * appended without reloading the rows which are already there. Derived values
+ * (number of rows per label, feature vectors and their norms) are extended for
+ * the appended rows only, they are never rebuilt from scratch.
+ *
+ */
+public class TrainingSet {
+
+	/**
+	 * Decoded rows in the order they were appended.
+	 */
+	private final List<RowData> rows = new ArrayList<>();
+
+	/**
+	 * Canonical source files (.bin or labeled .png) already loaded into this set.
+	 */
+	private final Set<File> sources = new LinkedHashSet<>();
+
+	/**
+	 * Consecutive ranges of rows, one per source file (or per run of single rows
+	 * added without a file).
+	 */
+	private final List<Block> blocks = new ArrayList<>();
+
+	/**
+	 * Feature vectors of rows, keyed by id of the extractor. A matrix may have
+	 * fewer rows than this set, it is extended when requested.
+	 */
+	private final Map<String, FeatureMatrix> features = new HashMap<>();
+
+	/**
+	 * On-disk cache of features of .bin files.
+	 */
+	private final FeatureCache featureCache = new FeatureCache();
+
+	/**
+	 * Label of every row, index matches {@link TrainingSet#rows}. Only the first
+	 * {@link TrainingSet#size()} elements are valid.
+	 */
+	private int[] labels = new int[1024];
+
+	/**
+	 * Number of source rows every row stands for (more than 1 if duplicates were
+	 * collapsed into it), index matches {@link TrainingSet#rows}.
+	 */
+	private int[] multiplicities = new int[1024];
+
+	/**
+	 * Collapses duplicate rows on append, null if rows are kept as loaded.
+	 */
+	private Deduplicator deduplicator;
+
+	/**
+	 * Number of rows per label.
+	 */
+	private final int[] labelCounts = new int[DataLoader.NUM_LABELS];
+
+	/**
+	 * Incremented every time the content of this set changes. Caches built on top
+	 * of this set can compare it to find out whether they are stale.
+	 */
+	private long revision;
+
+	/**
+	 * Hash of labels and pixels of all rows in their order. It is extended on
+	 * every append, so files derived from this set (for example
+	 * {@link PairwiseDistances}) can check they belong to the same content.
+	 */
+	private long fingerprint;
+
+	/**
+	 * Makes this set contain exactly the given source files. If every source
+	 * loaded so far is still requested, only the missing files are loaded and
+	 * appended. Otherwise (some source was deselected) the set is cleared and
+	 * loaded again.
+	 *
+	 * @param files requested source files
+	 * @return number of rows appended
+	 * @throws Exception throws if input file is invalid or does not exist
+	 */
+	public synchronized int sync(File... files) throws Exception {
+		retain(files);
+		return addFiles(files);
+	}
+
+	/**
+	 * Clears this set unless every source loaded so far is among the given files.
+	 * It is the first half of {@link TrainingSet#sync(File...)}, callers which
+	 * want to report progress per file can then add files one by one.
+	 *
+	 * @param files requested source files
+	 * @return true, if the set was cleared
+	 */
+	public synchronized boolean retain(File... files) {
+		Set<File> requested = new LinkedHashSet<>();
+		for (File file : files) {
+			requested.add(canonical(file));
+		}
+		if (!requested.containsAll(sources)) {
+			clear();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Appends rows of the given source files. Files which are already loaded are
+	 * skipped.
+	 *
+	 * @param files .bin files or labeled .png images
+	 * @return number of rows appended
+	 * @throws Exception throws if input file is invalid or does not exist
+	 */
+	public synchronized int addFiles(File... files) throws Exception {
+		return addFiles(null, files);
+	}
+
+	/**
+	 * Appends rows of the given source files and reports every file once its
+	 * rows are appended. Files which are already loaded are skipped (and not
+	 * reported). Rows of .bin files are taken from {@link TrainingSetCache} if
+	 * present, otherwise the next .bin file is read while the current one is
+	 * decoded and the decoded rows are cached.
+	 *
+	 * @param loaded receives every appended file, it may be null
+	 * @param files  .bin files or labeled .png images
+	 * @return number of rows appended
+	 * @throws Exception throws if input file is invalid or does not exist
+	 */
+	public synchronized int addFiles(Consumer<File> loaded, File... files) throws Exception {
+		List<File> missing = new ArrayList<>();
+		for (File file : files) {
+			File key = canonical(file);
+			if (!sources.contains(key) && !missing.contains(key)) {
+				missing.add(key);
+			}
+		}
+		int before = rows.size();
+		TrainingSetCache cache = TrainingSetCache.get();
+		BiConsumer<File, List<RowData>> appendFile = (file, fileRows) -> {
+			Block block = new Block(file, rows.size(), 0);
+			blocks.add(block);
+			for (RowData row : fileRows) {
+				append(row, block);
+			}
+			sources.add(file);
+			if (loaded != null) {
+				loaded.accept(file);
+			}
+		};
+		List<File> uncached = new ArrayList<>(); // Consecutive files to be read.
+		for (File file : missing) {
+			List<RowData> cached = isBin(file) ? cache.get(file) : null;
+			if (cached == null) {
+				uncached.add(file);
+				continue;
+			}
+			loadUncached(uncached, appendFile);
+			appendFile.accept(file, cached);
+		}
+		loadUncached(uncached, appendFile);
+		return rows.size() - before;
+	}
+
+	/**
+	 * Helper method to load the files (keeping their order), put rows of .bin
+	 * files into {@link TrainingSetCache} and pass them on. The list is cleared.
+	 *
+	 * @param files      the files
+	 * @param appendFile receives every file with its rows
+	 * @throws Exception throws if input file is invalid or does not exist
+	 */
+	private static void loadUncached(List<File> files, BiConsumer<File, List<RowData>> appendFile)
+			throws Exception {
+		DataLoader.loadEach(files, (file, fileRows) -> {
+			if (isBin(file)) {
+				TrainingSetCache.get().put(file, fileRows);
+			}
+			appendFile.accept(file, fileRows);
+		});
+		files.clear();
+	}
+
+	/**
+	 * Appends a single labeled row and updates derived values for it.
+	 *
+	 * @param row row to append
+	 */
+	public synchronized void add(RowData row) {
+		Block last = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+		if (last == null || last.file != null) {
+			last = new Block(null, rows.size(), 0);
+			blocks.add(last);
+		}
+		append(row, last);
+	}
+
+	/**
+	 * Helper method to append the row to the block and update derived values
+	 * which are kept up to date on every append. A duplicate row is not appended,
+	 * the multiplicity of the row it duplicates is incremented instead.
+	 *
+	 * @param row   row to append
+	 * @param block the last block
+	 */
+	private void append(RowData row, Block block) {
+		long hash = hash(row);
+		int index = rows.size();
+		int duplicate = deduplicator != null ? deduplicator.find(row, hash, index, rows) : -1;
+		labelCounts[row.getLabel()]++;
+		revision++;
+		if (duplicate >= 0) {
+			multiplicities[duplicate]++;
+			block.collapsed++;
+			fingerprint = fingerprint * 0x9E3779B97F4A7C15L + (hash ^ ~duplicate);
+			return;
+		}
+		if (index == labels.length) {
+			labels = Arrays.copyOf(labels, index * 2);
+			multiplicities = Arrays.copyOf(multiplicities, index * 2);
+		}
+		labels[index] = row.getLabel();
+		multiplicities[index] = 1;
+		fingerprint = fingerprint * 0x9E3779B97F4A7C15L + hash;
+		rows.add(row);
+		block.count++;
+	}
+
+	/**
+	 * Sets the deduplicator which collapses duplicate rows on append. The set is
+	 * cleared if it changes, so rows are loaded again with the new setting.
+	 *
+	 * @param deduplicator the deduplicator, null to keep rows as loaded
+	 */
+	public synchronized void setDeduplicator(Deduplicator deduplicator) {
+		if (deduplicator == this.deduplicator) {
+			return;
+		}
+		this.deduplicator = deduplicator;
+		clear();
+	}
+
+	/**
+	 * Gets the deduplicator.
+	 *
+	 * @return the deduplicator, null if rows are kept as loaded
+	 */
+	public synchronized Deduplicator getDeduplicator() {
+		return deduplicator;
+	}
+
+	/**
+	 * Gets feature vectors of all rows. Vectors are extracted only for rows
+	 * appended since the last call with the same extractor. Extraction runs in
+	 * parallel and features of .bin files are read from (and written to) the
+	 * on-disk {@link FeatureCache}.
+	 *
+	 * @param extractor the extractor
+	 * @return the feature matrix, row i belongs to {@link TrainingSet#getRows()}
+	 *         element i
+	 */
+	public synchronized FeatureMatrix getFeatures(FeatureExtractor extractor) {
+		FeatureMatrix matrix = features.get(extractor.getId());
+		if (matrix == null) {
+			matrix = new FeatureMatrix(extractor.getDimension(), rows.size());
+			features.put(extractor.getId(), matrix);
+		}
+		if (matrix.getRows() < rows.size()) {
+			extend(matrix, extractor);
+		}
+		return matrix;
+	}
+
+	/**
+	 * Helper method to extract features of rows which are not in the matrix yet,
+	 * block by block.
+	 *
+	 * @param matrix    the matrix
+	 * @param extractor the extractor
+	 */
+	private void extend(FeatureMatrix matrix, FeatureExtractor extractor) {
+		matrix.ensureCapacity(rows.size());
+		for (Block block : blocks) {
+			int next = matrix.getRows();
+			if (block.first + block.count <= next) {
+				continue;
+			}
+			// Single rows may be appended to the last block after it was extracted.
+			int first = Math.max(block.first, next);
+			int count = block.first + block.count - first;
+			boolean cacheable = extractor.isCached() && block.file != null && first == block.first
+					&& block.collapsed == 0 && isBin(block.file);
+			if (!cacheable || !featureCache.read(block.file, extractor, count, matrix)) {
+				float[] data = matrix.getData();
+				int dimension = extractor.getDimension();
+				IntStream.range(first, first + count).parallel()
+						.forEach(i -> extractor.extract(rows.get(i).getImage(), data, i * dimension));
+				if (cacheable) {
+					featureCache.write(block.file, extractor, matrix, first, count);
+				}
+			}
+			matrix.commit(count);
+		}
+	}
+
+	/**
+	 * Removes all rows.
+	 */
+	public synchronized void clear() {
+		rows.clear();
+		sources.clear();
+		blocks.clear();
+		features.clear();
+		Arrays.fill(labelCounts, 0);
+		if (deduplicator != null) {
+			deduplicator.clear();
+		}
+		fingerprint = 0;
+		revision++;
+	}
+
+	/**
+	 * Gets the rows. The returned list is a read-only view.
+	 *
+	 * @return the rows
+	 */
+	public List<RowData> getRows() {
+		return Collections.unmodifiableList(rows);
+	}
+
+	/**
+	 * Gets the labels of rows. It is a live array which is replaced when the set
+	 * grows, only the first {@link TrainingSet#size()} elements are valid.
+	 *
+	 * @return the labels
+	 */
+	public synchronized int[] getLabels() {
+		return labels;
+	}
+
+	/**
+	 * Gets the multiplicities of rows: the number of loaded rows every row stands
+	 * for. It is a live array like {@link TrainingSet#getLabels()}.
+	 *
+	 * @return the multiplicities
+	 */
+	public synchronized int[] getMultiplicities() {
+		return multiplicities;
+	}
+
+	/**
+	 * Gets the number of rows.
+	 *
+	 * @return the number of rows
+	 */
+	public synchronized int size() {
+		return rows.size();
+	}
+
+	/**
+	 * Gets the number of rows with the label.
+	 *
+	 * @param label 0-9 label
+	 * @return the number of rows
+	 */
+	public synchronized int getLabelCount(int label) {
+		return labelCounts[label];
+	}
+
+	/**
+	 * Gets the revision.
+	 *
+	 * @return the revision
+	 */
+	public synchronized long getRevision() {
+		return revision;
+	}
+
+	/**
+	 * Gets the fingerprint.
+	 *
+	 * @return the fingerprint
+	 */
+	public synchronized long getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * Checks if the source file is already loaded.
+	 *
+	 * @param file source file
+	 * @return true, if loaded
+	 */
+	public synchronized boolean contains(File file) {
+		return sources.contains(canonical(file));
+	}
+
+	/**
+	 * Helper method to compute 64-bit hash (FNV-1a) of the label and pixels of
+	 * the row.
+	 *
+	 * @param row the row
+	 * @return the hash
+	 */
+	static long hash(RowData row) {
+		long result = 0xcbf29ce484222325L ^ row.getLabel();
+		for (int[] column : row.getImage()) {
+			for (int pixel : column) {
+				result = (result ^ pixel) * 0x100000001b3L;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Helper method to check if the file is a .bin file.
+	 *
+	 * @param file the file
+	 * @return true, if .bin file
+	 */
+	private static boolean isBin(File file) {
+		return file.getName().toLowerCase().endsWith(".bin");
+	}
+
+	/**
+	 * Helper method to get canonical file, so the same file selected with
+	 * different paths is loaded only once.
+	 *
+	 * @param file source file
+	 * @return canonical file
+	 */
+	private static File canonical(File file) {
+		try {
+			return file.getCanonicalFile();
+		} catch (IOException e) {
+			return file.getAbsoluteFile();
+		}
+	}
+
+	/**
+	 * Consecutive range of rows loaded from one source file.
+	 */
+	private static class Block {
+
+		/** The canonical source file, null for single rows added directly. */
+		private final File file;
+
+		/** The index of the first row. */
+		private final int first;
+
+		/** The number of rows. */
+		private int count;
+
+		/** The number of rows of the source collapsed into earlier rows. */
+		private int collapsed;
+
+		/**
+		 * Instantiates a new block.
+		 *
+		 * @param file  the source file
+		 * @param first the index of the first row
+		 * @param count the number of rows
+		 */
+		private Block(File file, int first, int count) {
+			this.file = file;
+			this.first = first;
+			this.count = count;
+		}
+
+	}
+
+}
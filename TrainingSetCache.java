@@ -0,0 +1,251 @@
+package model;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide in-memory cache of decoded rows of .bin files. An entry is keyed
+ * by the canonical path, size and modification time of the file, so a changed
+ * file is decoded again. {@link TrainingSet} looks files up here before it
+ * reads them, so runs after a reset or with another configuration skip I/O
+ * and decoding of files seen before.
+ * <p>
+ * Entries are evicted in least recently used order once their estimated size
+ * exceeds the memory budget (system property {@value #BUDGET_PROPERTY} in MB,
+ * a quarter of the maximum heap by default). Entries put while
+ * {@link TrainingSetCache#isKeepResident()} is set are never evicted.
+ */
+public class TrainingSetCache {
+
+	/** The Constant BUDGET_PROPERTY. */
+	public static final String BUDGET_PROPERTY = "knn.training.cache.mb";
+
+	/**
+	 * Estimated heap size of one decoded row: the row object and 32 arrays of 32
+	 * pixels, every array with its header.
+	 */
+	static final long ROW_BYTES = 24 + 16 + DataLoader.IMG_SIZE * (4 + 16 + DataLoader.IMG_SIZE * 4);
+
+	/** The Constant INSTANCE. */
+	private static final TrainingSetCache INSTANCE = new TrainingSetCache(
+			Long.getLong(BUDGET_PROPERTY, Runtime.getRuntime().maxMemory() / 4 >> 20) << 20);
+
+	/** The entries in access order, the eldest first. */
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	/** The memory budget in bytes. */
+	private final long budget;
+
+	/** The estimated size of all entries in bytes. */
+	private long bytes;
+
+	/** True if new entries are kept resident. */
+	private boolean keepResident;
+
+	/** The number of lookups which found the file. */
+	private long hits;
+
+	/** The number of lookups which did not find the file. */
+	private long misses;
+
+	/**
+	 * Instantiates a new training set cache.
+	 *
+	 * @param budget the memory budget in bytes
+	 */
+	TrainingSetCache(long budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * Gets the process-wide instance.
+	 *
+	 * @return the instance
+	 */
+	public static TrainingSetCache get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Gets decoded rows of the file.
+	 *
+	 * @param file the canonical source file
+	 * @return the rows (read-only), null if not cached or the file has changed
+	 */
+	public synchronized List<RowData> get(File file) {
+		Entry entry = entries.get(new Key(file));
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.rows;
+	}
+
+	/**
+	 * Puts decoded rows of the file and evicts least recently used entries which
+	 * are not resident until the budget is met. Rows larger than the whole budget
+	 * are not cached unless they are kept resident.
+	 *
+	 * @param file the canonical source file
+	 * @param rows the rows, they must not be changed afterwards
+	 */
+	public synchronized void put(File file, List<RowData> rows) {
+		Entry entry = new Entry(List.copyOf(rows), keepResident);
+		if (!entry.resident && entry.bytes > budget) {
+			return;
+		}
+		Entry old = entries.put(new Key(file), entry);
+		if (old != null) {
+			bytes -= old.bytes;
+		}
+		bytes += entry.bytes;
+		trim();
+	}
+
+	/**
+	 * Sets whether entries are kept resident. Setting it pins all current entries
+	 * as well, clearing it makes all entries evictable again.
+	 *
+	 * @param keepResident true to keep entries resident
+	 */
+	public synchronized void setKeepResident(boolean keepResident) {
+		this.keepResident = keepResident;
+		for (Entry entry : entries.values()) {
+			entry.resident = keepResident;
+		}
+		trim();
+	}
+
+	/**
+	 * Checks if entries are kept resident.
+	 *
+	 * @return true, if kept resident
+	 */
+	public synchronized boolean isKeepResident() {
+		return keepResident;
+	}
+
+	/**
+	 * Removes all entries, resident ones included.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Gets the estimated size of all entries.
+	 *
+	 * @return the size in bytes
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Gets the number of lookups which found the file.
+	 *
+	 * @return the hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Gets the number of lookups which did not find the file.
+	 *
+	 * @return the misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Helper method to evict least recently used entries which are not resident
+	 * until the budget is met.
+	 */
+	private void trim() {
+		Iterator<Entry> eldest = entries.values().iterator();
+		while (bytes > budget && eldest.hasNext()) {
+			Entry entry = eldest.next();
+			if (!entry.resident) {
+				eldest.remove();
+				bytes -= entry.bytes;
+			}
+		}
+	}
+
+	/**
+	 * Key of a source file: canonical path, size and modification time.
+	 */
+	private static class Key {
+
+		/** The path. */
+		private final String path;
+
+		/** The size. */
+		private final long size;
+
+		/** The modification time. */
+		private final long modified;
+
+		/**
+		 * Instantiates a new key of the current state of the file.
+		 *
+		 * @param file the canonical file
+		 */
+		private Key(File file) {
+			path = file.getPath();
+			size = file.length();
+			modified = file.lastModified();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) o;
+			return path.equals(key.path) && size == key.size && modified == key.modified;
+		}
+
+		@Override
+		public int hashCode() {
+			return (path.hashCode() * 31 + Long.hashCode(size)) * 31 + Long.hashCode(modified);
+		}
+
+	}
+
+	/**
+	 * Cached rows of one file.
+	 */
+	private static class Entry {
+
+		/** The rows. */
+		private final List<RowData> rows;
+
+		/** The estimated size in bytes. */
+		private final long bytes;
+
+		/** True if it is never evicted. */
+		private boolean resident;
+
+		/**
+		 * Instantiates a new entry.
+		 *
+		 * @param rows     the rows
+		 * @param resident true if it is never evicted
+		 */
+		private Entry(List<RowData> rows, boolean resident) {
+			this.rows = rows;
+			this.bytes = rows.size() * ROW_BYTES;
+			this.resident = resident;
+		}
+
+	}
+
+}
@@ -0,0 +1,126 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Finds the label class with the maximum weight of votes among the k nearest
+ * rows. It uses a histogram of {@link DataLoader#NUM_LABELS} classes in
+ * primitive arrays which are reused between queries, so voting does not
+ * allocate. Ties are broken deterministically: the class whose nearest row is
+ * closer wins (it is what the former stable sort by frequency did).
+ */
+public class Voter {
+
+	/** The strategy. */
+	private final VotingStrategy strategy;
+
+	/** The weight of votes per class. */
+	private final double[] weights = new double[DataLoader.NUM_LABELS];
+
+	/** The rank of the nearest row of every class, k if there is none. */
+	private final int[] nearest = new int[DataLoader.NUM_LABELS];
+
+	/**
+	 * Instantiates a new voter.
+	 *
+	 * @param strategy the strategy
+	 */
+	public Voter(VotingStrategy strategy) {
+		this.strategy = strategy;
+	}
+
+	/**
+	 * Votes among the rows of the sorted heap.
+	 *
+	 * @param heap        the nearest rows, sorted by {@link NeighborHeap#sort()}
+	 * @param labels      the labels of rows, indexed by row index
+	 * @param confidences the output array for the confidence of every class (they
+	 *                    sum up to 1), it may be null
+	 * @return the estimated label
+	 */
+	public int vote(NeighborHeap heap, int[] labels, double[] confidences) {
+		return vote(heap, labels, heap.size(), confidences);
+	}
+
+	/**
+	 * Votes among the k nearest rows of the sorted heap, the heap may contain
+	 * more rows. It allows to evaluate every k up to the heap capacity from a
+	 * single search.
+	 *
+	 * @param heap        the nearest rows, sorted by {@link NeighborHeap#sort()}
+	 * @param labels      the labels of rows, indexed by row index
+	 * @param k           the number of nearest rows which vote
+	 * @param confidences the output array for the confidence of every class (they
+	 *                    sum up to 1), it may be null
+	 * @return the estimated label
+	 */
+	public int vote(NeighborHeap heap, int[] labels, int k, double[] confidences) {
+		return vote(heap, labels, null, k, confidences);
+	}
+
+	/**
+	 * Votes among the k nearest rows of the sorted heap, where every row counts as
+	 * many times as its multiplicity (rows with collapsed duplicates, see
+	 * {@link Deduplicator}). Copies of a row take consecutive ranks and only the
+	 * first k copies vote, so the result is the same as without collapsing.
+	 *
+	 * @param heap           the nearest rows, sorted by {@link NeighborHeap#sort()}
+	 * @param labels         the labels of rows, indexed by row index
+	 * @param multiplicities the multiplicities of rows, indexed by row index, null
+	 *                       if every row counts once
+	 * @param k              the number of nearest rows which vote
+	 * @param confidences    the output array for the confidence of every class
+	 *                       (they sum up to 1), it may be null
+	 * @return the estimated label
+	 */
+	public int vote(NeighborHeap heap, int[] labels, int[] multiplicities, int k, double[] confidences) {
+		int rows = Math.min(k, heap.size());
+		if (multiplicities == null) {
+			k = rows;
+		} else {
+			int copies = 0;
+			for (int i = 0; i < rows && copies < k; i++) {
+				copies += multiplicities[heap.getIndex(i)];
+			}
+			k = Math.min(k, copies);
+		}
+		Arrays.fill(weights, 0);
+		Arrays.fill(nearest, k);
+		double total = 0;
+		for (int i = 0, rank = 0; rank < k; i++) {
+			int label = labels[heap.getIndex(i)];
+			int copies = multiplicities != null ? multiplicities[heap.getIndex(i)] : 1;
+			for (int copy = 0; copy < copies && rank < k; copy++, rank++) {
+				double weight = strategy.weight(rank, heap.getDistance(i), k);
+				weights[label] += weight;
+				total += weight;
+				if (nearest[label] == k) {
+					nearest[label] = rank;
+				}
+			}
+		}
+		int result = 0;
+		for (int label = 1; label < DataLoader.NUM_LABELS; label++) {
+			if (weights[label] > weights[result]
+					|| (weights[label] == weights[result] && nearest[label] < nearest[result])) {
+				result = label;
+			}
+		}
+		if (confidences != null) {
+			for (int label = 0; label < DataLoader.NUM_LABELS; label++) {
+				confidences[label] = total > 0 ? weights[label] / total : 0;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the strategy.
+	 *
+	 * @return the strategy
+	 */
+	public VotingStrategy getStrategy() {
+		return strategy;
+	}
+
+}
@@ -0,0 +1,90 @@
+package model;
+
+/**
+ * Weight of a vote of one of the k nearest rows.
+ */
+public enum VotingStrategy {
+
+	/** Every row has one vote. */
+	MAJORITY("Majority") {
+		@Override
+		public double weight(int rank, double distance, int k) {
+			return 1;
+		}
+	},
+
+	/**
+	 * Rows vote with the inverse of the distance the metric returns, closer rows
+	 * count more. {@link DistanceMetric#L2} returns squared distances, so its
+	 * weight is 1 / d^2, which favors the nearest rows more than 1 / d.
+	 */
+	DISTANCE_WEIGHTED("Distance weighted") {
+		@Override
+		public double weight(int rank, double distance, int k) {
+			return 1 / (distance + EPSILON);
+		}
+	},
+
+	/** The nearest row has k votes, the next one k - 1 and so on. */
+	RANK_WEIGHTED("Rank weighted") {
+		@Override
+		public double weight(int rank, double distance, int k) {
+			return k - rank;
+		}
+	};
+
+	/** The Constant DEFAULT strategy. */
+	public static final VotingStrategy DEFAULT = MAJORITY;
+
+	/** Added to distances, so an exact match does not divide by zero. */
+	private static final double EPSILON = 1e-9;
+
+	/** The text displayed to the user. */
+	private final String text;
+
+	/**
+	 * Instantiates a new voting strategy.
+	 *
+	 * @param text the text displayed to the user
+	 */
+	VotingStrategy(String text) {
+		this.text = text;
+	}
+
+	/**
+	 * Computes the weight of a vote.
+	 *
+	 * @param rank     the rank of the row (0 for the nearest one)
+	 * @param distance the distance of the row
+	 * @param k        the k value
+	 * @return the weight
+	 */
+	public abstract double weight(int rank, double distance, int k);
+
+	/**
+	 * Parses the strategy from its name (case insensitive): majority, distance or
+	 * rank.
+	 *
+	 * @param name the name
+	 * @return the voting strategy
+	 * @throws IllegalArgumentException throws if name is unknown
+	 */
+	public static VotingStrategy parse(String name) {
+		switch (name.trim().toLowerCase()) {
+		case "majority":
+			return MAJORITY;
+		case "distance":
+			return DISTANCE_WEIGHTED;
+		case "rank":
+			return RANK_WEIGHTED;
+		default:
+			throw new IllegalArgumentException("Unknown voting strategy: " + name);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return text;
+	}
+
+}